@@ -0,0 +1,50 @@
+package com.alu.oamp.fsm;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The cost of dispatching an event, without the event loop: lookup and state change.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DispatchBenchmark {
+
+    @Param({ "false", "true" })
+    public boolean metrics;
+
+    private SimpleStateMachine machine;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        machine = new SimpleStateMachine(Machines.toggle(), "dispatch",
+                EventLoopOptions.newOptions().metrics(metrics).build());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        machine.shutdown();
+    }
+
+    @Benchmark
+    public void fireEventSync() {
+        machine.fireEventSync(Machines.Cmd.TOGGLE);
+    }
+}
@@ -0,0 +1,74 @@
+package com.alu.oamp.fsm;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The latency from fireEvent to onStateEntered, on a dedicated event loop and on a runtime.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EventLatencyBenchmark {
+
+    @Param({ "dedicated", "runtime" })
+    public String loop;
+
+    private FsmRuntime runtime;
+    private SimpleStateMachine machine;
+    private volatile long entered;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        if ("runtime".equals(loop)) {
+            runtime = new FsmRuntime(1, "latency");
+            machine = new SimpleStateMachine(Machines.toggle(), "latency", runtime);
+        } else {
+            machine = new SimpleStateMachine(Machines.toggle(), "latency");
+        }
+        machine.addStateMachineListener(new StateMachineListener() {
+            @Override
+            public void onStateEntered(StateId stateId) {
+                entered++;
+            }
+
+            @Override
+            public void onStateExited(StateId stateId) {
+            }
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        machine.shutdown();
+        if (runtime != null) {
+            runtime.shutdown();
+        }
+    }
+
+    @Benchmark
+    public long fireEventToStateEntered() {
+        long expected = entered + 1;
+        machine.fireEvent(Machines.Cmd.TOGGLE);
+        while (entered < expected) {
+            // spin, the event loop thread is busy anyway
+        }
+        return expected;
+    }
+}
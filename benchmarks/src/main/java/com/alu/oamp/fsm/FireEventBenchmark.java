@@ -0,0 +1,65 @@
+package com.alu.oamp.fsm;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The throughput of fireEvent with 1, 4 and 16 producers.
+ *
+ * <p>
+ * Producers block when the mailbox is full, so the throughput is the one of the
+ * event loop, under contention from the producers.
+ * </p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FireEventBenchmark {
+
+    private SimpleStateMachine machine;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        machine = new SimpleStateMachine(Machines.toggle(), "fire",
+                EventLoopOptions.newOptions().capacity(1 << 14).block(1, TimeUnit.SECONDS).build());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        machine.shutdown();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public SendStatus producers1() {
+        return machine.offerEvent(Machines.Cmd.PING);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public SendStatus producers4() {
+        return machine.offerEvent(Machines.Cmd.PING);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public SendStatus producers16() {
+        return machine.offerEvent(Machines.Cmd.PING);
+    }
+}
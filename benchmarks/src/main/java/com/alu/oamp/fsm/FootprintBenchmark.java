@@ -0,0 +1,62 @@
+package com.alu.oamp.fsm;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The memory of a state machine instance.
+ *
+ * <p>
+ * Run with the gc profiler ({@code -prof gc}): the normalized allocation rate,
+ * {@code gc.alloc.rate.norm}, is the number of bytes allocated per state machine,
+ * an upper bound of its retained size. The definition is shared and not counted.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FootprintBenchmark {
+
+    private StateMachineDefinition definition;
+    private FsmRuntime runtime;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        definition = Machines.toggle();
+        runtime = new FsmRuntime(1, "footprint");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        runtime.shutdown();
+    }
+
+    @Benchmark
+    public Object dedicated() {
+        // the event loop thread is never started
+        return new SimpleStateMachine(definition, "footprint");
+    }
+
+    @Benchmark
+    public Object onRuntime() {
+        SimpleStateMachine machine = new SimpleStateMachine(definition, "footprint", runtime);
+        // releases the runtime slot
+        machine.shutdown();
+        return machine;
+    }
+}
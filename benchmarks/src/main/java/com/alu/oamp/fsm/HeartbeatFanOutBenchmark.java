@@ -0,0 +1,65 @@
+package com.alu.oamp.fsm;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The cost of a heartbeat round across many state machines running on a runtime.
+ *
+ * <p>
+ * Every machine is sent a heartbeat, as the timers of a fleet of machines firing at
+ * the same tick would do. Heartbeats are coalesced when the machines fall behind.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HeartbeatFanOutBenchmark {
+
+    @Param({ "100", "10000" })
+    public int machines;
+
+    private FsmRuntime runtime;
+    private SimpleStateMachine[] fleet;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        runtime = new FsmRuntime("fan-out");
+        StateMachineDefinition definition = Machines.heartbeat();
+        fleet = new SimpleStateMachine[machines];
+        for (int i = 0; i < machines; i++) {
+            fleet[i] = new SimpleStateMachine(definition, "machine " + i, runtime);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (SimpleStateMachine machine : fleet) {
+            machine.shutdown();
+        }
+        runtime.shutdown();
+    }
+
+    @Benchmark
+    public void heartbeatRound() {
+        for (SimpleStateMachine machine : fleet) {
+            machine.onHeartBeat();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.alu.oamp.fsm;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import static com.alu.oamp.fsm.Heartbeat.newHeartbeat;
+import static com.alu.oamp.fsm.States.newState;
+import static com.alu.oamp.fsm.Timeout.newTimeout;
+import static com.alu.oamp.fsm.Transition.newTransition;
+
+/**
+ * The state machines under benchmark.
+ */
+final class Machines {
+
+    enum Cmd implements EventId<Void> {
+        TOGGLE,
+        PING
+    }
+
+    enum Toggle implements StateId {
+        ON,
+        OFF
+    }
+
+    private static final long HOUR = 3_600_000;
+
+    private Machines() {
+    }
+
+    /**
+     * A machine toggling between two plain states, with a PING self transition.
+     *
+     * @return the definition
+     */
+    static StateMachineDefinition toggle() {
+
+        Set<State> states = new HashSet<>();
+        State off = newState(Toggle.OFF).build();
+        states.add(off);
+        states.add(newState(Toggle.ON).build());
+        return definition(states, off);
+    }
+
+    /**
+     * A machine toggling between a state with a one hour timeout and a plain state.
+     *
+     * @param scheduler the scheduler of the timed state
+     * @return the definition
+     */
+    static StateMachineDefinition timed(Supplier<Scheduler> scheduler) {
+
+        Set<State> states = new HashSet<>();
+        State off = newState(Toggle.OFF).build();
+        states.add(off);
+        State on = newState(Toggle.ON).timeout(newTimeout().timeout(HOUR).target(Toggle.OFF).build()).build();
+        ((TimedState) on).setProvider(scheduler);
+        states.add(on);
+        return definition(states, off);
+    }
+
+    /**
+     * A machine staying in a heartbeat state, the heartbeat timer never fires.
+     *
+     * @return the definition
+     */
+    static StateMachineDefinition heartbeat() {
+
+        Set<State> states = new HashSet<>();
+        State on = newState(Toggle.ON).heartbeat(newHeartbeat().period(HOUR).action(() -> { }).build()).build();
+        states.add(on);
+        states.add(newState(Toggle.OFF).build());
+        return definition(states, on);
+    }
+
+    private static StateMachineDefinition definition(Set<State> states, State initial) {
+
+        Set<Transition> transitions = new HashSet<>();
+        transitions.add(newTransition(states).from(Toggle.OFF).event(Cmd.TOGGLE).to(Toggle.ON).build());
+        transitions.add(newTransition(states).from(Toggle.ON).event(Cmd.TOGGLE).to(Toggle.OFF).build());
+        transitions.add(newTransition(states).from(Toggle.OFF).event(Cmd.PING).to(Toggle.OFF).build());
+        return StateMachineDefinition.newDefinition()
+                .states(states)
+                .transitions(transitions)
+                .initial(initial)
+                .build();
+    }
+}
@@ -0,0 +1,62 @@
+package com.alu.oamp.fsm;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The cost of entering and exiting a state with timeout: arming and cancelling its timer.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TimeoutChurnBenchmark {
+
+    @Param({ "timer", "wheel" })
+    public String scheduler;
+
+    private HashedWheelScheduler wheel;
+    private SimpleStateMachine machine;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        StateMachineDefinition definition;
+        if ("wheel".equals(scheduler)) {
+            wheel = new HashedWheelScheduler("churn");
+            definition = Machines.timed(() -> wheel);
+        } else {
+            TimerScheduler timer = new TimerScheduler("churn");
+            definition = Machines.timed(() -> timer);
+        }
+        machine = new SimpleStateMachine(definition, "churn");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        machine.shutdown();
+        if (wheel != null) {
+            wheel.stop();
+        }
+    }
+
+    @Benchmark
+    public void enterAndExit() {
+        machine.fireEventSync(Machines.Cmd.TOGGLE);
+        machine.fireEventSync(Machines.Cmd.TOGGLE);
+    }
+}
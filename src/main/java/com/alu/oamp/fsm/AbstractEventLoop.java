@@ -1,12 +1,13 @@
 package com.alu.oamp.fsm;
 
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.RejectedExecutionHandler;
-import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -24,6 +25,17 @@ import org.slf4j.LoggerFactory;
  *
  * The event loop is stopped using the shutdown method.
  *
+ * Messages are queued in a {@link Mailbox}, a lock free {@link RingBufferMailbox} by default,
+ * and drained by the event loop thread, which parks when the mailbox is empty.
+ * The event loop thread is started on the first message. It is created by the configured
+ * thread factory, which may create virtual threads, see {@link ThreadFactories}.
+ *
+ * In batch mode, the event loop thread drains all the pending messages, up to a maximum,
+ * and processes them with the onBatch method, allowing per batch rather than per message work.
+ *
+ * When the mailbox is full, the configured {@link OverflowPolicy} applies. The offer method
+ * tells the sender what became of its message, and the event loop counts the messages
+ * rejected, dropped, coalesced or processed by their sender rather than logging them.
  *
  * @param <T>
  *            the message sent to the event loop.
@@ -31,14 +43,40 @@ import org.slf4j.LoggerFactory;
  * @author tvillard
  *
  */
-public abstract class AbstractEventLoop<T> {
+public abstract class AbstractEventLoop<T> implements EventLoop<T> {
 	private static final int DEFAULT_CAPACITY = 1000;
 	private static final int DEFAULT_SHUTDOWN_DELAY = 5;
+
+	private static final int NEW = 0;
+	private static final int RUNNING = 1;
+	private static final int SHUTDOWN = 2;
+	private static final int STOP = 3;
+	private static final int TERMINATED = 4;
+
+	private static final long BLOCK_BACKOFF = TimeUnit.MICROSECONDS.toNanos(50);
+
 	// No static logger in libraries
 	private final Logger logger = LoggerFactory.getLogger(AbstractEventLoop.class);
 
-	private final ExecutorService exec;
+	private final Mailbox<T> mailbox;
+	private final Thread thread;
 	private final int shutdownDelay;
+	private final int maxBatch;
+	private final OverflowPolicy overflowPolicy;
+	private final long blockTimeout;
+	private final AtomicInteger state = new AtomicInteger(NEW);
+	private volatile boolean parked;
+	private volatile boolean overloaded;
+
+	// only set with the coalesce policy
+	private final ConcurrentHashMap<Object, Integer> pendingKeys;
+	// only set with the caller runs policy
+	private final ReentrantLock processing;
+
+	private final LongAdder rejected = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+	private final LongAdder coalesced = new LongAdder();
+	private final LongAdder processedByCaller = new LongAdder();
 
 	/**
 	 * Creates a new actor.
@@ -91,15 +129,45 @@ public abstract class AbstractEventLoop<T> {
 	 *
 	 */
 	public AbstractEventLoop(int capacity, String threadName, int shutdownDelay) {
-		if (capacity == 0) {
-			throw new IllegalArgumentException("capacity can't be 0");
-		}
-		
-		if (shutdownDelay == 0) {
-			throw new IllegalArgumentException("shutdown delay can't be 0");
-		}
-		this.shutdownDelay = shutdownDelay;
-		exec = newExecutor(capacity, threadName);
+		this(threadName, EventLoopOptions.newOptions()
+				.capacity(capacity)
+				.shutdownDelay(shutdownDelay)
+				.build());
+	}
+
+	/**
+	 * Creates a new actor.
+	 *
+	 * @param threadName
+	 *            the event loop thread name.
+	 * @param options
+	 *            the event loop options.
+	 */
+	public AbstractEventLoop(String threadName, EventLoopOptions options) {
+		this(threadName, options, options.newMailbox());
+	}
+
+	/**
+	 * Creates a new actor with its own mailbox.
+	 *
+	 * @param threadName
+	 *            the event loop thread name.
+	 * @param options
+	 *            the event loop options, the capacity and mailbox options do not apply.
+	 * @param mailbox
+	 *            the event loop mailbox.
+	 */
+	protected AbstractEventLoop(String threadName, EventLoopOptions options, Mailbox<T> mailbox) {
+		this.shutdownDelay = options.getShutdownDelay();
+		this.maxBatch = options.getMaxBatch();
+		this.overflowPolicy = options.getOverflowPolicy();
+		this.blockTimeout = options.getBlockTimeout();
+		this.pendingKeys = overflowPolicy == OverflowPolicy.COALESCE ? new ConcurrentHashMap<>() : null;
+		this.processing = overflowPolicy == OverflowPolicy.CALLER_RUNS ? new ReentrantLock() : null;
+		this.mailbox = mailbox;
+		this.thread = options.getThreadFactory().newThread(this::run);
+		this.thread.setName(threadName);
+		this.thread.setUncaughtExceptionHandler(new UELogger());
 	}
 
 	/**
@@ -114,14 +182,30 @@ public abstract class AbstractEventLoop<T> {
 
 	/**
 	 * shutdown the actor.
+	 *
+	 * Pending messages are processed within the shutdown delay, the event loop thread
+	 * is interrupted beyond.
 	 */
+	@Override
 	public void shutdown() {
 
+		if (state.compareAndSet(NEW, TERMINATED)) {
+			return;
+		}
+		if (!state.compareAndSet(RUNNING, SHUTDOWN) && state.get() == TERMINATED) {
+			return;
+		}
+		LockSupport.unpark(thread);
+		if (Thread.currentThread() == thread) {
+			return;
+		}
 		try {
-			exec.shutdown();
-			if (!exec.awaitTermination(shutdownDelay, TimeUnit.SECONDS)) {
-				exec.shutdownNow();
-				if (!exec.awaitTermination(shutdownDelay, TimeUnit.SECONDS)) {
+			thread.join(TimeUnit.SECONDS.toMillis(shutdownDelay));
+			if (thread.isAlive()) {
+				state.set(STOP);
+				thread.interrupt();
+				thread.join(TimeUnit.SECONDS.toMillis(shutdownDelay));
+				if (thread.isAlive()) {
 					logger.error("AbstractEventLoop failed to shutdown");
 				}
 			}
@@ -135,9 +219,10 @@ public abstract class AbstractEventLoop<T> {
 	 *
 	 * @return true when the actor has shutdown
 	 */
+	@Override
 	public boolean isShutdown() {
 
-		return exec.isTerminated();
+		return state.get() == TERMINATED;
 	}
 
 	/**
@@ -146,36 +231,214 @@ public abstract class AbstractEventLoop<T> {
 	 * @param message
 	 *            the message sent
 	 */
+	@Override
 	public void send(T message) {
 
-		if (exec.isShutdown()) {
+		offer(message);
+	}
+
+	/**
+	 * Sends a message to the actor and tells what became of it.
+	 *
+	 * @param message
+	 *            the message sent
+	 * @return the send status
+	 */
+	@Override
+	public SendStatus offer(T message) {
+
+		int current = state.get();
+		if (current > RUNNING) {
 			throw new IllegalStateException("AbstractEventLoop is shutdown.");
 		}
+		if (current == NEW && state.compareAndSet(NEW, RUNNING)) {
+			thread.start();
+		}
+		SendStatus status = enqueue(message);
+		if (parked) {
+			LockSupport.unpark(thread);
+		}
+		return status;
+	}
+
+	/**
+	 * Returns the coalescing key of a message.
+	 *
+	 * Used by the coalesce overflow policy: messages with the same key are considered
+	 * equivalent. The default implementation returns null: messages are never coalesced.
+	 *
+	 * @param message
+	 *            the message
+	 * @return the coalescing key or null if the message can't be coalesced
+	 */
+	protected Object coalesceKey(T message) {
+		return null;
+	}
+
+	/**
+	 * Invoked when a pending message is dropped by the drop oldest policy, or left in the
+	 * mailbox when the event loop terminates: interrupted beyond the shutdown delay, or
+	 * sent while shutting down.
+	 *
+	 * The default implementation does nothing.
+	 *
+	 * @param message
+	 *            the dropped message
+	 */
+	protected void onDropped(T message) {
+	}
 
-		exec.execute(new MessageProcessor(message));
+	/**
+	 * Returns the number of messages rejected because the mailbox was full.
+	 *
+	 * @return the number of rejected messages
+	 */
+	public long getRejectedCount() {
+		return rejected.sum();
 	}
 
 	/**
-	 * A message processor.
+	 * Returns the number of pending messages dropped by the drop oldest policy.
 	 *
-	 * @author tvillard
+	 * @return the number of dropped messages
+	 */
+	public long getDroppedCount() {
+		return dropped.sum();
+	}
+
+	/**
+	 * Returns the number of messages dropped by the coalesce policy.
+	 *
+	 * @return the number of coalesced messages
+	 */
+	public long getCoalescedCount() {
+		return coalesced.sum();
+	}
+
+	/**
+	 * Returns the number of messages processed on their sender thread by the caller runs policy.
+	 *
+	 * @return the number of messages processed by their sender
+	 */
+	public long getProcessedByCallerCount() {
+		return processedByCaller.sum();
+	}
+
+	/**
+	 * Returns the number of messages pending in the mailbox.
 	 *
+	 * @return the number of pending messages
 	 */
-	private class MessageProcessor implements Runnable {
+	@Override
+	public int getPendingCount() {
+		return mailbox.size();
+	}
 
-		private final T message;
+	private SendStatus enqueue(T message) {
 
-		public MessageProcessor(T message) {
-			this.message = message;
+		Object key = pendingKeys == null ? null : coalesceKey(message);
+		if (mailbox.offer(message)) {
+			accepted(key);
+			return SendStatus.ACCEPTED;
 		}
+		switch (overflowPolicy) {
+		case DROP_OLDEST:
+			return dropOldest(message, key);
+		case BLOCK:
+			return block(message);
+		case CALLER_RUNS:
+			return runOnCaller(message);
+		case COALESCE:
+			if (key != null && pendingKeys.containsKey(key)) {
+				coalesced.increment();
+				return SendStatus.COALESCED;
+			}
+			return reject();
+		default:
+			return reject();
+		}
+	}
 
-		@Override
-		public void run() {
-			onMessage(message);
+	private SendStatus dropOldest(T message, Object key) {
+
+		while (true) {
+			T oldest = mailbox.evict(message);
+			if (oldest != null) {
+				released(oldest);
+				dropped.increment();
+				onDropped(oldest);
+			}
+			if (mailbox.offer(message)) {
+				accepted(key);
+				return SendStatus.DROPPED_OLDEST;
+			}
 		}
+	}
+
+	private SendStatus block(T message) {
+
+		long start = System.nanoTime();
+		long deadline = start + blockTimeout;
+		do {
+			if (parked) {
+				LockSupport.unpark(thread);
+			}
+			LockSupport.parkNanos(BLOCK_BACKOFF);
+			if (Thread.currentThread().isInterrupted() || state.get() > RUNNING) {
+				break;
+			}
+			if (mailbox.offer(message)) {
+				accepted(null);
+				return SendStatus.ACCEPTED;
+			}
+		} while (System.nanoTime() - deadline < 0);
+		return reject(System.nanoTime() - start);
+	}
+
+	private SendStatus runOnCaller(T message) {
+
+		processedByCaller.increment();
+		process(message);
+		return SendStatus.PROCESSED_BY_CALLER;
+	}
+
+	private SendStatus reject() {
+
+		return reject(0);
+	}
+
+	private SendStatus reject(long blocked) {
+
+		rejected.increment();
+		if (FsmEvents.ENABLED) {
+			FsmEvents.mailboxRejected(thread.getName(), overflowPolicy, mailbox.size(), blocked);
+		}
+		if (!overloaded) {
+			overloaded = true;
+			logger.warn("Event loop queue is full, messages are rejected");
+		}
+		return SendStatus.REJECTED;
+	}
+
+	private void accepted(Object key) {
+
+		if (overloaded) {
+			overloaded = false;
+			logger.info("Event loop queue accepts messages again, {} messages rejected so far",
+					rejected.sum());
+		}
+		if (key != null) {
+			pendingKeys.merge(key, 1, Integer::sum);
+		}
+	}
 
-		public T getMessage() {
-			return message;
+	private void released(T message) {
+
+		if (pendingKeys != null) {
+			Object key = coalesceKey(message);
+			if (key != null) {
+				pendingKeys.computeIfPresent(key, (k, count) -> count == 1 ? null : count - 1);
+			}
 		}
 	}
 
@@ -189,49 +452,146 @@ public abstract class AbstractEventLoop<T> {
 	 */
 	protected abstract void onMessage(T message);
 
-	private ExecutorService newExecutor(int capacity, final String threadName) {
+	/**
+	 * processes a batch of incoming messages.
+	 *
+	 * Invoked in batch mode only, with the messages drained at once from the mailbox.
+	 * The default implementation processes the messages one by one with the onMessage method.
+	 * The batch list is reused by the event loop and must not be kept.
+	 *
+	 * @param messages
+	 *            the received messages, in order
+	 */
+	protected void onBatch(List<T> messages) {
 
-		ThreadFactory threadFactory = runnable -> {
-            Thread thread = new Thread(runnable, threadName);
-            thread.setUncaughtExceptionHandler(new UELogger());
-            return thread;
-        };
-		BlockingQueue<Runnable> workQueue =
-				new ArrayBlockingQueue<>(capacity);
-		return new ThreadPoolExecutor(1, 1, 0L, TimeUnit.SECONDS, workQueue,
-			threadFactory, new RELogger());
+		for (T message : messages) {
+			process(message);
+		}
 	}
 
 	/**
-	 * The actor unexpected exception handler.
-	 *
-	 * @author tvillard
+	 * The event loop thread main loop: drains the mailbox and parks when it is empty.
+	 */
+	private void run() {
+
+		List<T> batch = maxBatch > 1 ? new ArrayList<>(maxBatch) : null;
+		try {
+			while (state.get() != STOP) {
+				if (batch != null) {
+					if (drain(batch)) {
+						continue;
+					}
+				} else {
+					T message = poll();
+					if (message != null) {
+						process(message);
+						continue;
+					}
+				}
+				if (state.get() != RUNNING) {
+					break;
+				}
+				park();
+			}
+		} finally {
+			state.set(TERMINATED);
+			dropPending();
+		}
+	}
+
+	/**
+	 * Drops the messages left in the mailbox once terminated.
+	 */
+	private void dropPending() {
+
+		T message;
+		while ((message = poll()) != null) {
+			try {
+				onDropped(message);
+			} catch (Exception ex) {
+				logger.error("Task failed with exception", ex);
+			}
+		}
+	}
+
+	/**
+	 * Drains and processes the pending messages, up to the maximum batch size.
 	 *
+	 * @return false when the mailbox is empty
 	 */
-	private class UELogger implements Thread.UncaughtExceptionHandler {
+	private boolean drain(List<T> batch) {
 
-		@Override
-		public void uncaughtException(Thread thread, Throwable exception) {
-			logger.error("Task failed with exception", exception);
+		T message;
+		while (batch.size() < maxBatch && (message = poll()) != null) {
+			batch.add(message);
+		}
+		if (batch.isEmpty()) {
+			return false;
+		}
+		if (processing != null) {
+			processing.lock();
+		}
+		try {
+			onBatch(batch);
+		} catch (Exception ex) {
+			logger.error("Task failed with exception", ex);
+		} finally {
+			batch.clear();
+			if (processing != null) {
+				processing.unlock();
+			}
+		}
+		return true;
+	}
+
+	private T poll() {
+
+		T message = mailbox.poll();
+		if (message != null) {
+			released(message);
+		}
+		return message;
+	}
+
+	private void park() {
+
+		parked = true;
+		// check again once parked is published, a producer may have missed it
+		if (mailbox.isEmpty() && state.get() == RUNNING) {
+			Thread.interrupted();
+			LockSupport.park(this);
+		}
+		parked = false;
+	}
+
+	private void process(T message) {
+
+		// with the caller runs policy, senders may process messages too: one at a time
+		if (processing != null) {
+			processing.lock();
+		}
+		try {
+			onMessage(message);
+		} catch (Exception ex) {
+			logger.error("Task failed with exception", ex);
+		} finally {
+			if (processing != null) {
+				processing.unlock();
+			}
 		}
 	}
 
 	/**
-	 * The actor rejected execution handler.
+	 * The actor unexpected exception handler.
 	 *
 	 * @author tvillard
 	 *
 	 */
-	private class RELogger implements RejectedExecutionHandler {
+	private class UELogger implements Thread.UncaughtExceptionHandler {
 
 		@Override
-		public void rejectedExecution(Runnable runnable,
-				ThreadPoolExecutor pool) {
-
-			@SuppressWarnings("unchecked")
-			MessageProcessor processor = (MessageProcessor) runnable;
-			logger.error("Task is rejected, event loop queue might be full");
-			logger.error("Rejected message: {}", processor.getMessage());
+		public void uncaughtException(Thread thread, Throwable exception) {
+			logger.error("Task failed with exception", exception);
 		}
 	}
 }
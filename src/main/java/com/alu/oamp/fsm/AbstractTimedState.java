@@ -1,8 +1,8 @@
 package com.alu.oamp.fsm;
 
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
-import java.util.Timer;
 import java.util.function.Supplier;
 
 /**
@@ -12,9 +12,7 @@ import java.util.function.Supplier;
 public abstract class AbstractTimedState implements TimedState {
 
     protected final State state;
-    protected Supplier<Timer> provider;
-    protected TimedStateListener listener;
-    protected Timer timer;
+    protected Supplier<Scheduler> provider;
 
     /**
      * Creates a new abstract active state.
@@ -31,43 +29,72 @@ public abstract class AbstractTimedState implements TimedState {
     }
 
     @Override
-    public void onExit() {
+    public void onEntry() {
+        state.onEntry();
+    }
 
-        if (timer != null) {
-            timer.cancel();
-        }
+    @Override
+    public void onExit() {
         state.onExit();
     }
 
-    protected Set<Transition> getInnerStateTransitions(Set<State> states) {
+    @Override
+    public StateId getParent() {
+        return state.getParent();
+    }
 
-        // Get inner state transitions
-        Set<Transition> transitions = new HashSet<>();
-        if (state instanceof TimedState) {
-            transitions = ((TimedState) state).getInternal(states);
-        }
-        return transitions;
+    @Override
+    public StateId getInitial() {
+        return state.getInitial();
+    }
+
+    @Override
+    public List<Region> getRegions() {
+        return state.getRegions();
     }
 
     @Override
-    public void shutdown() {
+    public TimerHandle arm(TimedStateListener listener, long elapsed) {
+
+        return arm(provider.get(), listener, elapsed);
+    }
+
+    @Override
+    public TimerHandle arm(Scheduler scheduler, TimedStateListener listener, long elapsed) {
+
+        TimerHandle timer = start(scheduler, listener, elapsed);
         if (state instanceof TimedState) {
-            ((TimedState) state).shutdown();
-        }
-        if (timer != null) {
-            timer.cancel();
+            TimerHandle inner = ((TimedState) state).arm(scheduler, listener, elapsed);
+            return () -> {
+                timer.cancel();
+                inner.cancel();
+            };
         }
+        return timer;
     }
 
-    @Override
-    public void setActiveStateListener(TimedStateListener listener) {
+    /**
+     * Starts the timer of this state.
+     *
+     * @param scheduler the scheduler
+     * @param listener  the listener notified when the timer fires
+     * @param elapsed   the time already spent in the state, in milliseconds
+     * @return the timer handle
+     */
+    protected abstract TimerHandle start(Scheduler scheduler, TimedStateListener listener, long elapsed);
+
+    protected Set<Transition> getInnerStateTransitions(Set<State> states) {
+
+        // Get inner state transitions
+        Set<Transition> transitions = new HashSet<>();
         if (state instanceof TimedState) {
-            ((TimedState) state).setActiveStateListener(listener);
+            transitions = ((TimedState) state).getInternal(states);
         }
-        this.listener = listener;
+        return transitions;
     }
 
-    public void setProvider(Supplier<Timer> provider) {
+    @Override
+    public void setProvider(Supplier<Scheduler> provider) {
         this.provider = provider;
         if (state instanceof TimedState) {
             ((TimedState) state).setProvider(provider);
@@ -78,4 +105,4 @@ public abstract class AbstractTimedState implements TimedState {
     public String toString() {
         return state.toString();
     }
-}
\ No newline at end of file
+}
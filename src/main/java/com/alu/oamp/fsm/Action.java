@@ -4,9 +4,9 @@ package com.alu.oamp.fsm;
  *
  * A state machine transition action with an input value.
  *
- *
+ * @param <P> the type of the message fired with the event
  */
-public interface Action {
+public interface Action<P> {
 
 	/**
 	 * Executes the action.
@@ -14,7 +14,6 @@ public interface Action {
 	 * @param message
 	 *            the message used when firing the transaction.
 	 */
-	// FIXME would it be possible to type the message ?
-	void run(Object message);
+	void run(P message);
 
 }
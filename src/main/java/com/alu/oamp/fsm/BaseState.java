@@ -1,5 +1,8 @@
 package com.alu.oamp.fsm;
 
+import java.util.Collections;
+import java.util.List;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -14,6 +17,9 @@ public class BaseState implements State {
 	private final StateId stateId;
 	private final Runnable onEntry;
 	private final Runnable onExit;
+	private final StateId parent;
+	private final StateId initial;
+	private final List<Region> regions;
 
 	/**
 	 * Creates a new state.
@@ -26,9 +32,33 @@ public class BaseState implements State {
 	 *            the runnable to execute on exiting the state
 	 */
 	BaseState(StateId stateId, Runnable onEntry, Runnable onExit) {
+		this(stateId, onEntry, onExit, null, null, Collections.emptyList());
+	}
+
+	/**
+	 * Creates a new state nested in a compound state.
+	 *
+	 * @param stateId
+	 *            the state id
+	 * @param onEntry
+	 *            the runnable to execute on entering the state
+	 * @param onExit
+	 *            the runnable to execute on exiting the state
+	 * @param parent
+	 *            the parent state id, null for a top level state
+	 * @param initial
+	 *            the initial child state id, null for an atomic state
+	 * @param regions
+	 *            the orthogonal regions of the state
+	 */
+	BaseState(StateId stateId, Runnable onEntry, Runnable onExit, StateId parent, StateId initial,
+			List<Region> regions) {
 		this.stateId = stateId;
 		this.onEntry = onEntry;
 		this.onExit = onExit;
+		this.parent = parent;
+		this.initial = initial;
+		this.regions = regions;
 	}
 
 	@Override
@@ -58,6 +88,21 @@ public class BaseState implements State {
 		}
 	}
 
+	@Override
+	public StateId getParent() {
+		return parent;
+	}
+
+	@Override
+	public StateId getInitial() {
+		return initial;
+	}
+
+	@Override
+	public List<Region> getRegions() {
+		return regions;
+	}
+
     @Override
 	public String toString() {
 		return "[" + stateId + "]";
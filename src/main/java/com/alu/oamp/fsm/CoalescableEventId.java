@@ -0,0 +1,19 @@
+package com.alu.oamp.fsm;
+
+/**
+ * A marker interface for coalescable event id.
+ *
+ * <p>
+ * A state machine holds at most one pending instance of a coalescable event: firing
+ * the event while it is still waiting to be processed has no effect. This suits events
+ * which only signal that something happened, such as ticks or status polls, and which
+ * would otherwise pile up when the state machine falls behind.
+ * </p>
+ * <p>
+ * Only events without message are coalesced, an event carrying a message is always queued.
+ * </p>
+ *
+ * @param <P> the message type
+ */
+public interface CoalescableEventId<P> extends EventId<P> {
+}
@@ -0,0 +1,81 @@
+package com.alu.oamp.fsm;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes the events written to an {@link EventJournal}.
+ *
+ * <p>
+ * An event id is journaled as a code, which must stay stable across restarts: enum
+ * ordinals are fine as long as constants are only appended. The timeout event of
+ * timed states is encoded by the journal itself.
+ * </p>
+ */
+public interface EventCodec {
+
+	/**
+	 * Returns the code of an event id.
+	 *
+	 * @param eventId
+	 *            the event id
+	 * @return the code, positive or zero
+	 */
+	int encode(EventId<?> eventId);
+
+	/**
+	 * Returns the event id of a code.
+	 *
+	 * @param code
+	 *            the code
+	 * @return the event id or null if the code is unknown
+	 */
+	EventId<?> decode(int code);
+
+	/**
+	 * Writes the message of an event, at the position of the buffer.
+	 *
+	 * <p>
+	 * The buffer is the record buffer of the appending thread, reused from one event to
+	 * the next and copied to the journal segment once the record is complete. The message
+	 * should be written directly, without intermediate serialization. The default
+	 * implementation writes nothing.
+	 * </p>
+	 *
+	 * @param message
+	 *            the event message, not null
+	 * @param buffer
+	 *            the buffer
+	 * @throws java.nio.BufferOverflowException
+	 *             when the buffer is full, the record is then encoded again in a buffer twice
+	 *             as large, up to the segment size
+	 */
+	default void writeMessage(Object message, ByteBuffer buffer) {
+	}
+
+	/**
+	 * Returns a codec for the events of an enum, encoded by ordinal.
+	 *
+	 * @param events
+	 *            the enum class
+	 * @param <E>
+	 *            the enum type
+	 * @return the codec
+	 */
+	static <E extends Enum<E> & EventId<?>> EventCodec ofEnum(Class<E> events) {
+		E[] constants = events.getEnumConstants();
+		return new EventCodec() {
+			@Override
+			public int encode(EventId<?> eventId) {
+				if (!events.isInstance(eventId)) {
+					throw new IllegalArgumentException("Event " + eventId + " is not a " + events.getSimpleName());
+				}
+				return ((Enum<?>) eventId).ordinal();
+			}
+
+			@Override
+			public EventId<?> decode(int code) {
+				return code >= 0 && code < constants.length ? constants[code] : null;
+			}
+		};
+	}
+}
@@ -2,6 +2,24 @@ package com.alu.oamp.fsm;
 
 /**
  * A marker interface for event id.
+ *
+ * <p>
+ * The event id is typed by the message fired with the event, which is handed over to
+ * the transition action:
+ * </p>
+ * <pre>
+ * enum Cmd implements EventId&lt;String&gt; {
+ *     RENAME
+ * }
+ *
+ * Transition.newTransition(states).from(OPENED).consume(Cmd.RENAME, name -&gt; door.setName(name)).build();
+ * door.fireEvent(Cmd.RENAME, "front door");
+ * </pre>
+ * <p>
+ * Events fired without message are typed {@code Void}.
+ * </p>
+ *
+ * @param <P> the message type
  */
-public interface EventId {
+public interface EventId<P> {
 }
@@ -0,0 +1,514 @@
+package com.alu.oamp.fsm;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An append only journal of the events changing the state of state machines.
+ *
+ * <p>
+ * Each event making a state machine transition to a target state is appended to the
+ * journal, on the event loop thread, once the transition is done and the listeners are
+ * notified: the state machine name,
+ * the event code, the event message and a timestamp. The journal survives a JVM restart,
+ * and is replayed on startup to restore the state of each state machine:
+ * </p>
+ * <pre>
+ * EventJournal journal = EventJournal.newJournal(directory)
+ *         .codec(EventCodec.ofEnum(Cmd.class))
+ *         .build();
+ * EventLoopOptions options = EventLoopOptions.newOptions().journal(journal).build();
+ * SimpleStateMachine door1 = new SimpleStateMachine(definition, "door 1", options);
+ * SimpleStateMachine door2 = new SimpleStateMachine(definition, "door 2", options);
+ *
+ * journal.replay(doors::get);
+ * </pre>
+ * <p>
+ * The journal is a sequence of memory mapped segment files of fixed size, a new segment
+ * being created when the current one is full. The journal is shared by the event loops
+ * without lock: a record is encoded in a buffer of the appending thread, then copied in
+ * place to the space claimed by an atomic increment of the segment write position. The
+ * segment is forced to the storage device periodically rather than per event (group
+ * commit), by the flusher thread, full segments included.
+ * </p>
+ * <p>
+ * On a system crash, the events of the last flush interval may be lost. On a JVM crash,
+ * the events appended are kept, but an event whose transition is done and whose record
+ * is not appended yet is lost: the state machine is then restored in the source state of
+ * the transition.
+ * </p>
+ * <p>
+ * A record is laid out as follows. Once its space is claimed, its length is written
+ * negated, then the rest of the record, then its length, so that a partially written
+ * record is skipped on replay. A record whose length is not written at all, a JVM crash
+ * right after its space is claimed, ends its segment on replay: the records after it in
+ * the segment are lost.
+ * </p>
+ * <pre>
+ * int length | long timestamp | long sequence | int event code | short name length | name | message
+ * </pre>
+ * <p>
+ * The sequence numbers the journaled events of each state machine, so that the events
+ * already applied to its state are skipped on replay.
+ * </p>
+ * <p>
+ * Replaying an event makes the state machine transition to the target state of the
+ * event, without running the transition action, the guard, or the entry and exit
+ * methods. The events handled by the regions of a state are not journaled, the regions
+ * are restored in their initial states.
+ * </p>
+ * <p>
+ * The segments are kept until they are truncated, once the state of the state machines
+ * is saved elsewhere, see {@link #truncate(long)}. A {@link StateSnapshot} attached to the
+ * journal truncates it when written: the state machines are then restored from the
+ * snapshot, and the journal replays only the events that followed.
+ * </p>
+ */
+public final class EventJournal implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EventJournal.class);
+
+    private static final String SUFFIX = ".journal";
+    private static final int HEADER = 4 + 8 + 8 + 4 + 2;
+    private static final int TIMEOUT_CODE = -1;
+
+    private final Path directory;
+    private final EventCodec codec;
+    private final int segmentSize;
+    private final TimerHandle flusher;
+    private final ThreadLocal<Writer> writers = ThreadLocal.withInitial(Writer::new);
+    private volatile Segment segment;
+    // the full segments, forced by the flusher
+    private final Queue<Segment> unforced = new ConcurrentLinkedQueue<>();
+    private final Object flushing = new Object();
+    private volatile boolean closed;
+
+    private EventJournal(Builder builder) throws IOException {
+        this.directory = builder.directory;
+        this.codec = builder.codec;
+        this.segmentSize = builder.segmentSize;
+        Files.createDirectories(directory);
+        List<Path> segments = segments();
+        // appends to a new segment, the last one may end with a partial record
+        long sequence = segments.isEmpty() ? 0 : sequenceOf(segments.get(segments.size() - 1)) + 1;
+        this.segment = new Segment(sequence, map(sequence));
+        this.flusher = new TimerScheduler("Journal " + directory)
+                .schedulePeriodic(this::flush, builder.flushInterval, builder.flushInterval);
+    }
+
+    /**
+     * Returns a new journal builder.
+     *
+     * @param directory the directory of the journal segments
+     * @return the builder
+     */
+    public static Builder newJournal(Path directory) {
+        return new Builder(directory);
+    }
+
+    /**
+     * Returns the journaled name of a state machine.
+     *
+     * @param name the state machine name
+     * @return the name bytes
+     */
+    static byte[] encodeName(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("State machine name is too long: " + name);
+        }
+        return bytes;
+    }
+
+    /**
+     * Appends an event to the journal.
+     *
+     * @param name     the state machine name, see {@link #encodeName(String)}
+     * @param sequence the sequence number of the event, among the events of the state machine
+     * @param eventId  the event id
+     * @param message  the event message or null
+     */
+    void append(byte[] name, long sequence, EventId<?> eventId, Object message) {
+
+        if (closed) {
+            return;
+        }
+        int code = eventId == SimpleStateMachine.InternalEvent.TIMEOUT ? TIMEOUT_CODE : codec.encode(eventId);
+        Writer writer = writers.get();
+        ByteBuffer record = writer.encode(name, sequence, code, message, System.currentTimeMillis());
+        if (record == null) {
+            LOGGER.error("Event {} doesn't fit in a journal segment, event is lost", eventId);
+            return;
+        }
+        int length = record.remaining();
+        Segment current = segment;
+        long start = current.claim(length);
+        while (start < 0) {
+            // the record doesn't fit in the remainder of the segment
+            if (closed) {
+                return;
+            }
+            try {
+                current = roll(current);
+            } catch (IOException ex) {
+                LOGGER.error("Journal segment " + (current.sequence + 1) + " can't be created, event is lost", ex);
+                return;
+            }
+            start = current.claim(length);
+        }
+        writer.copy(record, current, (int) start);
+    }
+
+    private synchronized Segment roll(Segment full) throws IOException {
+        Segment current = segment;
+        if (current != full || closed) {
+            // rolled by another thread
+            return current;
+        }
+        // the records claimed before the roll are still being copied
+        unforced.add(full);
+        current = new Segment(full.sequence + 1, map(full.sequence + 1));
+        segment = current;
+        return current;
+    }
+
+    /**
+     * Forces the journaled events to the storage device.
+     *
+     * <p>
+     * Invoked periodically, with the flush interval, on the flusher thread. The segments
+     * filled since the last flush are forced first, then the current segment.
+     * </p>
+     */
+    public void flush() {
+        synchronized (flushing) {
+            Segment full;
+            while ((full = unforced.poll()) != null) {
+                full.buffer.force();
+            }
+            Segment current = segment;
+            long position = current.position.get();
+            if (position != current.flushed) {
+                current.flushed = position;
+                current.buffer.force();
+            }
+        }
+    }
+
+    /**
+     * Returns the position of the journal, the position of the events appended from now on.
+     *
+     * @return the journal position
+     */
+    public long getPosition() {
+        Segment current = segment;
+        return current.sequence * segmentSize + Math.min(current.position.get(), segmentSize);
+    }
+
+    /**
+     * Deletes the segments holding only events appended before a position.
+     *
+     * <p>
+     * Once truncated, the journal no longer restores the state of the state machines
+     * before the position: it must have been saved elsewhere, as a {@link StateSnapshot}
+     * does.
+     * </p>
+     *
+     * @param position a journal position, see {@link #getPosition()}
+     * @return the number of segments deleted
+     * @throws IOException if the segments can't be listed
+     */
+    public int truncate(long position) throws IOException {
+
+        long first = position / segmentSize;
+        int deleted = 0;
+        for (Path path : segments()) {
+            if (sequenceOf(path) >= first) {
+                break;
+            }
+            try {
+                Files.delete(path);
+                deleted++;
+            } catch (IOException ex) {
+                // a segment still mapped can't be deleted on some systems
+                LOGGER.warn("Journal segment {} can't be deleted: {}", path, ex.toString());
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Replays the journal, restoring the state of the state machines.
+     *
+     * <p>
+     * The journal must be replayed before any event is fired on the state machines, and
+     * after the snapshot they were saved in, if any, is restored: the events already
+     * applied to a state machine are skipped. Once replayed, the timers of the restored
+     * timed states are armed.
+     * </p>
+     *
+     * @param machines the state machines, by name, the events of unknown machines are skipped
+     * @return the number of events replayed
+     * @throws IOException if a segment can't be read
+     */
+    public int replay(Function<String, SimpleStateMachine> machines) throws IOException {
+
+        int replayed = 0;
+        Set<SimpleStateMachine> restored = new HashSet<>();
+        for (Path path : segments()) {
+            ByteBuffer records = read(path);
+            while (records.remaining() >= HEADER) {
+                int start = records.position();
+                int length = records.getInt();
+                if (length < 0 && -length >= HEADER && -length <= records.limit() - start) {
+                    // partially written record
+                    records.position(start - length);
+                    continue;
+                }
+                if (length < HEADER || length > records.limit() - start) {
+                    // end of segment, or record whose length is not written
+                    break;
+                }
+                records.getLong();
+                long sequence = records.getLong();
+                int code = records.getInt();
+                byte[] name = new byte[records.getShort()];
+                records.get(name);
+                records.position(start + length);
+
+                SimpleStateMachine machine = machines.apply(new String(name, StandardCharsets.UTF_8));
+                EventId<?> eventId = code == TIMEOUT_CODE ? SimpleStateMachine.InternalEvent.TIMEOUT : codec.decode(code);
+                if (machine != null && eventId != null && sequence > machine.getJournaled()) {
+                    machine.replay(eventId, sequence);
+                    restored.add(machine);
+                    replayed++;
+                }
+            }
+        }
+        for (SimpleStateMachine machine : restored) {
+            machine.restored();
+        }
+        return replayed;
+    }
+
+    /**
+     * Flushes and closes the journal.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        flusher.cancel();
+        flush();
+    }
+
+    private List<Path> segments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path path : stream) {
+                segments.add(path);
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private static long sequenceOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+
+    private MappedByteBuffer map(long sequence) throws IOException {
+        Path path = directory.resolve(String.format("%019d%s", sequence, SUFFIX));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+    }
+
+    private static ByteBuffer read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * A segment being appended to.
+     */
+    private static final class Segment {
+
+        private final long sequence;
+        private final MappedByteBuffer buffer;
+        // the next free byte, past the capacity once full
+        private final AtomicLong position = new AtomicLong();
+        private long flushed;
+
+        Segment(long sequence, MappedByteBuffer buffer) {
+            this.sequence = sequence;
+            this.buffer = buffer;
+        }
+
+        /**
+         * Claims the space of a record.
+         *
+         * @param length the record length
+         * @return the record offset or -1 if the segment is full
+         */
+        long claim(int length) {
+            long start = position.getAndAdd(length);
+            return start + length <= buffer.capacity() ? start : -1;
+        }
+    }
+
+    /**
+     * The record buffer of a thread appending to the journal.
+     */
+    private final class Writer {
+
+        private ByteBuffer record = ByteBuffer.allocate(256);
+        private Segment segment;
+        // the view of the segment of the thread, with its own position
+        private ByteBuffer view;
+
+        /**
+         * Encodes a record.
+         *
+         * @return the record, its length not written yet, or null if it doesn't fit in a segment
+         */
+        ByteBuffer encode(byte[] name, long sequence, int code, Object message, long timestamp) {
+            while (true) {
+                try {
+                    record.clear();
+                    record.position(4);
+                    record.putLong(timestamp);
+                    record.putLong(sequence);
+                    record.putInt(code);
+                    record.putShort((short) name.length);
+                    record.put(name);
+                    if (message != null) {
+                        codec.writeMessage(message, record);
+                    }
+                    record.flip();
+                    return record;
+                } catch (BufferOverflowException ex) {
+                    if (record.capacity() >= segmentSize) {
+                        return null;
+                    }
+                    record = ByteBuffer.allocate(Math.min(record.capacity() * 2, segmentSize));
+                }
+            }
+        }
+
+        void copy(ByteBuffer record, Segment target, int start) {
+            if (segment != target) {
+                segment = target;
+                view = target.buffer.duplicate();
+            }
+            int length = record.remaining();
+            // skipped on replay until complete
+            view.putInt(start, -length);
+            record.position(4);
+            view.position(start + 4);
+            view.put(record);
+            view.putInt(start, length);
+        }
+    }
+
+    /**
+     * A journal builder.
+     */
+    public static class Builder {
+
+        private static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+        private static final long DEFAULT_FLUSH_INTERVAL = 10;
+
+        private final Path directory;
+        private EventCodec codec;
+        private int segmentSize = DEFAULT_SEGMENT_SIZE;
+        private long flushInterval = DEFAULT_FLUSH_INTERVAL;
+
+        private Builder(Path directory) {
+            this.directory = directory;
+        }
+
+        /**
+         * Specifies the codec of the journaled events, mandatory.
+         *
+         * @param codec the event codec
+         * @return the builder
+         */
+        public Builder codec(EventCodec codec) {
+            this.codec = codec;
+            return this;
+        }
+
+        /**
+         * Specifies the size of a segment file, 64 MB by default.
+         *
+         * @param segmentSize the segment size in bytes
+         * @return the builder
+         */
+        public Builder segmentSize(int segmentSize) {
+            this.segmentSize = segmentSize;
+            return this;
+        }
+
+        /**
+         * Specifies the interval between two flushes to the storage device, 10 ms by default.
+         *
+         * @param flushInterval the flush interval in milliseconds
+         * @return the builder
+         */
+        public Builder flushInterval(long flushInterval) {
+            this.flushInterval = flushInterval;
+            return this;
+        }
+
+        /**
+         * Builds the journal, starting a new segment.
+         *
+         * @return the journal
+         * @throws IOException if the segment can't be created
+         */
+        public EventJournal build() throws IOException {
+            if (directory == null) {
+                throw new IllegalArgumentException("directory can't be null.");
+            }
+            if (codec == null) {
+                throw new IllegalArgumentException("codec can't be null.");
+            }
+            if (segmentSize < 1024) {
+                throw new IllegalArgumentException("segment size must be at least 1024 bytes");
+            }
+            if (flushInterval <= 0) {
+                throw new IllegalArgumentException("flush interval must be positive");
+            }
+            return new EventJournal(this);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.alu.oamp.fsm;
+
+/**
+ * An event loop.
+ *
+ * <p>
+ * An event loop processes the messages it is sent one at a time, in the order they
+ * are sent. The processing of a message always completes before the processing of
+ * the next message starts.
+ * </p>
+ *
+ * @param <T>
+ *            the message sent to the event loop.
+ */
+public interface EventLoop<T> {
+
+	/**
+	 * Sends a message to the event loop.
+	 *
+	 * @param message
+	 *            the message sent
+	 */
+	void send(T message);
+
+	/**
+	 * Sends a message to the event loop and tells what became of it.
+	 *
+	 * <p>
+	 * Senders can use the status to throttle when the event loop is overloaded.
+	 * </p>
+	 *
+	 * @param message
+	 *            the message sent
+	 * @return the send status
+	 */
+	SendStatus offer(T message);
+
+	/**
+	 * Returns the number of messages waiting to be processed.
+	 *
+	 * @return the number of pending messages
+	 */
+	int getPendingCount();
+
+	/**
+	 * Shutdown the event loop.
+	 */
+	void shutdown();
+
+	/**
+	 * Returns true when the event loop has shutdown.
+	 *
+	 * @return true when the event loop has shutdown
+	 */
+	boolean isShutdown();
+}
@@ -0,0 +1,590 @@
+package com.alu.oamp.fsm;
+
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/**
+ * Event loop options.
+ *
+ * <p>
+ * Options are immutable and can be shared by several event loops.
+ * </p>
+ */
+public class EventLoopOptions {
+
+	private static final int DEFAULT_CAPACITY = 1000;
+	private static final int DEFAULT_SHUTDOWN_DELAY = 5;
+
+	private final int capacity;
+	private final int shutdownDelay;
+	private final int maxBatch;
+	private final IntFunction<Mailbox<?>> mailbox;
+	private final OverflowPolicy overflowPolicy;
+	private final long blockTimeout;
+	private final ThreadFactory threadFactory;
+	private final InternalTransitionExecutor internalTransitions;
+	private final boolean metrics;
+	private final int flightRecorder;
+	private final ForkJoinPool regionPool;
+	private final boolean inline;
+	private final EventJournal journal;
+	private final Scheduler scheduler;
+	private final Clock clock;
+	// null when the mailbox has no priority lane
+	private final Set<EventId<?>> priorityEvents;
+
+	private EventLoopOptions(Builder builder) {
+		this.capacity = builder.capacity;
+		this.shutdownDelay = builder.shutdownDelay;
+		this.maxBatch = builder.maxBatch;
+		this.mailbox = builder.mailbox;
+		this.overflowPolicy = builder.overflowPolicy;
+		this.blockTimeout = builder.blockTimeout;
+		this.threadFactory = builder.threadFactory;
+		this.internalTransitions = builder.internalTransitions;
+		this.metrics = builder.metrics;
+		this.flightRecorder = builder.flightRecorder;
+		this.regionPool = builder.regionPool;
+		this.inline = builder.inline;
+		this.journal = builder.journal;
+		this.scheduler = builder.scheduler;
+		this.clock = builder.clock != null ? builder.clock
+				: builder.scheduler instanceof VirtualTimeScheduler ? ((VirtualTimeScheduler) builder.scheduler).getClock()
+				: Clock.systemUTC();
+		this.priorityEvents = builder.priorityEvents == null ? null
+				: Collections.unmodifiableSet(new HashSet<>(builder.priorityEvents));
+	}
+
+	/**
+	 * Returns the event loop queue capacity.
+	 *
+	 * @return the capacity
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Returns the shutdown delay in seconds.
+	 *
+	 * @return the shutdown delay
+	 */
+	public int getShutdownDelay() {
+		return shutdownDelay;
+	}
+
+	/**
+	 * Returns the maximum number of messages drained at once.
+	 *
+	 * @return the maximum batch size
+	 */
+	public int getMaxBatch() {
+		return maxBatch;
+	}
+
+	/**
+	 * Returns the overflow policy.
+	 *
+	 * @return the overflow policy
+	 */
+	public OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+
+	/**
+	 * Returns how long a sender waits for room in the mailbox with the block policy.
+	 *
+	 * @return the block timeout in nanoseconds
+	 */
+	public long getBlockTimeout() {
+		return blockTimeout;
+	}
+
+	/**
+	 * Returns the factory of the event loop threads.
+	 *
+	 * @return the thread factory
+	 */
+	public ThreadFactory getThreadFactory() {
+		return threadFactory;
+	}
+
+	/**
+	 * Returns the executor of the state machine internal transitions.
+	 *
+	 * @return the executor or null for the default executor, see {@link Builder#internalTransitions}
+	 */
+	public InternalTransitionExecutor getInternalTransitions() {
+		return internalTransitions;
+	}
+
+	/**
+	 * Returns true when the state machine metrics are enabled.
+	 *
+	 * @return true when metrics are enabled
+	 */
+	public boolean isMetricsEnabled() {
+		return metrics;
+	}
+
+	/**
+	 * Returns the number of entries of the state machine flight recorder.
+	 *
+	 * @return the number of entries, 0 when the flight recorder is disabled
+	 */
+	public int getFlightRecorder() {
+		return flightRecorder;
+	}
+
+	/**
+	 * Returns the pool running the independent regions of the state machine.
+	 *
+	 * @return the region pool
+	 */
+	public ForkJoinPool getRegionPool() {
+		return regionPool;
+	}
+
+	/**
+	 * Returns true when the state machine processes its events on the threads firing them.
+	 *
+	 * @return true for an inline event loop
+	 */
+	public boolean isInline() {
+		return inline;
+	}
+
+	/**
+	 * Returns the journal of the events changing the state of the state machine.
+	 *
+	 * @return the journal, null when the events are not journaled
+	 */
+	public EventJournal getJournal() {
+		return journal;
+	}
+
+	/**
+	 * Returns the scheduler of the timers of the state machine.
+	 *
+	 * @return the scheduler, null when the timers use the scheduler of their timed state
+	 */
+	public Scheduler getScheduler() {
+		return scheduler;
+	}
+
+	/**
+	 * Returns the clock of the state machine.
+	 *
+	 * @return the clock
+	 */
+	public Clock getClock() {
+		return clock;
+	}
+
+	/**
+	 * Returns the events queued in the priority lane of the state machine mailbox.
+	 *
+	 * @return the priority events, the timer events excepted, null when the mailbox has no priority lane
+	 */
+	public Set<EventId<?>> getPriorityEvents() {
+		return priorityEvents;
+	}
+
+	/**
+	 * Returns true when an event is queued in the priority lane.
+	 *
+	 * @param eventId
+	 *            the event id
+	 * @return true for a priority event
+	 */
+	boolean isPriority(EventId<?> eventId) {
+		return priorityEvents != null
+				&& (eventId instanceof SimpleStateMachine.InternalEvent || priorityEvents.contains(eventId));
+	}
+
+	/**
+	 * Creates the mailbox of a state machine event loop, with a priority lane when
+	 * priority events are specified.
+	 *
+	 * @param eventOf
+	 *            returns the event id of a message
+	 * @param <T>
+	 *            the message type
+	 * @return a new mailbox
+	 */
+	<T> Mailbox<T> newMailbox(Function<? super T, EventId<?>> eventOf) {
+		if (priorityEvents == null) {
+			return newMailbox();
+		}
+		return new PriorityMailbox<>(Arrays.asList(newMailbox(), newMailbox()),
+				message -> isPriority(eventOf.apply(message)) ? 0 : 1);
+	}
+
+	/**
+	 * Creates the mailbox of an event loop.
+	 *
+	 * @param <T>
+	 *            the message type
+	 * @return a new mailbox
+	 */
+	@SuppressWarnings("unchecked")
+	<T> Mailbox<T> newMailbox() {
+		return (Mailbox<T>) mailbox.apply(capacity);
+	}
+
+	/**
+	 * Returns the default options.
+	 *
+	 * @return the default options
+	 */
+	public static EventLoopOptions defaults() {
+		return newOptions().build();
+	}
+
+	/**
+	 * Returns a new options builder.
+	 *
+	 * @return the builder
+	 */
+	public static Builder newOptions() {
+		return new Builder();
+	}
+
+	/**
+	 * An options builder.
+	 */
+	public static class Builder {
+
+		private int capacity = DEFAULT_CAPACITY;
+		private int shutdownDelay = DEFAULT_SHUTDOWN_DELAY;
+		private int maxBatch = 1;
+		private IntFunction<Mailbox<?>> mailbox = RingBufferMailbox::new;
+		private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_NEWEST;
+		private long blockTimeout;
+		private ThreadFactory threadFactory = ThreadFactories.platform();
+		private InternalTransitionExecutor internalTransitions;
+		private boolean metrics;
+		private int flightRecorder;
+		private ForkJoinPool regionPool = ForkJoinPool.commonPool();
+		private boolean inline;
+		private EventJournal journal;
+		private Scheduler scheduler;
+		private Clock clock;
+		private Set<EventId<?>> priorityEvents;
+
+		private Builder() {
+		}
+
+		/**
+		 * Specifies the event loop queue capacity.
+		 *
+		 * <p>When messages are produced beyond the queue capacity, the messages are discarded.</p>
+		 *
+		 * @param capacity
+		 *            the capacity
+		 * @return the builder
+		 */
+		public Builder capacity(int capacity) {
+			this.capacity = capacity;
+			return this;
+		}
+
+		/**
+		 * Specifies the shutdown delay.
+		 *
+		 * @param shutdownDelay
+		 *            the shutdown delay in seconds
+		 * @return the builder
+		 */
+		public Builder shutdownDelay(int shutdownDelay) {
+			this.shutdownDelay = shutdownDelay;
+			return this;
+		}
+
+		/**
+		 * Specifies the maximum number of messages drained at once.
+		 *
+		 * <p>
+		 * When greater than 1, the event loop takes all the pending messages, up to the
+		 * maximum, in one go and hands them over to {@link AbstractEventLoop#onBatch(java.util.List)}.
+		 * By default, messages are processed one by one.
+		 * </p>
+		 *
+		 * @param maxBatch
+		 *            the maximum batch size
+		 * @return the builder
+		 */
+		public Builder maxBatch(int maxBatch) {
+			this.maxBatch = maxBatch;
+			return this;
+		}
+
+		/**
+		 * Specifies the mailbox implementation.
+		 *
+		 * <p>By default, the event loop uses a {@link RingBufferMailbox}.</p>
+		 *
+		 * @param mailbox
+		 *            the mailbox factory, invoked with the capacity
+		 * @return the builder
+		 */
+		public Builder mailbox(IntFunction<Mailbox<?>> mailbox) {
+			this.mailbox = mailbox;
+			return this;
+		}
+
+		/**
+		 * Specifies what to do with a message sent while the mailbox is full.
+		 *
+		 * <p>By default, the message is rejected.</p>
+		 *
+		 * @param overflowPolicy
+		 *            the overflow policy
+		 * @return the builder
+		 */
+		public Builder overflowPolicy(OverflowPolicy overflowPolicy) {
+			this.overflowPolicy = overflowPolicy;
+			return this;
+		}
+
+		/**
+		 * Specifies the block policy, with the maximum time a sender waits for room in the mailbox.
+		 *
+		 * @param timeout
+		 *            the timeout
+		 * @param unit
+		 *            the timeout unit
+		 * @return the builder
+		 */
+		public Builder block(long timeout, TimeUnit unit) {
+			this.overflowPolicy = OverflowPolicy.BLOCK;
+			this.blockTimeout = unit.toNanos(timeout);
+			return this;
+		}
+
+		/**
+		 * Specifies the factory of the event loop threads.
+		 *
+		 * <p>
+		 * By default, event loops run on platform threads. The state machines given another
+		 * factory also run their internal transitions on threads of this factory.
+		 * </p>
+		 *
+		 * @param threadFactory
+		 *            the thread factory, see {@link ThreadFactories}
+		 * @return the builder
+		 */
+		public Builder threadFactory(ThreadFactory threadFactory) {
+			this.threadFactory = threadFactory;
+			return this;
+		}
+
+		/**
+		 * Specifies the executor of the state machine internal transitions.
+		 *
+		 * <p>
+		 * By default, the state machines running on platform threads share the executor of
+		 * the process, see {@link InternalTransitionExecutor#shared()}. The state machines
+		 * given another thread factory, virtual threads for instance, create a bounded executor
+		 * of their own on their first internal transition, running on threads of this factory.
+		 * A shared executor lets many state machines run their internal transitions on the
+		 * same threads.
+		 * </p>
+		 *
+		 * @param internalTransitions
+		 *            the internal transition executor
+		 * @return the builder
+		 */
+		public Builder internalTransitions(InternalTransitionExecutor internalTransitions) {
+			this.internalTransitions = internalTransitions;
+			return this;
+		}
+
+		/**
+		 * Enables the state machine metrics, disabled by default.
+		 *
+		 * @param metrics
+		 *            true to enable the metrics
+		 * @return the builder
+		 * @see StateMachineMetrics
+		 */
+		public Builder metrics(boolean metrics) {
+			this.metrics = metrics;
+			return this;
+		}
+
+		/**
+		 * Enables the state machine flight recorder, disabled by default.
+		 *
+		 * @param entries
+		 *            the number of dispatches kept, rounded up to a power of two
+		 * @return the builder
+		 * @see FlightRecorder
+		 */
+		public Builder flightRecorder(int entries) {
+			this.flightRecorder = entries;
+			return this;
+		}
+
+		/**
+		 * Specifies the pool running the independent regions of the state machine.
+		 *
+		 * <p>By default, the independent regions run on the common fork join pool.</p>
+		 *
+		 * @param regionPool
+		 *            the region pool
+		 * @return the builder
+		 * @see Region
+		 */
+		public Builder regionPool(ForkJoinPool regionPool) {
+			this.regionPool = regionPool;
+			return this;
+		}
+
+		/**
+		 * Makes the state machine process its events on the threads firing them, disabled by default.
+		 *
+		 * <p>
+		 * The state machine then has no event loop thread, see {@link InlineEventLoop}: firing an
+		 * event runs the transition before returning, unless the event is fired by an action,
+		 * in which case the event is processed once the current transition completes.
+		 * </p>
+		 *
+		 * @param inline
+		 *            true to process the events on the threads firing them
+		 * @return the builder
+		 */
+		public Builder inline(boolean inline) {
+			this.inline = inline;
+			return this;
+		}
+
+		/**
+		 * Specifies the journal of the events changing the state of the state machine, none by default.
+		 *
+		 * <p>
+		 * The journal can be shared by many state machines, which must then have distinct names.
+		 * It is replayed on restart to restore their states, see {@link EventJournal#replay}.
+		 * </p>
+		 *
+		 * @param journal
+		 *            the event journal
+		 * @return the builder
+		 */
+		public Builder journal(EventJournal journal) {
+			this.journal = journal;
+			return this;
+		}
+
+		/**
+		 * Specifies the scheduler of the timers of the state machine.
+		 *
+		 * <p>
+		 * By default, the timers of a timed state are armed on the scheduler of the state,
+		 * see {@link TimedState#setProvider(java.util.function.Supplier)}. The scheduler of
+		 * the options takes precedence, so that state machines sharing their definition can
+		 * run in virtual time, see {@link VirtualTimeScheduler}.
+		 * </p>
+		 *
+		 * @param scheduler
+		 *            the scheduler
+		 * @return the builder
+		 */
+		public Builder scheduler(Scheduler scheduler) {
+			this.scheduler = scheduler;
+			return this;
+		}
+
+		/**
+		 * Specifies the clock timing the timers of the state machine.
+		 *
+		 * <p>
+		 * By default, the clock of the scheduler when it is a {@link VirtualTimeScheduler},
+		 * the system clock otherwise. The clock must match the scheduler: with a virtual time
+		 * scheduler, the clock must read its virtual time, see {@link VirtualTimeScheduler#getClock()}.
+		 * </p>
+		 *
+		 * @param clock
+		 *            the clock
+		 * @return the builder
+		 */
+		public Builder clock(Clock clock) {
+			this.clock = clock;
+			return this;
+		}
+
+		/**
+		 * Gives the state machine mailbox a priority lane, for the timer events and the specified events.
+		 *
+		 * <p>
+		 * The events of the priority lane overtake the events of the bulk lane, so that a state
+		 * times out on time even when the state machine is flooded with events. Each lane has
+		 * the capacity of the mailbox, a priority event is only rejected when the priority lane
+		 * is full. The events of a lane are dispatched in order, but a priority event may be
+		 * dispatched before a bulk event fired earlier. See {@link PriorityMailbox}.
+		 * </p>
+		 * <p>
+		 * Invoked without event, the priority lane only holds the timeout and heartbeat events.
+		 * </p>
+		 *
+		 * @param eventIds
+		 *            the control events queued in the priority lane
+		 * @return the builder
+		 */
+		public Builder priority(EventId<?>... eventIds) {
+			if (priorityEvents == null) {
+				priorityEvents = new HashSet<>();
+			}
+			priorityEvents.addAll(Arrays.asList(eventIds));
+			return this;
+		}
+
+		/**
+		 * Builds the options.
+		 *
+		 * @return the options
+		 */
+		public EventLoopOptions build() {
+			if (capacity <= 0) {
+				throw new IllegalArgumentException("capacity must be positive");
+			}
+			if (shutdownDelay <= 0) {
+				throw new IllegalArgumentException("shutdown delay must be positive");
+			}
+			if (maxBatch <= 0) {
+				throw new IllegalArgumentException("max batch must be positive");
+			}
+			if (mailbox == null) {
+				throw new IllegalArgumentException("mailbox can't be null");
+			}
+			if (overflowPolicy == null) {
+				throw new IllegalArgumentException("overflow policy can't be null");
+			}
+			if (threadFactory == null) {
+				throw new IllegalArgumentException("thread factory can't be null");
+			}
+			if (regionPool == null) {
+				throw new IllegalArgumentException("region pool can't be null");
+			}
+			if (clock != null && scheduler instanceof VirtualTimeScheduler
+					&& !((VirtualTimeScheduler) scheduler).isVirtual(clock)) {
+				throw new IllegalArgumentException("clock must read the virtual time of the scheduler");
+			}
+			if (flightRecorder < 0) {
+				throw new IllegalArgumentException("flight recorder entries can't be negative");
+			}
+			if (blockTimeout < 0) {
+				throw new IllegalArgumentException("block timeout can't be negative");
+			}
+			return new EventLoopOptions(this);
+		}
+	}
+}
@@ -0,0 +1,249 @@
+package com.alu.oamp.fsm;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A state machine flight recorder.
+ *
+ * <p>
+ * The recorder keeps the last dispatches of a state machine in a fixed size ring
+ * buffer: when, from which state, which event, the outcome, to which state and how
+ * long the transition took. An entry is made of a few longs holding the state and
+ * event indexes of the transition table, so recording is lock free and never allocates,
+ * and can stay enabled in production. The entries are decoded when dumped:
+ * </p>
+ * <pre>
+ * for (FlightRecorder.Entry entry : door.getFlightRecord()) {
+ *     LOGGER.info("{}", entry);
+ * }
+ * </pre>
+ * <p>
+ * Entries are written by the event loop thread only. A dump may run concurrently,
+ * it skips the entries overwritten while it reads them.
+ * </p>
+ */
+public final class FlightRecorder {
+
+    /**
+     * The outcome of a dispatch.
+     */
+    public enum Outcome {
+        /**
+         * The state machine made a transition to a target state.
+         */
+        TRANSITIONED,
+        /**
+         * The state machine ran an internal transition, the duration is the submission time.
+         */
+        INTERNAL,
+        /**
+         * The transition condition was false.
+         */
+        GUARDED,
+        /**
+         * No transition is defined for the event in the source state.
+         */
+        IGNORED,
+        /**
+         * The source state timed out.
+         */
+        TIMEOUT,
+        /**
+         * The transition action threw an exception.
+         */
+        FAILED
+    }
+
+    /**
+     * The largest state or event index that fits in an entry.
+     */
+    static final int MAX_INDEX = 0xFFFE;
+
+    private static final Outcome[] OUTCOMES = Outcome.values();
+    private static final int NONE = 0xFFFF;
+    // sequence, time, packed indexes and outcome, duration
+    private static final int STRIDE = 4;
+
+    private final TransitionTable transitionTable;
+    private final AtomicLongArray entries;
+    private final int mask;
+    private final long baseNanos = System.nanoTime();
+    private final long baseMillis = System.currentTimeMillis();
+    private long sequence;
+
+    /**
+     * Creates a new flight recorder.
+     *
+     * @param transitionTable the transition table indexing states and events
+     * @param capacity        the number of entries, rounded up to a power of two
+     */
+    FlightRecorder(TransitionTable transitionTable, int capacity) {
+        if (capacity <= 0 || capacity > 1 << 24) {
+            throw new IllegalArgumentException("flight recorder capacity must be in ]0, 2^24]");
+        }
+        if (transitionTable.stateCount() > MAX_INDEX || transitionTable.eventCount() > MAX_INDEX) {
+            throw new IllegalArgumentException("too many states or events for the flight recorder");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.transitionTable = transitionTable;
+        this.entries = new AtomicLongArray(size * STRIDE);
+        this.mask = size - 1;
+    }
+
+    /**
+     * Records a dispatch, on the event loop thread.
+     *
+     * @param start    the dispatch start, from {@link System#nanoTime()}
+     * @param source   the source state index
+     * @param event    the event index, -1 for an unknown event
+     * @param outcome  the outcome
+     * @param target   the target state index
+     * @param duration the transition duration in nanoseconds
+     */
+    void record(long start, int source, int event, Outcome outcome, int target, long duration) {
+        long seq = ++sequence;
+        int base = ((int) seq & mask) * STRIDE;
+        // a zero sequence tells readers the entry is being written
+        entries.lazySet(base, 0);
+        entries.set(base + 1, start);
+        entries.set(base + 2, pack(source) | pack(event) << 16 | pack(target) << 32
+                | (long) outcome.ordinal() << 48);
+        entries.set(base + 3, duration);
+        entries.set(base, seq);
+    }
+
+    private static long pack(int index) {
+        return index < 0 ? NONE : index;
+    }
+
+    /**
+     * Returns the recorded entries, the oldest first.
+     *
+     * @return the entries
+     */
+    List<Entry> snapshot() {
+        int size = mask + 1;
+        List<Entry> snapshot = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            int base = i * STRIDE;
+            long seq = entries.get(base);
+            if (seq == 0) {
+                continue;
+            }
+            long time = entries.get(base + 1);
+            long packed = entries.get(base + 2);
+            long duration = entries.get(base + 3);
+            if (entries.get(base) != seq) {
+                // overwritten meanwhile
+                continue;
+            }
+            snapshot.add(new Entry(seq,
+                    baseMillis + TimeUnit.NANOSECONDS.toMillis(time - baseNanos),
+                    transitionTable.stateId(unpack(packed)),
+                    transitionTable.eventId(unpack(packed >>> 16)),
+                    OUTCOMES[(int) (packed >>> 48)],
+                    transitionTable.stateId(unpack(packed >>> 32)),
+                    duration));
+        }
+        Collections.sort(snapshot, (e1, e2) -> Long.compare(e1.sequence, e2.sequence));
+        return snapshot;
+    }
+
+    private static int unpack(long packed) {
+        int index = (int) (packed & 0xFFFF);
+        return index == NONE ? -1 : index;
+    }
+
+    /**
+     * A recorded dispatch.
+     */
+    public static final class Entry {
+
+        private final long sequence;
+        private final long time;
+        private final StateId source;
+        private final EventId<?> event;
+        private final Outcome outcome;
+        private final StateId target;
+        private final long duration;
+
+        private Entry(long sequence, long time, StateId source, EventId<?> event, Outcome outcome,
+                      StateId target, long duration) {
+            this.sequence = sequence;
+            this.time = time;
+            this.source = source;
+            this.event = event;
+            this.outcome = outcome;
+            this.target = target;
+            this.duration = duration;
+        }
+
+        /**
+         * Returns the dispatch time.
+         *
+         * @return the time in milliseconds since the epoch
+         */
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         * Returns the state the event was received in.
+         *
+         * @return the source state id
+         */
+        public StateId getSource() {
+            return source;
+        }
+
+        /**
+         * Returns the event.
+         *
+         * @return the event id or null if the event is unknown to the state machine
+         */
+        public EventId<?> getEvent() {
+            return event;
+        }
+
+        /**
+         * Returns the outcome of the dispatch.
+         *
+         * @return the outcome
+         */
+        public Outcome getOutcome() {
+            return outcome;
+        }
+
+        /**
+         * Returns the state after the dispatch.
+         *
+         * @return the target state id
+         */
+        public StateId getTarget() {
+            return target;
+        }
+
+        /**
+         * Returns the time the dispatch took.
+         *
+         * @return the duration in nanoseconds
+         */
+        public long getDuration() {
+            return duration;
+        }
+
+        @Override
+        public String toString() {
+            return Instant.ofEpochMilli(time) + " " + source + " --" + event + "--> " + target
+                    + " " + outcome + " " + duration + "ns";
+        }
+    }
+}
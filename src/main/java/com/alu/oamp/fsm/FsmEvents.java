@@ -0,0 +1,210 @@
+package com.alu.oamp.fsm;
+
+/**
+ * JDK Flight Recorder events of the state machines.
+ *
+ * <p>
+ * When enabled, the state machines and event loops emit custom JFR events, in the
+ * "State Machine" category:
+ * </p>
+ * <ul>
+ * <li>{@code com.alu.oamp.fsm.Transition}: the dispatch of an event, from the source state
+ * to the target state, with its outcome and duration,</li>
+ * <li>{@code com.alu.oamp.fsm.TimerScheduled} and {@code com.alu.oamp.fsm.TimerFired}: the
+ * timeout and heartbeat timers of the timed states,</li>
+ * <li>{@code com.alu.oamp.fsm.MailboxRejected}: a message rejected by a full event loop,</li>
+ * <li>{@code com.alu.oamp.fsm.SlowAction}: a transition action running longer than 10 ms
+ * (the threshold can be changed in the recording settings).</li>
+ * </ul>
+ * <p>
+ * The events are disabled by default and enabled with the {@code com.alu.oamp.fsm.jfr}
+ * system property, then recorded as any JFR event:
+ * </p>
+ * <pre>
+ * java -Dcom.alu.oamp.fsm.jfr=true -XX:StartFlightRecording=filename=fsm.jfr ...
+ * </pre>
+ * <p>
+ * The switch is a constant: when disabled, the methods return at once without creating
+ * any event, and the JIT compiler removes the event code altogether. The library targets
+ * Java 8, the event classes are loaded only when enabled on a runtime with JFR.
+ * </p>
+ * <p>
+ * The event classes are compiled by the {@code jfr} Maven profile, active by default on
+ * JDK 11 and later, and to be activated with {@code -Pjfr} on a JDK 8 update 262 or later.
+ * Without them, the events are not supported.
+ * </p>
+ */
+public final class FsmEvents {
+
+    /**
+     * The system property enabling the events.
+     */
+    public static final String PROPERTY = "com.alu.oamp.fsm.jfr";
+
+    static final boolean ENABLED = Boolean.getBoolean(PROPERTY) && isSupported();
+
+    private static final String EVENTS_CLASS = "com.alu.oamp.fsm.JfrEvents";
+
+    private FsmEvents() {
+    }
+
+    /**
+     * Returns true when the state machines emit JFR events.
+     *
+     * @return true when the events are enabled
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Returns true when the runtime has the JFR event API and the library its event classes.
+     *
+     * @return true when JFR is supported
+     */
+    public static boolean isSupported() {
+        try {
+            Class.forName("jdk.jfr.Event", false, FsmEvents.class.getClassLoader());
+            Class.forName(EVENTS_CLASS, false, FsmEvents.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Starts timing a transition.
+     *
+     * @return the transition event, null when the events are disabled
+     */
+    static Object beginTransition() {
+        if (!ENABLED) {
+            return null;
+        }
+        return Holder.EVENTS.beginTransition();
+    }
+
+    /**
+     * Commits a transition.
+     *
+     * @param event   the event returned by {@link #beginTransition()}
+     * @param machine the state machine name
+     * @param source  the source state
+     * @param eventId the dispatched event
+     * @param target  the state after the dispatch
+     * @param outcome the dispatch outcome
+     */
+    static void endTransition(Object event, String machine, StateId source, EventId<?> eventId,
+                              StateId target, FlightRecorder.Outcome outcome) {
+        if (!ENABLED) {
+            return;
+        }
+        Holder.EVENTS.endTransition(event, machine, source, eventId, target, outcome);
+    }
+
+    /**
+     * Starts timing a transition action.
+     *
+     * @return the action event, null when the events are disabled
+     */
+    static Object beginAction() {
+        if (!ENABLED) {
+            return null;
+        }
+        return Holder.EVENTS.beginAction();
+    }
+
+    /**
+     * Commits a transition action, when it is slower than the event threshold.
+     *
+     * @param event      the event returned by {@link #beginAction()}
+     * @param transition the transition
+     * @param failed     true when the action threw an exception
+     */
+    static void endAction(Object event, Transition transition, boolean failed) {
+        if (!ENABLED) {
+            return;
+        }
+        Holder.EVENTS.endAction(event, transition, failed);
+    }
+
+    /**
+     * Records a timer scheduled on entering a timed state.
+     *
+     * @param state  the timed state
+     * @param kind   the internal event fired by the timer
+     * @param delay  the delay in milliseconds
+     * @param period the period in milliseconds, 0 for a one shot timer
+     */
+    static void timerScheduled(StateId state, EventId<?> kind, long delay, long period) {
+        if (!ENABLED) {
+            return;
+        }
+        Holder.EVENTS.timerScheduled(state, kind, delay, period);
+    }
+
+    /**
+     * Records a timer firing.
+     *
+     * @param state the timed state
+     * @param kind  the internal event fired by the timer
+     */
+    static void timerFired(StateId state, EventId<?> kind) {
+        if (!ENABLED) {
+            return;
+        }
+        Holder.EVENTS.timerFired(state, kind);
+    }
+
+    /**
+     * Records a message rejected by a full event loop.
+     *
+     * @param loop    the event loop name
+     * @param policy  the overflow policy
+     * @param pending the number of pending messages
+     * @param blocked how long the sender waited for room, in nanoseconds
+     */
+    static void mailboxRejected(String loop, OverflowPolicy policy, int pending, long blocked) {
+        if (!ENABLED) {
+            return;
+        }
+        Holder.EVENTS.mailboxRejected(loop, policy, pending, blocked);
+    }
+
+    /**
+     * The JFR events, implemented by the event classes of the {@code jfr} profile.
+     */
+    interface Events {
+
+        Object beginTransition();
+
+        void endTransition(Object event, String machine, StateId source, EventId<?> eventId,
+                           StateId target, FlightRecorder.Outcome outcome);
+
+        Object beginAction();
+
+        void endAction(Object event, Transition transition, boolean failed);
+
+        void timerScheduled(StateId state, EventId<?> kind, long delay, long period);
+
+        void timerFired(StateId state, EventId<?> kind);
+
+        void mailboxRejected(String loop, OverflowPolicy policy, int pending, long blocked);
+    }
+
+    /**
+     * Loads the event classes on first use.
+     */
+    private static final class Holder {
+
+        static final Events EVENTS = load();
+
+        private static Events load() {
+            try {
+                return (Events) Class.forName(EVENTS_CLASS).getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException ex) {
+                throw new IllegalStateException("JFR events are not supported", ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,421 @@
+package com.alu.oamp.fsm;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A state machine runtime.
+ *
+ * <p>
+ * The runtime runs any number of state machines on a fixed number of worker threads
+ * (the number of cores by default), instead of one thread per state machine:
+ * </p>
+ * <pre>
+ * FsmRuntime runtime = new FsmRuntime("doors");
+ * SimpleStateMachine door1 = new SimpleStateMachine(definition, "door 1", runtime);
+ * SimpleStateMachine door2 = new SimpleStateMachine(definition, "door 2", runtime);
+ * </pre>
+ * <p>
+ * Each state machine gets its own event loop, a lightweight queue pinned to one of
+ * the workers. An event loop is scheduled on its worker when it receives messages
+ * and processes at most a few messages before yielding to the other event loops of
+ * the worker. An event loop is never scheduled twice, so the messages of a state
+ * machine are processed one at a time, in order, as with a dedicated thread.
+ * The internal transitions of the state machines share a bounded executor with
+ * as many threads as workers.
+ * </p>
+ * <p>
+ * The state machines can be given options, for their metrics, journal or mailbox
+ * for instance, see {@link SimpleStateMachine#SimpleStateMachine(StateMachineDefinition, String, FsmRuntime, EventLoopOptions)}.
+ * </p>
+ */
+public class FsmRuntime {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FsmRuntime.class);
+
+    private static final int DEFAULT_CAPACITY = 1000;
+    private static final int DEFAULT_LOOPS_PER_WORKER = 1 << 16;
+    private static final int THROUGHPUT = 64;
+    private static final int SHUTDOWN_DELAY = 5;
+
+    private final Worker[] workers;
+    private final AtomicInteger next = new AtomicInteger();
+    private final int loopsPerWorker;
+    private final InternalTransitionExecutor internalTransitions;
+
+    /**
+     * Creates a new runtime with one worker per core.
+     *
+     * @param name the runtime name (which gives the worker thread names)
+     */
+    public FsmRuntime(String name) {
+        this(Runtime.getRuntime().availableProcessors(), name);
+    }
+
+    /**
+     * Creates a new runtime.
+     *
+     * @param workerCount the number of worker threads
+     * @param name        the runtime name (which gives the worker thread names)
+     */
+    public FsmRuntime(int workerCount, String name) {
+        this(workerCount, DEFAULT_LOOPS_PER_WORKER, name);
+    }
+
+    /**
+     * Creates a new runtime.
+     *
+     * @param workerCount    the number of worker threads
+     * @param loopsPerWorker the maximum number of event loops pinned to a worker
+     * @param name           the runtime name (which gives the worker thread names)
+     */
+    public FsmRuntime(int workerCount, int loopsPerWorker, String name) {
+        if (workerCount <= 0) {
+            throw new IllegalArgumentException("worker count must be positive");
+        }
+        if (loopsPerWorker <= 0) {
+            throw new IllegalArgumentException("loops per worker must be positive");
+        }
+        this.loopsPerWorker = loopsPerWorker;
+        this.workers = new Worker[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new Worker(loopsPerWorker, name + "-" + i);
+        }
+        this.internalTransitions = InternalTransitionExecutor.newExecutor().threads(workerCount).build();
+    }
+
+    /**
+     * Creates a new event loop running on this runtime.
+     *
+     * @param handler the message handler
+     * @param <T>     the message type
+     * @return the event loop
+     */
+    public <T> EventLoop<T> newEventLoop(Consumer<T> handler) {
+        return newEventLoop(handler, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a new event loop running on this runtime.
+     *
+     * @param handler  the message handler
+     * @param capacity the event loop queue capacity
+     * @param <T>      the message type
+     * @return the event loop
+     */
+    public <T> EventLoop<T> newEventLoop(Consumer<T> handler, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        return new MultiplexedEventLoop<>(nextWorker(), handler, message -> { },
+                new LinkedMailbox<>(capacity), OverflowPolicy.DROP_NEWEST);
+    }
+
+    /**
+     * Creates a new event loop of a state machine running on this runtime.
+     *
+     * <p>
+     * The mailbox, capacity and priority lanes of the options apply, and so do the drop
+     * newest and drop oldest overflow policies. The block, caller runs and coalesce policies
+     * are refused, as are inline options: the workers must neither wait for room in a mailbox
+     * nor let the senders run the state machines. The batch size, thread factory and shutdown
+     * delay do not apply.
+     * </p>
+     *
+     * @param handler the message handler
+     * @param dropped invoked with the messages dropped by the drop oldest policy, or left
+     *                pending when the runtime is shutdown
+     * @param options the state machine options
+     * @return the event loop
+     * @throws IllegalArgumentException when the options are not supported
+     */
+    EventLoop<SimpleStateMachine.Event> newEventLoop(Consumer<SimpleStateMachine.Event> handler,
+                                                     Consumer<SimpleStateMachine.Event> dropped,
+                                                     EventLoopOptions options) {
+        if (options.isInline()) {
+            throw new IllegalArgumentException("state machines running on a runtime can't be inline.");
+        }
+        OverflowPolicy policy = options.getOverflowPolicy();
+        if (policy != OverflowPolicy.DROP_NEWEST && policy != OverflowPolicy.DROP_OLDEST) {
+            throw new IllegalArgumentException(policy + " policy is not supported by the runtime.");
+        }
+        return new MultiplexedEventLoop<>(nextWorker(), handler, dropped,
+                options.newMailbox(SimpleStateMachine.Event::getId), policy);
+    }
+
+    private Worker nextWorker() {
+        Worker worker = workers[Math.floorMod(next.getAndIncrement(), workers.length)];
+        if (worker.loops.incrementAndGet() > loopsPerWorker) {
+            worker.loops.decrementAndGet();
+            throw new IllegalStateException("FsmRuntime is full.");
+        }
+        return worker;
+    }
+
+    /**
+     * Returns the number of workers.
+     *
+     * @return the number of workers
+     */
+    public int getWorkerCount() {
+        return workers.length;
+    }
+
+    /**
+     * Returns the executor of the internal transitions of the state machines running on the runtime.
+     *
+     * @return the internal transition executor
+     */
+    InternalTransitionExecutor getInternalTransitions() {
+        return internalTransitions;
+    }
+
+    /**
+     * Shutdown the runtime.
+     *
+     * <p>The event loops running on the runtime can't be sent messages anymore.</p>
+     */
+    public void shutdown() {
+        for (Worker worker : workers) {
+            worker.shutdown();
+        }
+        internalTransitions.shutdown();
+    }
+
+    /**
+     * Returns true when the runtime has shutdown.
+     *
+     * @return true when the runtime has shutdown
+     */
+    public boolean isShutdown() {
+        for (Worker worker : workers) {
+            if (!worker.isShutdown()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A worker thread, running the event loops pinned to it.
+     */
+    private static final class Worker extends AbstractEventLoop<Runnable> {
+
+        private final AtomicInteger loops = new AtomicInteger();
+        private final String name;
+        private volatile Thread thread;
+
+        Worker(int capacity, String threadName) {
+            // a loop is queued at most once: the mailbox is mostly empty
+            super(threadName, EventLoopOptions.newOptions()
+                    .capacity(capacity)
+                    .shutdownDelay(SHUTDOWN_DELAY)
+                    .mailbox(LinkedMailbox::new)
+                    .build());
+            this.name = threadName;
+        }
+
+        @Override
+        protected void onMessage(Runnable loop) {
+            thread = Thread.currentThread();
+            loop.run();
+        }
+
+        @Override
+        protected void onDropped(Runnable loop) {
+            // the worker is terminated, the loop won't run anymore
+            ((MultiplexedEventLoop<?>) loop).terminate();
+        }
+
+        boolean inWorker() {
+            return Thread.currentThread() == thread;
+        }
+    }
+
+    /**
+     * An event loop multiplexed on a worker.
+     *
+     * @param <T> the message type
+     */
+    private static final class MultiplexedEventLoop<T> implements EventLoop<T>, Runnable {
+
+        private final Worker worker;
+        private final Consumer<T> handler;
+        private final Consumer<T> dropped;
+        private final Mailbox<T> mailbox;
+        private final OverflowPolicy overflowPolicy;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final CountDownLatch terminated = new CountDownLatch(1);
+        private final LongAdder rejected = new LongAdder();
+        private volatile boolean closed;
+        private volatile boolean overloaded;
+
+        MultiplexedEventLoop(Worker worker, Consumer<T> handler, Consumer<T> dropped, Mailbox<T> mailbox,
+                             OverflowPolicy overflowPolicy) {
+            this.worker = worker;
+            this.handler = handler;
+            this.dropped = dropped;
+            this.mailbox = mailbox;
+            this.overflowPolicy = overflowPolicy;
+        }
+
+        @Override
+        public void send(T message) {
+
+            offer(message);
+        }
+
+        @Override
+        public SendStatus offer(T message) {
+
+            if (closed) {
+                throw new IllegalStateException("Event loop is shutdown.");
+            }
+            SendStatus status = SendStatus.ACCEPTED;
+            if (!mailbox.offer(message)) {
+                if (overflowPolicy != OverflowPolicy.DROP_OLDEST) {
+                    return reject();
+                }
+                status = dropOldest(message);
+            }
+            if (overloaded) {
+                overloaded = false;
+                LOGGER.info("Event loop queue accepts messages again, {} messages rejected so far",
+                        rejected.sum());
+            }
+            try {
+                schedule();
+            } catch (IllegalStateException ex) {
+                // the runtime is shutdown
+                terminate();
+                throw ex;
+            }
+            return status;
+        }
+
+        private SendStatus reject() {
+            rejected.increment();
+            if (FsmEvents.ENABLED) {
+                FsmEvents.mailboxRejected(worker.name, overflowPolicy, mailbox.size(), 0);
+            }
+            if (!overloaded) {
+                overloaded = true;
+                LOGGER.warn("Event loop queue is full, messages are rejected");
+            }
+            return SendStatus.REJECTED;
+        }
+
+        private SendStatus dropOldest(T message) {
+            do {
+                T oldest = mailbox.evict(message);
+                if (oldest != null) {
+                    dropped.accept(oldest);
+                }
+            } while (!mailbox.offer(message));
+            return SendStatus.DROPPED_OLDEST;
+        }
+
+        @Override
+        public int getPendingCount() {
+            return mailbox.size();
+        }
+
+        @Override
+        public void shutdown() {
+
+            closed = true;
+            try {
+                schedule();
+            } catch (IllegalStateException ex) {
+                // the runtime is shutdown
+                terminate();
+            }
+            if (worker.inWorker()) {
+                return;
+            }
+            try {
+                if (!terminated.await(SHUTDOWN_DELAY, TimeUnit.SECONDS)) {
+                    LOGGER.error("Event loop failed to shutdown");
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return terminated.getCount() == 0;
+        }
+
+        @Override
+        public void run() {
+
+            try {
+                for (int i = 0; i < THROUGHPUT; i++) {
+                    T message = mailbox.poll();
+                    if (message == null) {
+                        break;
+                    }
+                    process(message);
+                }
+            } finally {
+                if (closed && mailbox.isEmpty()) {
+                    // stays scheduled forever
+                    terminate();
+                } else {
+                    scheduled.set(false);
+                    if (!mailbox.isEmpty() || closed) {
+                        reschedule();
+                    }
+                }
+            }
+        }
+
+        private void process(T message) {
+            try {
+                handler.accept(message);
+            } catch (Exception ex) {
+                LOGGER.error("Task failed with exception", ex);
+            }
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                worker.send(this);
+            }
+        }
+
+        private void reschedule() {
+            try {
+                schedule();
+            } catch (IllegalStateException ex) {
+                // the runtime is shutdown
+                terminate();
+            }
+        }
+
+        /**
+         * Terminates the event loop, dropping the messages it won't process.
+         */
+        void terminate() {
+            T message;
+            while ((message = mailbox.poll()) != null) {
+                dropped.accept(message);
+            }
+            // by the worker and by a sender racing the runtime shutdown
+            synchronized (terminated) {
+                if (terminated.getCount() != 0) {
+                    worker.loops.decrementAndGet();
+                    terminated.countDown();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,399 @@
+package com.alu.oamp.fsm;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A hashed wheel scheduler.
+ *
+ * <p>
+ * The scheduler runs a single thread which advances a wheel of buckets every tick.
+ * Scheduling and cancelling a task are O(1): a new task is handed over to the wheel
+ * thread through a lock free queue, and a cancelled task is unlinked from its bucket
+ * by the wheel thread on the next tick. Tasks fire with a precision of one tick.
+ * </p>
+ * <p>
+ * A single scheduler is meant to be shared by all the timed states of the process,
+ * whatever the number of state machines:
+ * </p>
+ * <pre>
+ * timedState.setProvider(HashedWheelScheduler::shared);
+ * </pre>
+ * <p>
+ * Tasks are run on the wheel thread, unless the scheduler is given an executor: they
+ * must then be short and must not block, since a task holding the wheel thread delays
+ * all the other tasks. The shared scheduler hands the expired tasks over to a small
+ * pool of daemon threads, so that a timeout dispatched on the thread firing it, by an
+ * inline state machine or a caller runs or block overflow policy, only holds one of
+ * the pool threads.
+ * </p>
+ */
+public class HashedWheelScheduler implements Scheduler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HashedWheelScheduler.class);
+
+    private static final long DEFAULT_TICK = 10;
+    private static final int DEFAULT_WHEEL_SIZE = 512;
+    private static final long KEEP_ALIVE = 60;
+
+    private static final int INIT = 0;
+    private static final int STARTED = 1;
+    private static final int STOPPED = 2;
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Queue<WheelTask> pending = new ConcurrentLinkedQueue<>();
+    private final Queue<WheelTask> cancelled = new ConcurrentLinkedQueue<>();
+    private final Thread worker;
+    // null when the tasks run on the wheel thread
+    private final Executor executor;
+    private final Object lifecycle = new Object();
+
+    private volatile int state = INIT;
+    private volatile long startTime;
+
+    /**
+     * Creates a new hashed wheel scheduler with a 10 ms tick and 512 buckets.
+     *
+     * @param threadName the wheel thread name
+     */
+    public HashedWheelScheduler(String threadName) {
+        this(DEFAULT_TICK, TimeUnit.MILLISECONDS, DEFAULT_WHEEL_SIZE, threadName);
+    }
+
+    /**
+     * Creates a new hashed wheel scheduler.
+     *
+     * @param tick       the tick duration
+     * @param unit       the tick duration unit
+     * @param wheelSize  the number of buckets of the wheel, rounded up to a power of two
+     * @param threadName the wheel thread name
+     */
+    public HashedWheelScheduler(long tick, TimeUnit unit, int wheelSize, String threadName) {
+        this(tick, unit, wheelSize, threadName, null);
+    }
+
+    /**
+     * Creates a new hashed wheel scheduler running the expired tasks on an executor.
+     *
+     * <p>
+     * A task rejected by the executor is run on the wheel thread. A periodic task is
+     * rescheduled once it has run, so that it never runs concurrently with itself.
+     * </p>
+     *
+     * @param tick       the tick duration
+     * @param unit       the tick duration unit
+     * @param wheelSize  the number of buckets of the wheel, rounded up to a power of two
+     * @param threadName the wheel thread name
+     * @param executor   the executor of the expired tasks, null to run them on the wheel thread
+     */
+    public HashedWheelScheduler(long tick, TimeUnit unit, int wheelSize, String threadName,
+                                Executor executor) {
+        if (tick <= 0) {
+            throw new IllegalArgumentException("tick must be positive");
+        }
+        if (wheelSize <= 0 || wheelSize > 1 << 30) {
+            throw new IllegalArgumentException("wheel size must be in ]0, 2^30]");
+        }
+        this.tickNanos = unit.toNanos(tick);
+        int size = Integer.highestOneBit(wheelSize);
+        if (size < wheelSize) {
+            size <<= 1;
+        }
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+        this.worker = new Thread(this::run, threadName);
+        this.worker.setDaemon(true);
+        this.executor = executor;
+    }
+
+    /**
+     * Returns the process wide scheduler.
+     *
+     * <p>The shared scheduler is started on first use and is never stopped.</p>
+     *
+     * @return the shared scheduler
+     */
+    public static HashedWheelScheduler shared() {
+        return Shared.INSTANCE;
+    }
+
+    @Override
+    public TimerHandle schedule(Runnable task, long delay) {
+        return add(task, delay, 0);
+    }
+
+    @Override
+    public TimerHandle schedulePeriodic(Runnable task, long delay, long period) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("period must be positive");
+        }
+        return add(task, delay, period);
+    }
+
+    /**
+     * Stops the scheduler. Pending tasks are discarded.
+     */
+    public void stop() {
+        synchronized (lifecycle) {
+            int previous = state;
+            state = STOPPED;
+            if (previous != STARTED) {
+                return;
+            }
+        }
+        worker.interrupt();
+        try {
+            worker.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private TimerHandle add(Runnable task, long delay, long period) {
+        start();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(delay, 0)) - startTime;
+        WheelTask wheelTask = new WheelTask(task, deadline, TimeUnit.MILLISECONDS.toNanos(period));
+        pending.add(wheelTask);
+        return wheelTask;
+    }
+
+    private void start() {
+        if (state == STARTED) {
+            return;
+        }
+        synchronized (lifecycle) {
+            if (state == STOPPED) {
+                throw new IllegalStateException("Scheduler is stopped.");
+            }
+            if (state == INIT) {
+                startTime = System.nanoTime();
+                state = STARTED;
+                worker.start();
+            }
+        }
+    }
+
+    private void run() {
+        long tick = 0;
+        while (state == STARTED) {
+            long deadline = waitForNextTick(tick);
+            if (deadline < 0) {
+                break;
+            }
+            removeCancelled();
+            transferPending(tick);
+            wheel[(int) (tick & mask)].expire(deadline);
+            tick++;
+        }
+    }
+
+    /**
+     * Sleeps until the end of the given tick.
+     *
+     * @return the tick deadline, relative to the start time, or -1 when the scheduler is stopped
+     */
+    private long waitForNextTick(long tick) {
+        long deadline = tickNanos * (tick + 1);
+        while (true) {
+            long current = System.nanoTime() - startTime;
+            long sleep = (deadline - current + 999999) / 1000000;
+            if (sleep <= 0) {
+                return deadline;
+            }
+            try {
+                Thread.sleep(sleep);
+            } catch (InterruptedException ex) {
+                if (state == STOPPED) {
+                    return -1;
+                }
+            }
+        }
+    }
+
+    private void removeCancelled() {
+        WheelTask task;
+        while ((task = cancelled.poll()) != null) {
+            if (task.bucket != null) {
+                task.bucket.remove(task);
+            }
+        }
+    }
+
+    private void transferPending(long tick) {
+        WheelTask task;
+        while ((task = pending.poll()) != null) {
+            if (task.state != WheelTask.PENDING) {
+                continue;
+            }
+            long calculated = task.deadline / tickNanos;
+            task.remainingRounds = (calculated - tick) / wheel.length;
+            long ticks = Math.max(calculated, tick);
+            wheel[(int) (ticks & mask)].add(task);
+        }
+    }
+
+    /**
+     * A scheduled task.
+     */
+    private final class WheelTask implements TimerHandle, Runnable {
+
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final Runnable task;
+        private final long period;
+        private long deadline;
+        private long remainingRounds;
+        volatile int state = PENDING;
+
+        private WheelTask next;
+        private WheelTask prev;
+        private Bucket bucket;
+
+        WheelTask(Runnable task, long deadline, long period) {
+            this.task = task;
+            this.deadline = deadline;
+            this.period = period;
+        }
+
+        @Override
+        public void cancel() {
+            if (STATE.compareAndSet(this, PENDING, CANCELLED)) {
+                cancelled.add(this);
+            }
+        }
+
+        HashedWheelScheduler outer() {
+            return HashedWheelScheduler.this;
+        }
+
+        /**
+         * Runs the expired task, on the wheel thread or handed over to the executor.
+         */
+        void expire() {
+            if (executor == null) {
+                run();
+                return;
+            }
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException ex) {
+                run();
+            }
+        }
+
+        /**
+         * Runs the task, unless it was cancelled meanwhile.
+         */
+        @Override
+        public void run() {
+            if (period == 0 ? !STATE.compareAndSet(this, PENDING, EXPIRED) : state != PENDING) {
+                return;
+            }
+            try {
+                task.run();
+            } catch (Exception ex) {
+                LOGGER.error("Scheduled task failed with exception", ex);
+            }
+            if (period != 0 && state == PENDING) {
+                deadline += period;
+                pending.add(this);
+            }
+        }
+    }
+
+    private static final AtomicIntegerFieldUpdater<WheelTask> STATE =
+            AtomicIntegerFieldUpdater.newUpdater(WheelTask.class, "state");
+
+    /**
+     * A wheel bucket, a doubly linked list of tasks only accessed by the wheel thread.
+     */
+    private static final class Bucket {
+
+        private WheelTask head;
+        private WheelTask tail;
+
+        void add(WheelTask task) {
+            task.bucket = this;
+            if (head == null) {
+                head = tail = task;
+            } else {
+                tail.next = task;
+                task.prev = tail;
+                tail = task;
+            }
+        }
+
+        void remove(WheelTask task) {
+            WheelTask next = task.next;
+            if (task.prev != null) {
+                task.prev.next = next;
+            }
+            if (task.next != null) {
+                task.next.prev = task.prev;
+            }
+            if (task == head) {
+                head = next;
+            }
+            if (task == tail) {
+                tail = task.prev;
+            }
+            task.prev = null;
+            task.next = null;
+            task.bucket = null;
+        }
+
+        void expire(long deadline) {
+            WheelTask task = head;
+            while (task != null) {
+                WheelTask next = task.next;
+                if (task.state != WheelTask.PENDING) {
+                    remove(task);
+                } else if (task.remainingRounds <= 0) {
+                    remove(task);
+                    if (task.deadline <= deadline) {
+                        task.expire();
+                    } else {
+                        // not due yet, put it back on the wheel on next tick
+                        task.outer().pending.add(task);
+                    }
+                } else {
+                    task.remainingRounds--;
+                }
+                task = next;
+            }
+        }
+    }
+
+    /**
+     * Lazy holder of the shared scheduler.
+     */
+    private static final class Shared {
+        private static final HashedWheelScheduler INSTANCE =
+                new HashedWheelScheduler(DEFAULT_TICK, TimeUnit.MILLISECONDS, DEFAULT_WHEEL_SIZE,
+                        "Shared timer wheel", newExecutor("Shared timer wheel task"));
+
+        private static Executor newExecutor(String threadName) {
+            int threads = Runtime.getRuntime().availableProcessors();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), ThreadFactories.daemon(threadName));
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+    }
+}
@@ -1,8 +1,6 @@
 package com.alu.oamp.fsm;
 
 import java.util.Set;
-import java.util.Timer;
-import java.util.TimerTask;
 
 /**
  * <p>
@@ -29,21 +27,24 @@ public class HeartbeatAbleState extends AbstractTimedState {
     HeartbeatAbleState(State innerState, Heartbeat heartbeat) {
         super(innerState);
         this.heartbeat = heartbeat;
-        provider = () -> new Timer("Heartbeat on " + state.toString());
+        Scheduler scheduler = new TimerScheduler("Heartbeat on " + state.toString());
+        provider = () -> scheduler;
     }
 
     @Override
-    public void onEntry() {
-
-        state.onEntry();
-        timer = provider.get();
-        TimerTask runHeartBeat = new TimerTask() {
-            public void run() {
+    protected TimerHandle start(Scheduler scheduler, TimedStateListener listener, long elapsed) {
+        // the next beat keeps the phase of the beats before the restore
+        long delay = heartbeat.getPeriod() - elapsed % heartbeat.getPeriod();
+        if (FsmEvents.ENABLED) {
+            FsmEvents.timerScheduled(getId(), SimpleStateMachine.InternalEvent.HEARTBEAT,
+                    delay, heartbeat.getPeriod());
+            return scheduler.schedulePeriodic(() -> {
+                FsmEvents.timerFired(getId(), SimpleStateMachine.InternalEvent.HEARTBEAT);
                 listener.onHeartBeat();
-
-            }
-        };
-        timer.schedule(runHeartBeat, heartbeat.getPeriod(), heartbeat.getPeriod());
+            }, delay, heartbeat.getPeriod());
+        }
+        return scheduler.schedulePeriodic(listener::onHeartBeat,
+                delay, heartbeat.getPeriod());
     }
 
     @Override
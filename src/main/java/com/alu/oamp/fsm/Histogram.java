@@ -0,0 +1,153 @@
+package com.alu.oamp.fsm;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed bucket histogram of durations in nanoseconds.
+ *
+ * <p>
+ * Bucket {@code i} counts the values in {@code [2^(i-1), 2^i)}, bucket 0 counts zeros:
+ * recording a value is a few atomic increments, without allocation nor lock. The
+ * precision is a factor of two, which is enough to tell a microsecond from a millisecond.
+ * Values beyond the last bucket, about a day and a half, are counted in the last bucket.
+ * </p>
+ */
+public final class Histogram {
+
+    static final int BUCKETS = 48;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos the duration in nanoseconds, negative durations count as zero
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value)));
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Returns a snapshot of the histogram.
+     *
+     * @return the snapshot
+     */
+    public Snapshot snapshot() {
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+        }
+        return new Snapshot(snapshot, sum.sum(), max.get());
+    }
+
+    /**
+     * Returns the largest value counted by a bucket.
+     *
+     * @param bucket the bucket
+     * @return the bucket upper bound in nanoseconds
+     */
+    static long upperBound(int bucket) {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+
+    /**
+     * An immutable histogram snapshot.
+     */
+    public static final class Snapshot {
+
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(long[] counts, long sum, long max) {
+            long total = 0;
+            for (long bucketCount : counts) {
+                total += bucketCount;
+            }
+            this.counts = counts;
+            this.count = total;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        /**
+         * Returns the number of recorded values.
+         *
+         * @return the number of values
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Returns the sum of the recorded values.
+         *
+         * @return the sum in nanoseconds
+         */
+        public long getSum() {
+            return sum;
+        }
+
+        /**
+         * Returns the largest recorded value.
+         *
+         * @return the maximum in nanoseconds
+         */
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * Returns the mean of the recorded values.
+         *
+         * @return the mean in nanoseconds, 0 when no value is recorded
+         */
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * Returns an upper bound of a percentile.
+         *
+         * @param percentile the percentile, in [0, 100]
+         * @return the upper bound of the bucket holding the percentile, in nanoseconds
+         */
+        public long getPercentile(double percentile) {
+            if (percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException("percentile must be in [0, 100]");
+            }
+            long rank = (long) Math.ceil(count * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank && seen > 0) {
+                    return Math.min(upperBound(i), max);
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * Returns the bucket counts, bucket {@code i} counting values in {@code [2^(i-1), 2^i)}.
+         *
+         * @return the bucket counts
+         */
+        public long[] getCounts() {
+            return counts.clone();
+        }
+
+        @Override
+        public String toString() {
+            return "[count=" + count + ", mean=" + (long) getMean() + "ns, p99=" + getPercentile(99)
+                    + "ns, max=" + max + "ns]";
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.alu.oamp.fsm;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An event loop without thread of its own.
+ *
+ * <p>
+ * Messages are processed on the thread sending them: there is no thread handoff. When
+ * the event loop is already processing a message, whether the message is sent by the
+ * message handler itself or by another thread, the message is queued, and processed by
+ * the thread already processing messages once the current message is processed. The
+ * processing of a message thus always runs to completion before the next one starts,
+ * and messages are processed in the order they are queued.
+ * </p>
+ * <p>
+ * The event loop is meant for senders already guaranteeing a single threaded access, a
+ * network channel or a partitioned consumer for instance. It stays correct with concurrent
+ * senders, timers for instance, but a sender may then process the messages of others.
+ * </p>
+ * <p>
+ * Messages are rejected when the mailbox is full, the overflow policy of the options does
+ * not apply.
+ * </p>
+ *
+ * @param <T>
+ *            the message sent to the event loop.
+ */
+public final class InlineEventLoop<T> implements EventLoop<T> {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(InlineEventLoop.class);
+
+	private final Consumer<T> handler;
+	private final Mailbox<T> mailbox;
+	private final AtomicBoolean processing = new AtomicBoolean();
+	private final LongAdder rejected = new LongAdder();
+	private volatile boolean shutdown;
+
+	/**
+	 * Creates a new inline event loop.
+	 *
+	 * @param handler
+	 *            the message handler
+	 * @param options
+	 *            the event loop options, only the capacity and the mailbox apply
+	 */
+	public InlineEventLoop(Consumer<T> handler, EventLoopOptions options) {
+		this(handler, options.<T>newMailbox());
+	}
+
+	/**
+	 * Creates a new inline event loop with its own mailbox.
+	 *
+	 * @param handler
+	 *            the message handler
+	 * @param mailbox
+	 *            the event loop mailbox
+	 */
+	public InlineEventLoop(Consumer<T> handler, Mailbox<T> mailbox) {
+		this.handler = handler;
+		this.mailbox = mailbox;
+	}
+
+	@Override
+	public void send(T message) {
+
+		offer(message);
+	}
+
+	@Override
+	public SendStatus offer(T message) {
+
+		if (shutdown) {
+			throw new IllegalStateException("InlineEventLoop is shutdown.");
+		}
+		if (!mailbox.offer(message)) {
+			rejected.increment();
+			return SendStatus.REJECTED;
+		}
+		drain();
+		return SendStatus.ACCEPTED;
+	}
+
+	/**
+	 * Processes the pending messages, unless another thread, or the current thread
+	 * higher in the stack, is processing them.
+	 */
+	private void drain() {
+
+		while (processing.compareAndSet(false, true)) {
+			try {
+				T message;
+				while ((message = mailbox.poll()) != null) {
+					process(message);
+				}
+			} finally {
+				processing.set(false);
+			}
+			// a message may have been queued after the last poll, before the release
+			if (mailbox.isEmpty()) {
+				return;
+			}
+		}
+	}
+
+	private void process(T message) {
+
+		try {
+			handler.accept(message);
+		} catch (Exception ex) {
+			LOGGER.error("Task failed with exception", ex);
+		}
+	}
+
+	/**
+	 * Returns the number of messages rejected because the mailbox was full.
+	 *
+	 * @return the number of rejected messages
+	 */
+	public long getRejectedCount() {
+		return rejected.sum();
+	}
+
+	@Override
+	public int getPendingCount() {
+		return mailbox.size();
+	}
+
+	/**
+	 * Shutdown the event loop.
+	 *
+	 * <p>The messages already queued are still processed, new messages are refused.</p>
+	 */
+	@Override
+	public void shutdown() {
+		shutdown = true;
+	}
+
+	@Override
+	public boolean isShutdown() {
+		return shutdown;
+	}
+}
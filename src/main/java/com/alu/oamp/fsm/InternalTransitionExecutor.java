@@ -0,0 +1,344 @@
+package com.alu.oamp.fsm;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded executor for internal transitions.
+ *
+ * <p>
+ * Internal transitions, transitions without target state, run off the event loop
+ * thread. The executor runs them on at most a fixed number of threads, which are
+ * started on demand and stop when idle, and queues at most a fixed number of
+ * pending transitions. When the queue is full, the configured {@link OverflowPolicy}
+ * applies: the transition is rejected (the default), the oldest pending transition
+ * is cancelled, the event loop waits for room up to a timeout, or the transition
+ * is run on the event loop thread.
+ * </p>
+ * <p>
+ * An executor can be shared by many state machines:
+ * </p>
+ * <pre>
+ * InternalTransitionExecutor executor = InternalTransitionExecutor.newExecutor()
+ *         .threads(4)
+ *         .capacity(10000)
+ *         .build();
+ * EventLoopOptions options = EventLoopOptions.newOptions()
+ *         .internalTransitions(executor)
+ *         .build();
+ * </pre>
+ * <p>
+ * A shared executor is not shutdown with the state machines, its owner shuts it down.
+ * By default, the state machines running on platform threads share the executor of the
+ * process, see {@link #shared()}.
+ * </p>
+ */
+public class InternalTransitionExecutor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(InternalTransitionExecutor.class);
+
+    private static final int DEFAULT_CAPACITY = 1000;
+    private static final int SHARED_CAPACITY = 1 << 16;
+    private static final long KEEP_ALIVE = 60;
+
+    private final ThreadPoolExecutor pool;
+    private final BlockingQueue<Runnable> queue;
+    private final OverflowPolicy overflowPolicy;
+    private final long blockTimeout;
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder processedByCaller = new LongAdder();
+    private final boolean shared;
+    private volatile boolean overloaded;
+
+    private InternalTransitionExecutor(Builder builder) {
+        this(builder, false);
+    }
+
+    private InternalTransitionExecutor(Builder builder, boolean shared) {
+        this.shared = shared;
+        this.queue = new ArrayBlockingQueue<>(builder.capacity);
+        this.overflowPolicy = builder.overflowPolicy;
+        this.blockTimeout = builder.blockTimeout;
+        this.pool = new ThreadPoolExecutor(builder.threads, builder.threads,
+                KEEP_ALIVE, TimeUnit.SECONDS, queue, builder.threadFactory);
+        this.pool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Returns a new executor builder.
+     *
+     * @return the builder
+     */
+    public static Builder newExecutor() {
+        return new Builder();
+    }
+
+    /**
+     * Returns the executor shared by the whole process.
+     *
+     * <p>
+     * The shared executor runs the internal transitions of the state machines which have
+     * no executor of their own, on as many daemon threads as cores, and rejects the
+     * transitions beyond 65536 pending ones. It is never shutdown.
+     * </p>
+     *
+     * @return the shared executor
+     */
+    public static InternalTransitionExecutor shared() {
+        return Shared.INSTANCE;
+    }
+
+    /**
+     * Executes a task.
+     *
+     * <p>A task dropped to make room for another one is cancelled when it is a {@link Future}.</p>
+     *
+     * @param task the task
+     * @return the execution status
+     */
+    public SendStatus execute(Runnable task) {
+
+        if (pool.isShutdown()) {
+            return SendStatus.REJECTED;
+        }
+        if (tryExecute(task)) {
+            return SendStatus.ACCEPTED;
+        }
+        switch (overflowPolicy) {
+        case DROP_OLDEST:
+            while (true) {
+                Runnable oldest = queue.poll();
+                if (oldest != null) {
+                    dropped.increment();
+                    if (oldest instanceof Future) {
+                        ((Future<?>) oldest).cancel(false);
+                    }
+                }
+                if (tryExecute(task)) {
+                    return SendStatus.DROPPED_OLDEST;
+                }
+                if (pool.isShutdown()) {
+                    return reject();
+                }
+            }
+        case BLOCK:
+            try {
+                if (queue.offer(task, blockTimeout, TimeUnit.NANOSECONDS)) {
+                    // the workers may have stopped meanwhile
+                    pool.prestartCoreThread();
+                    return SendStatus.ACCEPTED;
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return reject();
+        case CALLER_RUNS:
+            processedByCaller.increment();
+            task.run();
+            return SendStatus.PROCESSED_BY_CALLER;
+        default:
+            return reject();
+        }
+    }
+
+    /**
+     * Returns the number of rejected tasks.
+     *
+     * @return the number of rejected tasks
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * Returns the number of pending tasks dropped by the drop oldest policy.
+     *
+     * @return the number of dropped tasks
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Returns the number of tasks run by their caller with the caller runs policy.
+     *
+     * @return the number of tasks run by their caller
+     */
+    public long getProcessedByCallerCount() {
+        return processedByCaller.sum();
+    }
+
+    /**
+     * Returns the number of pending tasks.
+     *
+     * @return the number of pending tasks
+     */
+    public int getPendingCount() {
+        return queue.size();
+    }
+
+    /**
+     * Shutdown the executor, interrupting the running tasks.
+     *
+     * <p>The shared executor is not shutdown.</p>
+     */
+    public void shutdown() {
+        if (shared) {
+            LOGGER.warn("The shared internal transition executor is not shutdown");
+            return;
+        }
+        pool.shutdownNow();
+    }
+
+    /**
+     * Returns true when the executor has shutdown.
+     *
+     * @return true when the executor has shutdown
+     */
+    public boolean isShutdown() {
+        return pool.isShutdown();
+    }
+
+    private boolean tryExecute(Runnable task) {
+        try {
+            pool.execute(task);
+        } catch (RejectedExecutionException ex) {
+            return false;
+        }
+        if (overloaded) {
+            overloaded = false;
+            LOGGER.info("Internal transition queue accepts transitions again, {} transitions rejected so far",
+                    rejected.sum());
+        }
+        return true;
+    }
+
+    private SendStatus reject() {
+        rejected.increment();
+        if (!overloaded) {
+            overloaded = true;
+            LOGGER.warn("Internal transition queue is full, transitions are rejected");
+        }
+        return SendStatus.REJECTED;
+    }
+
+    /**
+     * Lazy holder of the shared executor.
+     */
+    private static final class Shared {
+        private static final InternalTransitionExecutor INSTANCE = new InternalTransitionExecutor(new Builder()
+                .capacity(SHARED_CAPACITY)
+                .threadFactory(ThreadFactories.daemon("Internal transitions")), true);
+    }
+
+    /**
+     * An executor builder.
+     */
+    public static class Builder {
+
+        private int threads = Runtime.getRuntime().availableProcessors();
+        private int capacity = DEFAULT_CAPACITY;
+        private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_NEWEST;
+        private long blockTimeout;
+        private ThreadFactory threadFactory = ThreadFactories.platform();
+
+        private Builder() {
+        }
+
+        /**
+         * Specifies the maximum number of threads, the number of cores by default.
+         *
+         * @param threads the maximum number of threads
+         * @return the builder
+         */
+        public Builder threads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * Specifies the maximum number of pending transitions.
+         *
+         * @param capacity the capacity
+         * @return the builder
+         */
+        public Builder capacity(int capacity) {
+            this.capacity = capacity;
+            return this;
+        }
+
+        /**
+         * Specifies what to do with a transition executed while the queue is full.
+         *
+         * <p>By default, the transition is rejected. The coalesce policy is not supported.</p>
+         *
+         * @param overflowPolicy the overflow policy
+         * @return the builder
+         */
+        public Builder overflowPolicy(OverflowPolicy overflowPolicy) {
+            this.overflowPolicy = overflowPolicy;
+            return this;
+        }
+
+        /**
+         * Specifies the block policy, with the maximum time the event loop waits for room in the queue.
+         *
+         * @param timeout the timeout
+         * @param unit    the timeout unit
+         * @return the builder
+         */
+        public Builder block(long timeout, TimeUnit unit) {
+            this.overflowPolicy = OverflowPolicy.BLOCK;
+            this.blockTimeout = unit.toNanos(timeout);
+            return this;
+        }
+
+        /**
+         * Specifies the thread factory.
+         *
+         * @param threadFactory the thread factory, see {@link ThreadFactories}
+         * @return the builder
+         */
+        public Builder threadFactory(ThreadFactory threadFactory) {
+            this.threadFactory = threadFactory;
+            return this;
+        }
+
+        /**
+         * Builds the executor.
+         *
+         * @return the executor
+         */
+        public InternalTransitionExecutor build() {
+            if (threads <= 0) {
+                throw new IllegalArgumentException("threads must be positive");
+            }
+            if (capacity <= 0) {
+                throw new IllegalArgumentException("capacity must be positive");
+            }
+            if (overflowPolicy == null) {
+                throw new IllegalArgumentException("overflow policy can't be null");
+            }
+            if (overflowPolicy == OverflowPolicy.COALESCE) {
+                throw new IllegalArgumentException("coalesce policy is not supported");
+            }
+            if (blockTimeout < 0) {
+                throw new IllegalArgumentException("block timeout can't be negative");
+            }
+            if (threadFactory == null) {
+                throw new IllegalArgumentException("thread factory can't be null");
+            }
+            return new InternalTransitionExecutor(this);
+        }
+    }
+}
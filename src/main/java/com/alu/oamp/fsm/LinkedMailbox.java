@@ -0,0 +1,71 @@
+package com.alu.oamp.fsm;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A lock free mailbox backed by a linked queue.
+ *
+ * <p>
+ * Unlike a {@link RingBufferMailbox}, the mailbox does not preallocate its capacity,
+ * but allocates a node for each message. It suits mailboxes with a large capacity
+ * which are mostly empty.
+ * </p>
+ *
+ * @param <T>
+ *            the message type.
+ */
+public class LinkedMailbox<T> implements Mailbox<T> {
+
+	private final Queue<T> queue = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger size = new AtomicInteger();
+	private final int capacity;
+
+	/**
+	 * Creates a new linked mailbox.
+	 *
+	 * @param capacity
+	 *            the mailbox capacity.
+	 */
+	public LinkedMailbox(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity must be positive");
+		}
+		this.capacity = capacity;
+	}
+
+	@Override
+	public boolean offer(T message) {
+		if (size.incrementAndGet() > capacity) {
+			size.decrementAndGet();
+			return false;
+		}
+		queue.offer(message);
+		return true;
+	}
+
+	@Override
+	public T poll() {
+		T message = queue.poll();
+		if (message != null) {
+			size.decrementAndGet();
+		}
+		return message;
+	}
+
+	@Override
+	public int size() {
+		return size.get();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size.get() == 0;
+	}
+
+	@Override
+	public int capacity() {
+		return capacity;
+	}
+}
@@ -0,0 +1,67 @@
+package com.alu.oamp.fsm;
+
+/**
+ * An event loop mailbox.
+ *
+ * <p>
+ * A mailbox is a bounded queue holding the messages sent to an event loop until they
+ * are processed. Any number of threads may offer messages concurrently. The event
+ * loop thread polls them, and so may a sender evicting the oldest message when the
+ * mailbox is full.
+ * </p>
+ *
+ * @param <T>
+ *            the message type.
+ */
+public interface Mailbox<T> {
+
+	/**
+	 * Adds a message to the mailbox.
+	 *
+	 * @param message
+	 *            the message
+	 * @return false when the mailbox is full
+	 */
+	boolean offer(T message);
+
+	/**
+	 * Removes the oldest message of the mailbox.
+	 *
+	 * @return the message or null if the mailbox is empty
+	 */
+	T poll();
+
+	/**
+	 * Removes the message evicted to make room for a message, when the mailbox is full.
+	 *
+	 * <p>By default, the oldest message of the mailbox is evicted.</p>
+	 *
+	 * @param message
+	 *            the message to make room for
+	 * @return the evicted message or null if the mailbox is empty
+	 */
+	default T evict(T message) {
+		return poll();
+	}
+
+	/**
+	 * Returns the number of messages in the mailbox.
+	 *
+	 * @return the number of messages in the mailbox
+	 */
+	int size();
+
+	/**
+	 * Returns true when the mailbox is empty.
+	 *
+	 * @return true when the mailbox is empty
+	 */
+	boolean isEmpty();
+
+	/**
+	 * Returns the mailbox capacity.
+	 *
+	 * @return the mailbox capacity
+	 */
+	int capacity();
+}
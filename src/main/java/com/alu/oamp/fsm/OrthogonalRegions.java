@@ -0,0 +1,262 @@
+package com.alu.oamp.fsm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The regions of a state, as run by a state machine.
+ *
+ * <p>
+ * Each state machine owns the regions of its states with regions, and their current
+ * states. The regions are only accessed by the state machine event loop, and by the
+ * fork join pool while the event loop waits for the independent regions.
+ * </p>
+ * <p>
+ * The tasks running the independent regions are created once and reinitialized after
+ * each event, so dispatching an event to the regions allocates nothing.
+ * </p>
+ */
+final class OrthogonalRegions {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OrthogonalRegions.class);
+
+    private final Instance[] instances;
+    private final ForkJoinPool pool;
+
+    private OrthogonalRegions(Instance[] instances, ForkJoinPool pool) {
+        this.instances = instances;
+        this.pool = pool;
+    }
+
+    /**
+     * Creates the regions of the states of a definition.
+     *
+     * @param definition the state machine definition
+     * @param pool       the pool running the independent regions
+     * @return the regions by state index, null for a state without regions
+     */
+    static OrthogonalRegions[] of(StateMachineDefinition definition, ForkJoinPool pool) {
+
+        TransitionTable transitionTable = definition.getTransitionTable();
+        OrthogonalRegions[] regions = new OrthogonalRegions[transitionTable.stateCount()];
+        for (State state : definition.getStates()) {
+            List<Region> stateRegions = state.getRegions();
+            if (!stateRegions.isEmpty()) {
+                Instance[] instances = new Instance[stateRegions.size()];
+                for (int i = 0; i < instances.length; i++) {
+                    instances[i] = new Instance(stateRegions.get(i));
+                }
+                regions[transitionTable.stateIndex(state.getId())] = new OrthogonalRegions(instances, pool);
+            }
+        }
+        return regions;
+    }
+
+    /**
+     * Sets each region in its initial state, without entering the states.
+     */
+    void reset() {
+        for (Instance instance : instances) {
+            instance.setCurrent(instance.definition.getInitial());
+        }
+    }
+
+    /**
+     * Enters the initial state of each region.
+     *
+     * @param listeners the listeners notified of the entered states
+     */
+    void enter(StateMachineListener[] listeners) {
+        for (Instance instance : instances) {
+            instance.setCurrent(instance.definition.getInitial());
+            for (State entered : instance.initialEntries) {
+                LOGGER.debug("Entering state {} of region {}.", entered, instance.region);
+                for (StateMachineListener listener : listeners) {
+                    listener.onStateEntered(entered.getId());
+                }
+                entered.onEntry();
+            }
+        }
+    }
+
+    /**
+     * Exits the current state of each region, and its ancestors.
+     *
+     * @param listeners the listeners notified of the exited states
+     */
+    void exit(StateMachineListener[] listeners) {
+        for (Instance instance : instances) {
+            for (State exited = instance.current; exited != null;
+                 exited = instance.definition.getState(exited.getParent())) {
+                LOGGER.debug("Leaving state {} of region {}.", exited, instance.region);
+                for (StateMachineListener listener : listeners) {
+                    listener.onStateExited(exited.getId());
+                }
+                exited.onExit();
+            }
+        }
+    }
+
+    /**
+     * Dispatches an event to the regions having a transition for it.
+     *
+     * <p>The independent regions run on the pool when more than one region reacts to the event.</p>
+     *
+     * @param event     the event
+     * @param listeners the state machine listeners
+     * @return the dispatch outcome or null if no region has a transition for the event,
+     * {@link FlightRecorder.Outcome#GUARDED} when no region transition is enabled
+     */
+    FlightRecorder.Outcome dispatch(SimpleStateMachine.Event event, StateMachineListener[] listeners) {
+
+        int found = 0;
+        for (Instance instance : instances) {
+            if (instance.prepare(event, listeners)) {
+                found++;
+            }
+        }
+        if (found == 0) {
+            return null;
+        }
+
+        int forked = 0;
+        if (found > 1) {
+            for (Instance instance : instances) {
+                if (instance.event != null && instance.region.isIndependent()) {
+                    pool.execute(instance);
+                    forked++;
+                }
+            }
+        }
+        for (Instance instance : instances) {
+            if (instance.event != null && (forked == 0 || !instance.region.isIndependent())) {
+                instance.compute();
+            }
+        }
+        if (forked > 0) {
+            for (Instance instance : instances) {
+                if (instance.event != null && instance.region.isIndependent()) {
+                    instance.quietlyJoin();
+                    if (instance.isCompletedAbnormally()) {
+                        LOGGER.error("Exception on region " + instance.region, instance.getException());
+                        instance.outcome = FlightRecorder.Outcome.FAILED;
+                    }
+                    instance.reinitialize();
+                }
+            }
+        }
+
+        // a failure wins, then a transition, an internal transition and a guard
+        FlightRecorder.Outcome outcome = FlightRecorder.Outcome.GUARDED;
+        boolean failed = false;
+        for (Instance instance : instances) {
+            FlightRecorder.Outcome regionOutcome = instance.outcome;
+            if (regionOutcome == FlightRecorder.Outcome.FAILED) {
+                failed = true;
+            } else if (regionOutcome != null && regionOutcome.ordinal() < outcome.ordinal()) {
+                outcome = regionOutcome;
+            }
+            instance.clear();
+        }
+        return failed ? FlightRecorder.Outcome.FAILED : outcome;
+    }
+
+    /**
+     * A region with its current state.
+     */
+    @SuppressWarnings("serial")
+    private static final class Instance extends RecursiveAction {
+
+        private final Region region;
+        private final StateMachineDefinition definition;
+        private final TransitionTable transitionTable;
+        private final State[] initialEntries;
+        private State current;
+        private int currentIndex;
+
+        // the event being dispatched, null when the region has no transition for it
+        private SimpleStateMachine.Event event;
+        private StateMachineListener[] listeners;
+        private Transition transition;
+        private int eventIndex;
+        private FlightRecorder.Outcome outcome;
+
+        Instance(Region region) {
+            this.region = region;
+            this.definition = region.getDefinition();
+            this.transitionTable = definition.getTransitionTable();
+            List<State> entries = new ArrayList<>();
+            for (State state = definition.getInitial(); state != null; state = definition.getState(state.getParent())) {
+                entries.add(0, state);
+            }
+            this.initialEntries = entries.toArray(new State[entries.size()]);
+            setCurrent(definition.getInitial());
+        }
+
+        void setCurrent(State state) {
+            current = state;
+            currentIndex = transitionTable.stateIndex(state.getId());
+        }
+
+        boolean prepare(SimpleStateMachine.Event event, StateMachineListener[] listeners) {
+            eventIndex = transitionTable.eventIndex(event.getId());
+            transition = transitionTable.get(currentIndex, eventIndex);
+            if (transition == null) {
+                return false;
+            }
+            this.event = event;
+            this.listeners = listeners;
+            return true;
+        }
+
+        void clear() {
+            event = null;
+            listeners = null;
+            transition = null;
+            outcome = null;
+        }
+
+        @Override
+        protected void compute() {
+
+            if (!transition.isAllowed()) {
+                LOGGER.debug("Event {} is guarded for state {} of region {}", event, current, region);
+                outcome = FlightRecorder.Outcome.GUARDED;
+                return;
+            }
+            TransitionTable.Route route = transitionTable.route(currentIndex, eventIndex);
+            if (route == null) {
+                outcome = transition.run(event) ? FlightRecorder.Outcome.INTERNAL : FlightRecorder.Outcome.FAILED;
+                return;
+            }
+            for (State exited : route.getExits()) {
+                LOGGER.debug("Leaving state {} of region {}.", exited, region);
+                for (StateMachineListener listener : listeners) {
+                    listener.onStateExited(exited.getId());
+                }
+                exited.onExit();
+            }
+            boolean done = transition.run(event);
+            setCurrent(route.getTarget());
+            for (State entered : route.getEntries()) {
+                LOGGER.debug("Entering state {} of region {}.", entered, region);
+                for (StateMachineListener listener : listeners) {
+                    listener.onStateEntered(entered.getId());
+                }
+                entered.onEntry();
+            }
+            outcome = done ? FlightRecorder.Outcome.TRANSITIONED : FlightRecorder.Outcome.FAILED;
+        }
+    }
+
+    // for tests
+
+    StateId getState(int region) {
+        return instances[region].current.getId();
+    }
+}
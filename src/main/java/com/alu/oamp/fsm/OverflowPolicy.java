@@ -0,0 +1,41 @@
+package com.alu.oamp.fsm;
+
+/**
+ * What an event loop does with a message sent while its mailbox is full.
+ */
+public enum OverflowPolicy {
+
+	/**
+	 * The message is rejected. This is the default policy.
+	 */
+	DROP_NEWEST,
+
+	/**
+	 * The oldest pending message is dropped to make room for the message.
+	 */
+	DROP_OLDEST,
+
+	/**
+	 * The sender waits for room in the mailbox, up to the configured timeout.
+	 * The message is rejected if the mailbox is still full.
+	 */
+	BLOCK,
+
+	/**
+	 * The message is processed on the sender thread.
+	 *
+	 * <p>
+	 * The processing is serialized with the event loop thread, so messages are still
+	 * processed one at a time, but the message overtakes the pending messages.
+	 * </p>
+	 */
+	CALLER_RUNS,
+
+	/**
+	 * The message is dropped when an equivalent message, one with the same coalescing
+	 * key, is pending. It is rejected otherwise.
+	 *
+	 * @see AbstractEventLoop#coalesceKey(Object)
+	 */
+	COALESCE
+}
@@ -0,0 +1,100 @@
+package com.alu.oamp.fsm;
+
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+/**
+ * A mailbox with priority lanes.
+ *
+ * <p>
+ * Each lane is a mailbox of its own, the messages being assigned a lane when they are
+ * offered. Messages are polled from the first lane that is not empty, the first lane
+ * being the most urgent: a message of an urgent lane overtakes all the messages of the
+ * lanes behind, whatever their number. Within a lane, messages are polled in order.
+ * </p>
+ * <p>
+ * A lane only rejects messages when it is full itself, so that a backlog of bulk
+ * messages never gets an urgent message rejected. When the mailbox evicts a message to
+ * make room for another, the oldest message of the same lane is evicted.
+ * </p>
+ * <p>
+ * The lanes behind are starved for as long as the lanes ahead receive messages: urgent
+ * lanes are meant for a light traffic of timer and control messages.
+ * </p>
+ *
+ * @param <T>
+ *            the message type.
+ */
+public class PriorityMailbox<T> implements Mailbox<T> {
+
+	private final Mailbox<T>[] lanes;
+	private final ToIntFunction<? super T> laneOf;
+
+	/**
+	 * Creates a new priority mailbox.
+	 *
+	 * @param lanes
+	 *            the lanes, the most urgent first
+	 * @param laneOf
+	 *            returns the lane of a message, an index in the lane list
+	 */
+	public PriorityMailbox(List<? extends Mailbox<T>> lanes, ToIntFunction<? super T> laneOf) {
+		if (lanes.isEmpty()) {
+			throw new IllegalArgumentException("A priority mailbox needs lanes");
+		}
+		// an array rather than the list, polling must not allocate an iterator
+		@SuppressWarnings("unchecked")
+		Mailbox<T>[] array = (Mailbox<T>[]) new Mailbox<?>[lanes.size()];
+		this.lanes = lanes.toArray(array);
+		this.laneOf = laneOf;
+	}
+
+	@Override
+	public boolean offer(T message) {
+		return lanes[laneOf.applyAsInt(message)].offer(message);
+	}
+
+	@Override
+	public T poll() {
+		for (Mailbox<T> lane : lanes) {
+			T message = lane.poll();
+			if (message != null) {
+				return message;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public T evict(T message) {
+		return lanes[laneOf.applyAsInt(message)].poll();
+	}
+
+	@Override
+	public int size() {
+		int size = 0;
+		for (Mailbox<T> lane : lanes) {
+			size += lane.size();
+		}
+		return size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		for (Mailbox<T> lane : lanes) {
+			if (!lane.isEmpty()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public int capacity() {
+		int capacity = 0;
+		for (Mailbox<T> lane : lanes) {
+			capacity += lane.capacity();
+		}
+		return capacity;
+	}
+}
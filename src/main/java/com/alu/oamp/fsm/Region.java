@@ -0,0 +1,142 @@
+package com.alu.oamp.fsm;
+
+/**
+ * An orthogonal region of a state.
+ *
+ * <p>
+ * As the children of an SCXML {@code <parallel>} element, the regions of a state are
+ * active together while the state is active. Each region is a sub state machine, with
+ * its own current state, described by a {@link StateMachineDefinition}:
+ * </p>
+ * <pre>
+ * State on = newState(Device.ON)
+ *         .region(Region.newRegion("door", door).independent(true).build())
+ *         .region(Region.newRegion("alarm", alarm).independent(true).build())
+ *         .build();
+ * </pre>
+ * <p>
+ * Each event received while the state is active is dispatched to all its regions,
+ * on the state machine event loop. The transitions of the regions take precedence
+ * over the transitions of the state: the transition of the state applies only when
+ * no region has an enabled transition for the event, that is when none has a
+ * transition for it or when all their conditions are false.
+ * </p>
+ * <p>
+ * When several independent regions react to the same event, they run at the same
+ * time on a fork join pool, see {@link EventLoopOptions.Builder#regionPool(java.util.concurrent.ForkJoinPool)},
+ * and the state machine waits for all of them before dispatching the next event.
+ * The actions and the state machine listeners must then be thread safe.
+ * </p>
+ * <p>
+ * Regions have no timers: a region can't hold timed states, nor states with regions.
+ * The internal transitions of a region run on the thread of the region, as its other actions.
+ * </p>
+ */
+public final class Region {
+
+    private final String name;
+    private final StateMachineDefinition definition;
+    private final boolean independent;
+
+    private Region(String name, StateMachineDefinition definition, boolean independent) {
+        this.name = name;
+        this.definition = definition;
+        this.independent = independent;
+    }
+
+    /**
+     * Returns a new region builder.
+     *
+     * @param name       the region name
+     * @param definition the region sub state machine definition
+     * @return the builder
+     */
+    public static Builder newRegion(String name, StateMachineDefinition definition) {
+        return new Builder(name, definition);
+    }
+
+    /**
+     * Returns the region name.
+     *
+     * @return the region name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the region definition.
+     *
+     * @return the region definition
+     */
+    StateMachineDefinition getDefinition() {
+        return definition;
+    }
+
+    /**
+     * Returns true when the region can run at the same time as the other independent regions.
+     *
+     * @return true for an independent region
+     */
+    public boolean isIndependent() {
+        return independent;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + name + "]";
+    }
+
+    /**
+     * A region builder.
+     */
+    public static class Builder {
+
+        private final String name;
+        private final StateMachineDefinition definition;
+        private boolean independent;
+
+        private Builder(String name, StateMachineDefinition definition) {
+            this.name = name;
+            this.definition = definition;
+        }
+
+        /**
+         * Marks the actions of the region as independent from the other regions.
+         *
+         * <p>By default, the regions react to an event one after the other.</p>
+         *
+         * @param independent true when the region may run with the other regions
+         * @return the builder
+         */
+        public Builder independent(boolean independent) {
+            this.independent = independent;
+            return this;
+        }
+
+        /**
+         * Builds the region.
+         *
+         * @return the region
+         */
+        public Region build() {
+            if (name == null) {
+                throw new IllegalArgumentException("region name can't be null.");
+            }
+            if (definition == null) {
+                throw new IllegalArgumentException("region definition can't be null.");
+            }
+            for (State state : definition.getStates()) {
+                if (state instanceof TimedState) {
+                    throw new IllegalArgumentException(
+                            "Region " + name + " can't hold the timed state " + state.getId());
+                }
+                if (!state.getRegions().isEmpty()) {
+                    throw new IllegalArgumentException(
+                            "Region " + name + " can't hold the state with regions " + state.getId());
+                }
+            }
+            return new Region(name, definition, independent);
+        }
+    }
+}
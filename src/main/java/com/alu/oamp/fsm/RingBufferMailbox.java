@@ -0,0 +1,152 @@
+package com.alu.oamp.fsm;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * A lock free, multi producer ring buffer mailbox.
+ *
+ * <p>
+ * Messages are stored directly in a preallocated array, offering a message does not
+ * allocate. Each slot has a sequence number telling whether the slot is free for
+ * the producer of a given round or holds a message for the consumer. A producer claims
+ * a slot with a single compare and set on the tail counter, writes the message and
+ * publishes it by updating the slot sequence. The consumer, usually the event loop
+ * thread alone, releases a slot the same way, so that a producer may also poll the
+ * oldest message to make room for its own.
+ * </p>
+ * <p>
+ * The capacity is rounded up to the next power of two, 2 at least. The ring is allocated on the
+ * first offer, so that the mailboxes of idle event loops, the state machines which
+ * never receive an event, cost a few dozen bytes.
+ * </p>
+ *
+ * @param <T>
+ *            the message type.
+ */
+public class RingBufferMailbox<T> implements Mailbox<T> {
+
+	@SuppressWarnings("rawtypes")
+	private static final AtomicReferenceFieldUpdater<RingBufferMailbox, Ring> RING =
+			AtomicReferenceFieldUpdater.newUpdater(RingBufferMailbox.class, Ring.class, "ring");
+
+	private final int mask;
+	private final AtomicLong tail = new AtomicLong();
+	private final AtomicLong head = new AtomicLong();
+	// null until the first offer
+	private volatile Ring ring;
+
+	/**
+	 * Creates a new ring buffer mailbox.
+	 *
+	 * @param capacity
+	 *            the mailbox capacity, rounded up to the next power of two, 2 at least.
+	 */
+	public RingBufferMailbox(int capacity) {
+		if (capacity <= 0 || capacity > 1 << 30) {
+			throw new IllegalArgumentException("capacity must be in ]0, 2^30]");
+		}
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity) {
+			size <<= 1;
+		}
+		// with a single slot, a published slot would look free for the next round
+		size = Math.max(size, 2);
+		mask = size - 1;
+	}
+
+	@Override
+	public boolean offer(T message) {
+
+		Ring current = ring;
+		if (current == null) {
+			RING.compareAndSet(this, null, new Ring(mask + 1));
+			current = ring;
+		}
+		Object[] buffer = current.buffer;
+		AtomicLongArray sequences = current.sequences;
+		long position = tail.get();
+		while (true) {
+			int index = (int) position & mask;
+			long available = sequences.get(index) - position;
+			if (available == 0) {
+				if (tail.compareAndSet(position, position + 1)) {
+					buffer[index] = message;
+					sequences.lazySet(index, position + 1);
+					return true;
+				}
+				position = tail.get();
+			} else if (available < 0) {
+				// the slot still holds the message of the previous round
+				return false;
+			} else {
+				position = tail.get();
+			}
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public T poll() {
+
+		Ring current = ring;
+		if (current == null) {
+			return null;
+		}
+		Object[] buffer = current.buffer;
+		AtomicLongArray sequences = current.sequences;
+		long position = head.get();
+		while (true) {
+			int index = (int) position & mask;
+			long available = sequences.get(index) - (position + 1);
+			if (available == 0) {
+				if (head.compareAndSet(position, position + 1)) {
+					T message = (T) buffer[index];
+					buffer[index] = null;
+					sequences.lazySet(index, position + buffer.length);
+					return message;
+				}
+				position = head.get();
+			} else if (available < 0) {
+				// the slot is not published yet
+				return null;
+			} else {
+				position = head.get();
+			}
+		}
+	}
+
+	@Override
+	public int size() {
+		long size = tail.get() - head.get();
+		return (int) Math.max(0, Math.min(size, mask + 1));
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return tail.get() == head.get();
+	}
+
+	@Override
+	public int capacity() {
+		return mask + 1;
+	}
+
+	/**
+	 * The slots of the ring buffer.
+	 */
+	private static final class Ring {
+
+		final Object[] buffer;
+		final AtomicLongArray sequences;
+
+		Ring(int size) {
+			buffer = new Object[size];
+			sequences = new AtomicLongArray(size);
+			for (int i = 0; i < size; i++) {
+				sequences.set(i, i);
+			}
+		}
+	}
+}
@@ -0,0 +1,37 @@
+package com.alu.oamp.fsm;
+
+/**
+ * A scheduler for the timers of timed states.
+ *
+ * <p>
+ * Timed states use a scheduler to arm their timeout and heartbeat timers on entry,
+ * and cancel them on exit. The scheduler is plugged into a timed state through
+ * {@link TimedState#setProvider(java.util.function.Supplier)}, or into a state machine
+ * through {@link EventLoopOptions.Builder#scheduler(Scheduler)}.
+ * </p>
+ * <p>
+ * Tasks run on the scheduler thread(s) and must be short: the timed states only
+ * use them to post internal events to the state machine.
+ * </p>
+ */
+public interface Scheduler {
+
+    /**
+     * Schedules a one shot task.
+     *
+     * @param task  the task to run
+     * @param delay the delay in milliseconds
+     * @return the task handle
+     */
+    TimerHandle schedule(Runnable task, long delay);
+
+    /**
+     * Schedules a periodic task.
+     *
+     * @param task   the task to run
+     * @param delay  the delay in milliseconds before the first execution
+     * @param period the period in milliseconds between two executions
+     * @return the task handle
+     */
+    TimerHandle schedulePeriodic(Runnable task, long delay, long period);
+}
@@ -0,0 +1,41 @@
+package com.alu.oamp.fsm;
+
+/**
+ * The status of a message sent to an event loop.
+ */
+public enum SendStatus {
+
+	/**
+	 * The message is queued.
+	 */
+	ACCEPTED,
+
+	/**
+	 * The message is queued, an older message was dropped to make room for it.
+	 */
+	DROPPED_OLDEST,
+
+	/**
+	 * The message is dropped, an equivalent message is pending.
+	 */
+	COALESCED,
+
+	/**
+	 * The message was processed on the sender thread.
+	 */
+	PROCESSED_BY_CALLER,
+
+	/**
+	 * The message is rejected, the event loop is overloaded.
+	 */
+	REJECTED;
+
+	/**
+	 * Returns true when the message is, or will be, processed.
+	 *
+	 * @return true when the message is not lost
+	 */
+	public boolean isAccepted() {
+		return this == ACCEPTED || this == DROPPED_OLDEST || this == PROCESSED_BY_CALLER;
+	}
+}
@@ -0,0 +1,410 @@
+package com.alu.oamp.fsm;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * A router of events to state machines partitioned by key.
+ *
+ * <p>
+ * The router owns one state machine per key, all sharing the same definition, and a
+ * fixed number of shards (the number of cores by default), each an event loop with
+ * its own thread. A key is hashed onto a shard, and its state machine is created on
+ * the first event routed to it:
+ * </p>
+ * <pre>
+ * ShardedStateMachineRouter&lt;String&gt; doors = ShardedStateMachineRouter.&lt;String&gt;newRouter(definition)
+ *         .name("doors")
+ *         .build();
+ * doors.fireEvent("door 1", Cmd.OPEN);
+ * doors.fireEvent("door 2", Cmd.OPEN);
+ * </pre>
+ * <p>
+ * The events of a state machine, the timeouts and heartbeats included, are all
+ * dispatched on the thread of its shard, in order, one at a time, so that the state
+ * machines of a shard stay hot in the cache of its core. No thread is spent per key.
+ * The shards share the executor of the internal transitions, with as many threads as
+ * shards.
+ * </p>
+ * <p>
+ * The state machines take their metrics, flight recorder, journal, scheduler, clock and
+ * region pool from the router options, see {@link Builder#options(EventLoopOptions)}.
+ * A key no longer needed is removed with {@link #remove(Object)}. An event racing the
+ * removal of its key is routed to the new state machine of the key.
+ * </p>
+ *
+ * @param <K> the key type
+ */
+public final class ShardedStateMachineRouter<K> {
+
+    private final StateMachineDefinition definition;
+    private final String name;
+    private final Shard[] shards;
+    private final ConcurrentMap<K, SimpleStateMachine> machines = new ConcurrentHashMap<>();
+    private final Function<K, SimpleStateMachine> factory = this::newMachine;
+    private final EventLoopOptions options;
+    private final InternalTransitionExecutor internalTransitions;
+    private final boolean sharedInternalTransitions;
+
+    private ShardedStateMachineRouter(Builder<K> builder) {
+        this.definition = builder.definition;
+        this.name = builder.name;
+        this.options = builder.options;
+        this.shards = new Shard[builder.shards];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard(name + "-" + i, builder.options);
+        }
+        if (options.getInternalTransitions() != null) {
+            this.internalTransitions = options.getInternalTransitions();
+            this.sharedInternalTransitions = true;
+        } else {
+            this.internalTransitions = InternalTransitionExecutor.newExecutor()
+                    .threads(shards.length)
+                    .threadFactory(options.getThreadFactory())
+                    .build();
+            this.sharedInternalTransitions = false;
+        }
+    }
+
+    /**
+     * Returns a new router builder.
+     *
+     * @param definition the definition of the state machines
+     * @param <K>        the key type
+     * @return the builder
+     */
+    public static <K> Builder<K> newRouter(StateMachineDefinition definition) {
+        return new Builder<>(definition);
+    }
+
+    /**
+     * Fires an event on the state machine of a key.
+     *
+     * @param key     the key
+     * @param eventId the event id
+     */
+    public void fireEvent(K key, EventId<?> eventId) {
+
+        SimpleStateMachine machine = getMachine(key);
+        while (machine.offerEvent(eventId) == SendStatus.REJECTED) {
+            machine = replacement(key, machine);
+            if (machine == null) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Fires an event on the state machine of a key.
+     *
+     * @param key     the key
+     * @param eventId the event id
+     * @param message the event message
+     * @param <P>     the message type
+     */
+    public <P> void fireEvent(K key, EventId<P> eventId, P message) {
+
+        offerEvent(key, eventId, message);
+    }
+
+    /**
+     * Fires an event on the state machine of a key and tells what became of it.
+     *
+     * @param key     the key
+     * @param eventId the event id
+     * @param message the event message
+     * @param <P>     the message type
+     * @return the send status
+     */
+    public <P> SendStatus offerEvent(K key, EventId<P> eventId, P message) {
+
+        SimpleStateMachine machine = getMachine(key);
+        SendStatus status;
+        while ((status = machine.offerEvent(eventId, message)) == SendStatus.REJECTED) {
+            machine = replacement(key, machine);
+            if (machine == null) {
+                break;
+            }
+        }
+        return status;
+    }
+
+    /**
+     * Returns the state machine replacing a state machine which rejected an event.
+     *
+     * @param key       the key
+     * @param rejecting the state machine which rejected the event
+     * @return the new state machine of the key when the rejecting one was removed meanwhile,
+     *         null when the event was rejected for another reason, the shard being full
+     */
+    private SimpleStateMachine replacement(K key, SimpleStateMachine rejecting) {
+        return machines.get(key) == rejecting ? null : getMachine(key);
+    }
+
+    /**
+     * Returns the state machine of a key, created if needed.
+     *
+     * <p>
+     * The state machine is named after the router and the key. It can be listened to,
+     * but must not be shutdown on its own, see {@link #remove(Object)}.
+     * </p>
+     *
+     * @param key the key
+     * @return the state machine
+     */
+    public SimpleStateMachine getMachine(K key) {
+        SimpleStateMachine machine = machines.get(key);
+        return machine != null ? machine : machines.computeIfAbsent(key, factory);
+    }
+
+    /**
+     * Removes the state machine of a key and shuts it down.
+     *
+     * <p>
+     * The state machine refuses new events and its timers are cancelled. Its events still
+     * queued on the shard are dropped. The next event routed to the key creates a new
+     * state machine, in the initial state.
+     * </p>
+     *
+     * @param key the key
+     * @return the removed state machine, or null if the key has no state machine
+     */
+    public SimpleStateMachine remove(K key) {
+        SimpleStateMachine machine = machines.remove(key);
+        if (machine != null) {
+            machine.shutdown();
+        }
+        return machine;
+    }
+
+    /**
+     * Returns the shard of a key.
+     *
+     * @param key the key
+     * @return the shard index, in [0, shard count[
+     */
+    public int shardOf(K key) {
+        int hash = key.hashCode();
+        // spreads the high bits, as hash maps do
+        return Math.floorMod(hash ^ (hash >>> 16), shards.length);
+    }
+
+    /**
+     * Returns the number of shards.
+     *
+     * @return the number of shards
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Returns the number of state machines.
+     *
+     * @return the number of keys routed so far
+     */
+    public int getMachineCount() {
+        return machines.size();
+    }
+
+    /**
+     * Shutdown the router and its state machines.
+     *
+     * <p>
+     * New events are refused and the events already queued are still processed: the
+     * shards are drained before the timers of the state machines are cancelled, so that
+     * the timers armed by the last events do not outlive the router.
+     * </p>
+     */
+    public void shutdown() {
+        for (Shard shard : shards) {
+            shard.shutdown();
+        }
+        for (SimpleStateMachine machine : machines.values()) {
+            machine.shutdown();
+        }
+        if (!sharedInternalTransitions) {
+            internalTransitions.shutdown();
+        }
+    }
+
+    private SimpleStateMachine newMachine(K key) {
+        Shard shard = shards[shardOf(key)];
+        return new SimpleStateMachine(definition, name + "/" + key, options,
+                machine -> new ShardedEventLoop(shard, machine), internalTransitions);
+    }
+
+    /**
+     * An event routed to a state machine.
+     */
+    private static final class Delivery {
+
+        private final ShardedEventLoop loop;
+        private final SimpleStateMachine.Event event;
+
+        Delivery(ShardedEventLoop loop, SimpleStateMachine.Event event) {
+            this.loop = loop;
+            this.event = event;
+        }
+    }
+
+    /**
+     * A shard, dispatching the events of its state machines on its thread.
+     */
+    private static final class Shard extends AbstractEventLoop<Delivery> {
+
+        Shard(String threadName, EventLoopOptions options) {
+            super(threadName, options, options.newMailbox((Delivery delivery) -> delivery.event.getId()));
+        }
+
+        @Override
+        protected void onMessage(Delivery delivery) {
+            if (delivery.loop.shutdown) {
+                // the state machine was removed
+                onDropped(delivery);
+            } else {
+                delivery.loop.machine.dispatch(delivery.event);
+            }
+        }
+
+        @Override
+        protected void onDropped(Delivery delivery) {
+            delivery.loop.machine.dropped(delivery.event);
+        }
+    }
+
+    /**
+     * The event loop of a state machine, a view on its shard.
+     */
+    private static final class ShardedEventLoop implements EventLoop<SimpleStateMachine.Event> {
+
+        private final Shard shard;
+        private final SimpleStateMachine machine;
+        private volatile boolean shutdown;
+
+        ShardedEventLoop(Shard shard, SimpleStateMachine machine) {
+            this.shard = shard;
+            this.machine = machine;
+        }
+
+        @Override
+        public void send(SimpleStateMachine.Event event) {
+
+            offer(event);
+        }
+
+        @Override
+        public SendStatus offer(SimpleStateMachine.Event event) {
+
+            if (shutdown) {
+                throw new IllegalStateException("State machine is shutdown.");
+            }
+            return shard.offer(new Delivery(this, event));
+        }
+
+        @Override
+        public int getPendingCount() {
+            return shard.getPendingCount();
+        }
+
+        /**
+         * Refuses new events, the events still queued on the shard are dropped.
+         */
+        @Override
+        public void shutdown() {
+            shutdown = true;
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return shutdown || shard.isShutdown();
+        }
+    }
+
+    /**
+     * A router builder.
+     *
+     * @param <K> the key type
+     */
+    public static class Builder<K> {
+
+        private final StateMachineDefinition definition;
+        private String name = "Router";
+        private int shards = Runtime.getRuntime().availableProcessors();
+        private EventLoopOptions options = EventLoopOptions.defaults();
+
+        private Builder(StateMachineDefinition definition) {
+            this.definition = definition;
+        }
+
+        /**
+         * Specifies the router name, which gives the shard thread and state machine names.
+         *
+         * @param name the router name
+         * @return the builder
+         */
+        public Builder<K> name(String name) {
+            this.name = name;
+            return this;
+        }
+
+        /**
+         * Specifies the number of shards, the number of cores by default.
+         *
+         * @param shards the number of shards
+         * @return the builder
+         */
+        public Builder<K> shards(int shards) {
+            this.shards = shards;
+            return this;
+        }
+
+        /**
+         * Specifies the options of the shard event loops and of the state machines.
+         *
+         * <p>
+         * The capacity is the capacity of a shard, shared by its state machines, and so are
+         * the priority lanes, see {@link EventLoopOptions.Builder#priority(EventId[])}.
+         * The metrics, flight recorder, journal, scheduler, clock and region pool apply to
+         * each state machine. The internal transition executor, when set, is shared and left
+         * running on shutdown. The shards have their own threads: inline options are refused.
+         * The shards hold the events of many state machines: the coalesce policy is refused.
+         * </p>
+         *
+         * @param options the shard options
+         * @return the builder
+         */
+        public Builder<K> options(EventLoopOptions options) {
+            this.options = options;
+            return this;
+        }
+
+        /**
+         * Builds the router.
+         *
+         * @return the router
+         */
+        public ShardedStateMachineRouter<K> build() {
+            if (definition == null) {
+                throw new IllegalArgumentException("definition can't be null.");
+            }
+            if (name == null) {
+                throw new IllegalArgumentException("name can't be null.");
+            }
+            if (shards <= 0) {
+                throw new IllegalArgumentException("shard count must be positive");
+            }
+            if (options == null) {
+                throw new IllegalArgumentException("options can't be null.");
+            }
+            if (options.isInline()) {
+                throw new IllegalArgumentException("shards can't be inline.");
+            }
+            if (options.getOverflowPolicy() == OverflowPolicy.COALESCE) {
+                throw new IllegalArgumentException("shards can't coalesce events.");
+            }
+            return new ShardedStateMachineRouter<>(this);
+        }
+    }
+}
@@ -1,10 +1,17 @@
 package com.alu.oamp.fsm;
 
-import java.util.*;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Function;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -70,13 +77,50 @@ import org.slf4j.LoggerFactory;
  * When defining a state with heartbeat, one has to specify the heartbeat polling period,
  * the heartbeat worker and the target state to enter on exiting the heartbeat.
  * </p>
+ * <p/>
+ * <p>
+ * Transitions are compiled into a dense table on construction. When state ids and
+ * event ids are enums, looking up the transition of an event is a single array load.
+ * Other ids are supported through hash lookups.
+ * </p>
+ * <p/>
+ * <p>
+ * The state machine graph is held by an immutable {@link StateMachineDefinition}
+ * which can be shared by many state machines. A state machine only owns its current
+ * state and the timers of its current state.
+ * </p>
+ * <p/>
+ * <p>
+ * Timeout and heartbeat events are coalesced: at most one of each is pending at any
+ * time, so a late state machine is not flooded with heartbeats. User events can be
+ * coalesced too, see {@link CoalescableEventId}.
+ * </p>
+ * <p/>
+ * <p>
+ * States can be nested in compound states, whose transitions apply to all their
+ * descendants, see {@link StateMachineDefinition}. The current state is always an
+ * atomic state. On a transition, the states are exited up to the least common ancestor
+ * of the transition source and target states, and entered down to the target atomic state.
+ * </p>
+ * <p/>
+ * <p>
+ * A state can hold orthogonal regions, which react to the events received while the
+ * state is active, see {@link Region}.
+ * </p>
+ * <p/>
+ * <p>
+ * Once warmed up, firing an event without message on a state machine with its own
+ * event loop, dispatching it and notifying the listeners allocates nothing, unless
+ * metrics are enabled or the events are journaled. Entering a timed state allocates
+ * its timers.
+ * </p>
  */
 public class SimpleStateMachine implements TimedStateListener {
 
     /**
      * State machine internal events
      */
-    enum InternalEvent implements EventId {
+    enum InternalEvent implements CoalescableEventId<Void> {
         TIMEOUT,
         HEARTBEAT
     }
@@ -84,15 +128,46 @@ public class SimpleStateMachine implements TimedStateListener {
     private static final Logger LOGGER =
             LoggerFactory.getLogger(SimpleStateMachine.class);
 
-    private final Map<StateId, State> states = new HashMap<>();
-    private final Map<StateId, Map<EventId, Transition>> transitionMap =
-            new HashMap<>();
-    private final EventProcessor eventProcessor;
-    private final ExecutorService internalTransitionExec = Executors.newCachedThreadPool();
-    private final List<Future<?>> transitionInstances = new ArrayList<>();
+    // the state machines of a runtime are mostly idle, their mailbox holds no preallocated slots
+    private static final EventLoopOptions RUNTIME_DEFAULTS =
+            EventLoopOptions.newOptions().mailbox(LinkedMailbox::new).build();
+
+    private final StateMachineDefinition definition;
+    private final TransitionTable transitionTable;
+    private final EventLoop<Event> eventProcessor;
+    // the executor of the state machine's own is created on the first internal transition
+    private volatile InternalTransitionExecutor internalTransitionExec;
+    // the threads of the executor of the state machine's own, null when the executor is shared
+    private final ThreadFactory internalTransitionThreads;
+    // guarded by this
+    private boolean shutdown;
+    private final Set<Future<?>> transitionInstances = ConcurrentHashMap.newKeySet();
     private State current;
+    private int currentIndex;
+    // the regions by state index, and the regions of the current state
+    private final OrthogonalRegions[] regions;
+    private OrthogonalRegions currentRegions;
+    private volatile TimerHandle timers;
+    // the scheduler of the timers, null for the scheduler of the timed states
+    private final Scheduler scheduler;
+    private final Clock clock;
+    // the clock time the timers were armed
+    private long armedAt = Position.NOT_ARMED;
+    // the current state and armed time, published for snapshots
+    private volatile Position position;
     private final String name;
-    private final CopyOnWriteArrayList<StateMachineListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile StateMachineListener[] listeners = new StateMachineListener[0];
+    // pending coalescable events, by event index
+    private final AtomicIntegerArray pendingCoalescable;
+    // pending coalescable events without index, which have no transition
+    private final Set<EventId<?>> pendingUnindexed = ConcurrentHashMap.newKeySet();
+    private final StateMachineMetrics metrics;
+    private final FlightRecorder recorder;
+    private final EventJournal journal;
+    private final byte[] journalName;
+    // the sequence number of the last journaled event
+    private long journaled;
+    private long enteredAt;
 
     /**
      * A finite state machine.
@@ -105,50 +180,208 @@ public class SimpleStateMachine implements TimedStateListener {
     public SimpleStateMachine(Set<State> states, Set<Transition> transitions,
                               String fsmName, State initial) {
 
-        this.name = fsmName;
-        if (transitions == null) {
-            transitions = new HashSet<>();
-        }
+        this(StateMachineDefinition.newDefinition()
+                .states(states)
+                .transitions(transitions)
+                .initial(initial)
+                .build(), fsmName);
+    }
 
-        Set<Transition> internalTransitions = new HashSet<>();
-        for (State state : states) {
-            this.states.put(state.getId(), state);
-            transitionMap.put(state.getId(),
-                    new HashMap<>());
+    /**
+     * A finite state machine sharing its definition with other state machines.
+     *
+     * @param definition the state machine definition
+     * @param fsmName    the state machine name
+     */
+    public SimpleStateMachine(StateMachineDefinition definition, String fsmName) {
 
-            if (state instanceof TimedState) {
-                ((TimedState) state).setActiveStateListener(this);
-                internalTransitions
-                        .addAll(((TimedState) state).getInternal(states));
-            }
+        this(definition, fsmName, EventLoopOptions.defaults());
+    }
+
+    /**
+     * A finite state machine with a configured event loop.
+     *
+     * <p>
+     * In batch mode, the pending events are drained and dispatched in one go,
+     * see {@link EventLoopOptions.Builder#maxBatch(int)}. The event loop and the
+     * internal transitions may run on virtual threads, see
+     * {@link EventLoopOptions.Builder#threadFactory(java.util.concurrent.ThreadFactory)}.
+     * In inline mode, the events are dispatched on the threads firing them, without
+     * event loop thread, see {@link EventLoopOptions.Builder#inline(boolean)}.
+     * </p>
+     *
+     * @param definition the state machine definition
+     * @param fsmName    the state machine name
+     * @param options    the event loop options
+     */
+    public SimpleStateMachine(StateMachineDefinition definition, String fsmName,
+                              EventLoopOptions options) {
+
+        this(definition, fsmName, options, machine -> machine.newEventLoop(options),
+                options.getInternalTransitions());
+    }
+
+    /**
+     * A finite state machine running on a shared runtime.
+     *
+     * <p>
+     * The state machine has no thread of its own: its events are processed by one
+     * of the runtime workers.
+     * </p>
+     *
+     * @param definition the state machine definition
+     * @param fsmName    the state machine name
+     * @param runtime    the runtime
+     */
+    public SimpleStateMachine(StateMachineDefinition definition, String fsmName, FsmRuntime runtime) {
+
+        this(definition, fsmName, runtime, RUNTIME_DEFAULTS);
+    }
+
+    /**
+     * A finite state machine running on a shared runtime, with options.
+     *
+     * <p>
+     * The metrics, flight recorder, journal, scheduler, clock and region pool of the options
+     * apply, and so do the mailbox, its capacity and priority lanes, and the drop newest and
+     * drop oldest overflow policies. The internal transitions run on the executor of the
+     * options, if any, on the runtime executor otherwise. The runtime refuses the options
+     * that would hold or bypass its workers, see {@link FsmRuntime}. A {@link LinkedMailbox}
+     * suits the state machines of a runtime, which are mostly idle, best.
+     * </p>
+     *
+     * @param definition the state machine definition
+     * @param fsmName    the state machine name
+     * @param runtime    the runtime
+     * @param options    the state machine options
+     * @throws IllegalArgumentException when the runtime does not support the options
+     */
+    public SimpleStateMachine(StateMachineDefinition definition, String fsmName, FsmRuntime runtime,
+                              EventLoopOptions options) {
+
+        this(definition, fsmName, options,
+                machine -> runtime.newEventLoop(machine::dispatch, machine::dropped, options),
+                options.getInternalTransitions() != null
+                        ? options.getInternalTransitions() : runtime.getInternalTransitions());
+    }
+
+    /**
+     * A finite state machine running on the event loop of a factory.
+     *
+     * <p>
+     * The metrics, flight recorder, journal, scheduler, clock and region pool are taken
+     * from the options, the event loop options only apply through the event loop factory.
+     * </p>
+     *
+     * @param definition          the state machine definition
+     * @param fsmName             the state machine name
+     * @param options             the state machine options
+     * @param eventLoop           creates the event loop of the state machine, which must
+     *                            {@link #dispatch(Event) dispatch} the events one at a time
+     * @param internalTransitions the shared executor of the internal transitions, null for
+     *                            the default executor, see {@link EventLoopOptions.Builder#internalTransitions}
+     */
+    SimpleStateMachine(StateMachineDefinition definition, String fsmName, EventLoopOptions options,
+                       Function<SimpleStateMachine, EventLoop<Event>> eventLoop,
+                       InternalTransitionExecutor internalTransitions) {
+
+        this.definition = definition;
+        this.transitionTable = definition.getTransitionTable();
+        this.name = fsmName;
+        this.metrics = options.isMetricsEnabled() ? new StateMachineMetrics(definition) : null;
+        this.recorder = options.getFlightRecorder() > 0
+                ? new FlightRecorder(transitionTable, options.getFlightRecorder()) : null;
+        this.journal = options.getJournal();
+        this.journalName = journal == null ? null : EventJournal.encodeName(fsmName);
+        this.scheduler = options.getScheduler();
+        this.clock = options.getClock();
+        this.pendingCoalescable = new AtomicIntegerArray(transitionTable.eventCount());
+        this.regions = OrthogonalRegions.of(definition, options.getRegionPool());
+        setCurrent(definition.getInitial());
+        publish();
+        if (internalTransitions != null) {
+            internalTransitionExec = internalTransitions;
+            internalTransitionThreads = null;
+        } else if (options.getThreadFactory() == ThreadFactories.platform()) {
+            internalTransitionExec = InternalTransitionExecutor.shared();
+            internalTransitionThreads = null;
+        } else {
+            internalTransitionThreads = options.getThreadFactory();
         }
+        eventProcessor = eventLoop.apply(this);
+    }
+
+    /**
+     * Creates the event loop of a state machine with an event loop of its own.
+     *
+     * @param options the event loop options
+     * @return a thread or an inline event loop
+     */
+    private EventLoop<Event> newEventLoop(EventLoopOptions options) {
+        Mailbox<Event> mailbox = options.newMailbox(Event::getId);
+        return options.isInline()
+                ? new InlineEventLoop<>(this::dispatch, mailbox)
+                : new EventProcessor("FSM " + name, options, mailbox);
+    }
 
-        // Add internal transitions
-        for (Transition trans : internalTransitions) {
-            transitionMap.get(trans.getFromState().getId())
-                    .put(trans.getEventId(), trans);
+    public void addStateMachineListener(StateMachineListener listener) {
+        synchronized (this) {
+            StateMachineListener[] current = listeners;
+            StateMachineListener[] added = Arrays.copyOf(current, current.length + 1);
+            added[current.length] = listener;
+            listeners = added;
         }
+    }
 
-        // Add transitions
-        for (Transition trans : transitions) {
-            transitionMap.get(trans.getFromState().getId())
-                    .put(trans.getEventId(), trans);
+    /**
+     * Returns a snapshot of the state machine metrics.
+     *
+     * <p>
+     * The times of a transition are recorded once it is complete, after the listeners
+     * have been notified of the states exited and entered: a snapshot taken by a
+     * listener, or on its notification, may not account for the transition yet.
+     * </p>
+     *
+     * @return the metrics snapshot
+     * @throws IllegalStateException when the metrics are not enabled
+     * @see EventLoopOptions.Builder#metrics(boolean)
+     */
+    public StateMachineMetrics.Snapshot getMetrics() {
+        if (metrics == null) {
+            throw new IllegalStateException("Metrics are not enabled for " + name);
         }
-        this.current = initial;
-        eventProcessor = new EventProcessor("FSM " + name);
+        return metrics.snapshot(eventProcessor.getPendingCount());
     }
 
-    public void addStateMachineListener(StateMachineListener listener) {
-        listeners.add(listener);
+    /**
+     * Returns the dispatches kept by the flight recorder, the oldest first.
+     *
+     * <p>The flight record can be read at any time, while events are dispatched.</p>
+     *
+     * @return the flight record
+     * @throws IllegalStateException when the flight recorder is not enabled
+     * @see EventLoopOptions.Builder#flightRecorder(int)
+     */
+    public List<FlightRecorder.Entry> getFlightRecord() {
+        if (recorder == null) {
+            throw new IllegalStateException("Flight recorder is not enabled for " + name);
+        }
+        return recorder.snapshot();
     }
 
     @Override
     public void onTimeout() {
+        if (metrics != null) {
+            metrics.onTimeout();
+        }
         fireEvent(InternalEvent.TIMEOUT);
     }
 
     @Override
     public void onHeartBeat() {
+        if (metrics != null) {
+            metrics.onHeartBeat();
+        }
         fireEvent(InternalEvent.HEARTBEAT);
     }
 
@@ -156,12 +389,20 @@ public class SimpleStateMachine implements TimedStateListener {
      * shutdown the state machine
      */
     public void shutdown() {
-        listeners.clear();
-        states.values().stream()
-                .filter(state -> state instanceof TimedState)
-                .forEach(state -> ((TimedState) state).shutdown());
+        listeners = new StateMachineListener[0];
+        cancelTimers();
         eventProcessor.shutdown();
-        internalTransitionExec.shutdownNow();
+        // a transition may have been processed meanwhile
+        cancelTimers();
+        terminateInternalTransitions();
+        InternalTransitionExecutor own;
+        synchronized (this) {
+            shutdown = true;
+            own = internalTransitionThreads == null ? null : internalTransitionExec;
+        }
+        if (own != null) {
+            own.shutdown();
+        }
     }
 
     /**
@@ -169,27 +410,181 @@ public class SimpleStateMachine implements TimedStateListener {
      *
      * @param eventId the event id
      */
-    public void fireEvent(EventId eventId) {
+    public void fireEvent(EventId<?> eventId) {
 
-        fireEvent(new Event(eventId));
+        fireEvent(newEvent(eventId));
     }
 
     /**
      * Fires an event on the state machine.
      *
+     * <p>The message is handed over to the action of the transition, see {@link Action}.</p>
+     *
      * @param eventId the event id
      * @param message the event message
+     * @param <P>     the message type
      */
-    @SuppressWarnings({ "unchecked", "rawtypes" })
-    public void fireEvent(EventId eventId, Object message) {
+    public <P> void fireEvent(EventId<P> eventId, P message) {
 
         fireEvent(new Event(eventId, message));
     }
 
     private void fireEvent(Event event) {
 
-        if (!eventProcessor.isShutdown()) {
-            eventProcessor.send(event);
+        offerEvent(event);
+    }
+
+    /**
+     * Fires an event on the state machine and tells what became of it.
+     *
+     * <p>
+     * Unlike {@link #fireEvent(EventId)}, the caller learns when the event is rejected
+     * because the state machine is overloaded, see {@link EventLoopOptions.Builder#overflowPolicy(OverflowPolicy)}.
+     * </p>
+     *
+     * @param eventId the event id
+     * @return the send status
+     */
+    public SendStatus offerEvent(EventId<?> eventId) {
+
+        return offerEvent(newEvent(eventId));
+    }
+
+    /**
+     * Fires an event on the state machine and tells what became of it.
+     *
+     * @param eventId the event id
+     * @param message the event message
+     * @param <P>     the message type
+     * @return the send status
+     */
+    public <P> SendStatus offerEvent(EventId<P> eventId, P message) {
+
+        return offerEvent(new Event(eventId, message));
+    }
+
+    /**
+     * Fires an event on the state machine and tells what became of it once dispatched.
+     *
+     * <p>
+     * The stage completes on the event loop thread, once the event is dispatched, with the
+     * outcome of the event and the state of the state machine. It completes at once when the
+     * event is rejected. Events submitted are never coalesced.
+     * </p>
+     *
+     * @param eventId the event id
+     * @return the stage completed with the transition result
+     */
+    public CompletionStage<TransitionResult> submit(EventId<?> eventId) {
+
+        return submit(new Event(eventId));
+    }
+
+    /**
+     * Fires an event on the state machine and tells what became of it once dispatched.
+     *
+     * @param eventId the event id
+     * @param message the event message
+     * @param <P>     the message type
+     * @return the stage completed with the transition result
+     * @see #submit(EventId)
+     */
+    public <P> CompletionStage<TransitionResult> submit(EventId<P> eventId, P message) {
+
+        return submit(new Event(eventId, message));
+    }
+
+    private CompletionStage<TransitionResult> submit(Event event) {
+
+        event.completion = new CompletableFuture<>();
+        offerEvent(event);
+        return event.completion;
+    }
+
+    private SendStatus offerEvent(Event event) {
+
+        if (eventProcessor.isShutdown()) {
+            rejected(event);
+            return SendStatus.REJECTED;
+        }
+        boolean coalescable = isCoalescable(event);
+        if (coalescable && !markPending(event.getId())) {
+            LOGGER.debug("Event {} is already pending", event);
+            return offered(SendStatus.COALESCED);
+        }
+        if (metrics != null) {
+            event.enqueuedAt = System.nanoTime();
+        }
+        SendStatus status;
+        try {
+            status = eventProcessor.offer(event);
+        } catch (IllegalStateException ex) {
+            // shutdown meanwhile
+            status = SendStatus.REJECTED;
+        }
+        if (status == SendStatus.REJECTED) {
+            if (coalescable) {
+                clearPending(event.getId());
+            }
+            rejected(event);
+        }
+        return offered(status);
+    }
+
+    private static void rejected(Event event) {
+        if (event.completion != null) {
+            event.completion.complete(new TransitionResult(TransitionResult.Outcome.REJECTED, null));
+        }
+    }
+
+    /**
+     * Returns an event without message.
+     *
+     * @param eventId the event id
+     * @return a shared event, or a new one when its enqueue time is recorded
+     */
+    private Event newEvent(EventId<?> eventId) {
+        return metrics == null ? definition.getEvent(eventId) : new Event(eventId);
+    }
+
+    private SendStatus offered(SendStatus status) {
+        if (metrics != null) {
+            metrics.onOffered(status, eventProcessor.getPendingCount());
+        }
+        return status;
+    }
+
+    private static boolean isCoalescable(Event event) {
+        return event.getId() instanceof CoalescableEventId && event.getMessage() == null
+                && event.completion == null;
+    }
+
+    /**
+     * Marks a coalescable event as pending.
+     *
+     * @param eventId the event id
+     * @return false if the event is already pending
+     */
+    private boolean markPending(EventId<?> eventId) {
+        int index = transitionTable.eventIndex(eventId);
+        if (index < 0) {
+            return pendingUnindexed.add(eventId);
+        }
+        return pendingCoalescable.compareAndSet(index, 0, 1);
+    }
+
+    private void clearPending(EventId<?> eventId) {
+        int index = transitionTable.eventIndex(eventId);
+        if (index < 0) {
+            pendingUnindexed.remove(eventId);
+        } else {
+            pendingCoalescable.set(index, 0);
+        }
+    }
+
+    private void released(Event event) {
+        if (isCoalescable(event)) {
+            clearPending(event.getId());
         }
     }
 
@@ -202,9 +597,11 @@ public class SimpleStateMachine implements TimedStateListener {
          * Creates a new notification processor.
          *
          * @param threadName the thread name.
+         * @param options    the event loop options.
+         * @param mailbox    the event loop mailbox.
          */
-        public EventProcessor(String threadName) {
-            super(threadName);
+        public EventProcessor(String threadName, EventLoopOptions options, Mailbox<Event> mailbox) {
+            super(threadName, options, mailbox);
         }
 
         /**
@@ -213,63 +610,486 @@ public class SimpleStateMachine implements TimedStateListener {
         @SuppressWarnings("synthetic-access")
         @Override
         protected void onMessage(Event event) {
+            dispatch(event);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void onBatch(List<Event> events) {
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("{} events are received", events.size());
+            }
+            super.onBatch(events);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @SuppressWarnings("synthetic-access")
+        @Override
+        protected void onDropped(Event event) {
+            dropped(event);
+        }
+    }
 
-            LOGGER.debug("Event {} is received", event);
+    /**
+     * Releases an event dropped by the event loop before being dispatched, by the drop
+     * oldest policy or by the shutdown of the event loop.
+     *
+     * @param event the event
+     */
+    void dropped(Event event) {
+        released(event);
+        if (metrics != null) {
+            metrics.onDropped();
+        }
+        rejected(event);
+    }
 
-            if (isTimeOut(event)) {
-                LOGGER.error("State {} has timed out.", current);
+    /**
+     * Processes an event, on the event loop thread.
+     *
+     * <p>
+     * The stage of a submitted event completes exceptionally when the dispatch fails, a
+     * guard or a listener throwing an exception for instance.
+     * </p>
+     *
+     * @param event the event
+     */
+    void dispatch(Event event) {
+
+        try {
+            process(event);
+        } catch (RuntimeException | Error ex) {
+            if (event.completion != null) {
+                event.completion.completeExceptionally(ex);
             }
+            throw ex;
+        }
+    }
+
+    private void process(Event event) {
+
+        LOGGER.debug("Event {} is received", event);
+        // from now on, the same event can be fired again
+        released(event);
+        if (metrics != null) {
+            metrics.onReceived(event.enqueuedAt);
+        }
+
+        if (isTimeOut(event)) {
+            LOGGER.error("State {} has timed out.", current);
+        }
 
-            Transition transition =
-                    transitionMap.get(current.getId()).get(event.getId());
-            if (transition != null) {
-                LOGGER.debug("Transition {} is found for event {}", transition, event);
-                if (!transition.getCondition().isPresent() || transition.getCondition().get().getAsBoolean()) {
-                    executeTransition(event, transition);
+        int source = currentIndex;
+        State sourceState = current;
+        Object jfrEvent = FsmEvents.beginTransition();
+        long start = recorder == null ? 0 : System.nanoTime();
+        FlightRecorder.Outcome outcome;
+        TransitionTable.Route route = null;
+        int eventIndex = transitionTable.eventIndex(event.getId());
+        // the transitions of the regions take precedence, when enabled
+        FlightRecorder.Outcome regionOutcome =
+                currentRegions == null ? null : currentRegions.dispatch(event, listeners);
+        Transition transition = regionOutcome == null || regionOutcome == FlightRecorder.Outcome.GUARDED
+                ? transitionTable.get(currentIndex, eventIndex) : null;
+        if (regionOutcome != null && transition == null) {
+            LOGGER.debug("Event {} is dispatched to the regions of state {}", event, current);
+            outcome = regionOutcome;
+        } else if (transition != null) {
+            LOGGER.debug("Transition {} is found for event {}", transition, event);
+            if (transition.isAllowed()) {
+                boolean done;
+                route = transitionTable.route(currentIndex, eventIndex);
+                if (journal != null && route != null) {
+                    // published with the target state
+                    journaled++;
+                }
+                if (metrics != null) {
+                    done = executeTimedTransition(event, transition, route,
+                            metrics.transitionTime(transitionTable.slot(currentIndex, eventIndex)));
+                } else {
+                    done = executeTransition(event, transition, route);
+                }
+                if (!done) {
+                    outcome = FlightRecorder.Outcome.FAILED;
+                } else if (transition.getToState() == null) {
+                    outcome = FlightRecorder.Outcome.INTERNAL;
                 } else {
-                    LOGGER.info("Event {} is guarded for state {}", event, current);
+                    outcome = isTimeOut(event) ? FlightRecorder.Outcome.TIMEOUT : FlightRecorder.Outcome.TRANSITIONED;
                 }
             } else {
-                LOGGER.info("Event {} is ignored for state {}", event, current);
+                LOGGER.debug("Event {} is guarded for state {}", event, current);
+                if (metrics != null) {
+                    metrics.onGuarded();
+                }
+                outcome = FlightRecorder.Outcome.GUARDED;
+            }
+        } else {
+            LOGGER.debug("Event {} is ignored for state {}", event, current);
+            if (metrics != null) {
+                metrics.onIgnored();
+            }
+            outcome = FlightRecorder.Outcome.IGNORED;
+        }
+
+        // the state changes even when the action fails, the regions are not journaled
+        if (journal != null && route != null) {
+            journal.append(journalName, journaled, event.getId(), event.getMessage());
+        }
+        if (jfrEvent != null) {
+            FsmEvents.endTransition(jfrEvent, name, sourceState.getId(), event.getId(), current.getId(), outcome);
+        }
+        if (recorder != null) {
+            recorder.record(start, source, eventIndex, outcome, currentIndex, System.nanoTime() - start);
+            if (outcome == FlightRecorder.Outcome.FAILED) {
+                dumpFlightRecord(transition);
             }
         }
+        if (event.completion != null) {
+            event.completion.complete(TransitionResult.of(outcome, current.getId()));
+        }
+    }
 
-        private boolean isTimeOut(Event event) {
-            return event.getId() == InternalEvent.TIMEOUT;
+    private void dumpFlightRecord(Transition transition) {
+        StringBuilder dump = new StringBuilder();
+        for (FlightRecorder.Entry entry : recorder.snapshot()) {
+            dump.append(System.lineSeparator()).append(entry);
         }
+        LOGGER.error("Transition {} of {} failed, flight record:{}", transition, name, dump);
+    }
 
-        @SuppressWarnings("synthetic-access")
-        private void executeTransition(Event event, Transition transition) {
-            Optional<State> newState = transition.getToState();
-            if (newState.isPresent()) {
+    private boolean executeTimedTransition(Event event, Transition transition, TransitionTable.Route route,
+                                           Histogram histogram) {
+        if (route != null) {
+            long start = System.nanoTime();
+            metrics.onExited(currentIndex, start - enteredAt);
+            boolean done = executeTransition(event, transition, route);
+            histogram.record(System.nanoTime() - start);
+            return done;
+        }
+        executeInternalTransition(transition, () -> {
+            long start = System.nanoTime();
+            transition.run(event);
+            histogram.record(System.nanoTime() - start);
+        });
+        return true;
+    }
 
-                LOGGER.debug("Terminate all running transitions for {}.", current);
-                terminateInternalTransitions();
+    private boolean isTimeOut(Event event) {
+        return event.getId() == InternalEvent.TIMEOUT;
+    }
 
-                LOGGER.debug("Leaving state {}.", current);
-                for (StateMachineListener listener : listeners) {
-                    listener.onStateExited(current.getId());
+    /**
+     * Executes a transition.
+     *
+     * <p>
+     * The states of the route are exited, the innermost first, then the transition
+     * action is run and the states of the route are entered, the outermost first.
+     * </p>
+     *
+     * @param route the states exited and entered, null for an internal transition
+     * @return false if the transition action failed
+     */
+    private boolean executeTransition(Event event, Transition transition, TransitionTable.Route route) {
+        if (route != null) {
+
+            LOGGER.debug("Terminate all running transitions for {}.", current);
+            terminateInternalTransitions();
+
+            StateMachineListener[] notified = listeners;
+            if (currentRegions != null) {
+                currentRegions.exit(notified);
+            }
+            for (State exited : route.getExits()) {
+                LOGGER.debug("Leaving state {}.", exited);
+                for (StateMachineListener listener : notified) {
+                    listener.onStateExited(exited.getId());
                 }
-                current.onExit();
-                transition.run(event);
-                current = newState.get();
-                LOGGER.debug("Entering state {}.", current);
-                for (StateMachineListener listener : listeners) {
-                    listener.onStateEntered(current.getId());
+                if (exited instanceof TimedState) {
+                    // at most one timed state is active
+                    cancelTimers();
+                    armedAt = Position.NOT_ARMED;
                 }
-                current.onEntry();
-            } else {
-                // internal transition. run by a specific executor.
-                transitionInstances.add(internalTransitionExec.submit(() -> transition.run(event)));
+                exited.onExit();
             }
+            boolean done = transition.run(event);
+            setCurrent(route.getTarget());
+            for (State entered : route.getEntries()) {
+                LOGGER.debug("Entering state {}.", entered);
+                for (StateMachineListener listener : notified) {
+                    listener.onStateEntered(entered.getId());
+                }
+                entered.onEntry();
+                if (entered instanceof TimedState) {
+                    timers = arm((TimedState) entered, 0);
+                }
+            }
+            publish();
+            if (currentRegions != null) {
+                currentRegions.enter(notified);
+            }
+            return done;
+        }
+        executeInternalTransition(transition, () -> transition.run(event));
+        return true;
+    }
+
+    private void executeInternalTransition(Transition transition, Runnable action) {
+        // internal transition. run by a specific executor.
+        InternalTransition task = new InternalTransition(action);
+        transitionInstances.add(task);
+        InternalTransitionExecutor executor = internalTransitionExec;
+        if (executor == null) {
+            executor = ownInternalTransitionExec();
+        }
+        if (executor == null || executor.execute(task) == SendStatus.REJECTED) {
+            LOGGER.debug("Internal transition {} is rejected", transition);
+            task.cancel(false);
+        }
+    }
+
+    /**
+     * Creates the executor of the state machine's own, on the first internal transition.
+     *
+     * @return the executor, or null once the state machine is shutdown
+     */
+    private synchronized InternalTransitionExecutor ownInternalTransitionExec() {
+        if (shutdown) {
+            return null;
+        }
+        if (internalTransitionExec == null) {
+            internalTransitionExec = InternalTransitionExecutor.newExecutor()
+                    .threadFactory(internalTransitionThreads)
+                    .build();
+        }
+        return internalTransitionExec;
+    }
+
+    /**
+     * Replays a journaled event, on the thread replaying the journal.
+     *
+     * <p>
+     * The state machine makes the transition of the event to its target state, without
+     * evaluating the guard nor running the action, the entry and exit methods.
+     * </p>
+     *
+     * @param eventId  the journaled event id
+     * @param sequence the sequence number of the journaled event
+     * @see EventJournal#replay
+     */
+    void replay(EventId<?> eventId, long sequence) {
+        journaled = sequence;
+        int eventIndex = transitionTable.eventIndex(eventId);
+        TransitionTable.Route route = eventIndex < 0 ? null : transitionTable.route(currentIndex, eventIndex);
+        if (route == null) {
+            LOGGER.warn("Journaled event {} has no transition from state {}", eventId, current);
+            return;
+        }
+        // the timers of a state restored from a snapshot
+        cancelTimers();
+        armedAt = Position.NOT_ARMED;
+        setCurrent(route.getTarget());
+        if (currentRegions != null) {
+            currentRegions.reset();
+        }
+        publish();
+    }
+
+    /**
+     * Returns the sequence number of the last journaled event.
+     *
+     * <p>
+     * The events already applied to the state machine, by the journal replay or the
+     * snapshot restore, are not replayed again.
+     * </p>
+     *
+     * @return the sequence number, 0 when no event was journaled
+     */
+    long getJournaled() {
+        return journaled;
+    }
+
+    /**
+     * Arms the timers of the state restored from the journal.
+     */
+    void restored() {
+        LOGGER.info("State machine {} is restored in state {}", name, current);
+        armTimers(0);
+    }
+
+    /**
+     * Restores the state saved in a snapshot, on the thread restoring the snapshot.
+     *
+     * <p>
+     * The entry methods are not run. The timers of the timed state are armed with the
+     * time left when the snapshot was taken. The regions of the state are restored in
+     * their initial states.
+     * </p>
+     *
+     * @param stateId   the saved state
+     * @param elapsed   the time spent in the timed state when the snapshot was taken, in
+     *                  milliseconds, -1 when no timer was armed
+     * @param journaled the sequence number of the last journaled event applied to the state
+     * @see StateSnapshot#restore
+     */
+    void restore(StateId stateId, long elapsed, long journaled) {
+        State state = definition.getState(stateId);
+        if (state == null || state.getInitial() != null) {
+            throw new IllegalArgumentException("State " + stateId + " is not an atomic state of " + name);
+        }
+        cancelTimers();
+        armedAt = Position.NOT_ARMED;
+        this.journaled = journaled;
+        setCurrent(state);
+        if (currentRegions != null) {
+            currentRegions.reset();
+        }
+        if (elapsed >= 0) {
+            armTimers(elapsed);
+        } else {
+            publish();
+        }
+    }
+
+    private void armTimers(long elapsed) {
+        for (State state = current; state != null; state = definition.getState(state.getParent())) {
+            if (state instanceof TimedState) {
+                cancelTimers();
+                timers = arm((TimedState) state, elapsed);
+            }
+        }
+        publish();
+    }
+
+    private TimerHandle arm(TimedState state, long elapsed) {
+        TimerHandle armed = scheduler == null ? state.arm(this, elapsed) : state.arm(scheduler, this, elapsed);
+        armedAt = clock.millis() - elapsed;
+        return armed;
+    }
+
+    /**
+     * Returns the current time of the clock timing the timers.
+     *
+     * @return the time in milliseconds
+     */
+    long currentTimeMillis() {
+        return clock.millis();
+    }
+
+    /**
+     * Returns the name of the state machine.
+     *
+     * @return the state machine name
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the current state and armed time, which can be read while events are dispatched.
+     *
+     * @return the position
+     */
+    Position getPosition() {
+        return position;
+    }
+
+    private void publish() {
+        // the positions of journaled state machines carry their last journaled event
+        position = armedAt == Position.NOT_ARMED && journal == null
+                ? definition.getPosition(currentIndex) : new Position(current, armedAt, journaled);
+    }
+
+    private void setCurrent(State state) {
+        current = state;
+        currentIndex = transitionTable.stateIndex(state.getId());
+        currentRegions = regions[currentIndex];
+        if (metrics != null) {
+            enteredAt = System.nanoTime();
+        }
+    }
+
+    private void cancelTimers() {
+        TimerHandle active = timers;
+        if (active != null) {
+            timers = null;
+            active.cancel();
         }
     }
 
     private void terminateInternalTransitions() {
-        transitionInstances.stream()
-                .filter(instance -> !instance.isDone())
-                .forEach(instance -> instance.cancel(true));
-        transitionInstances.clear();
+        if (transitionInstances.isEmpty()) {
+            // iterating allocates
+            return;
+        }
+        // cancelled transitions remove themselves
+        for (Future<?> instance : transitionInstances) {
+            instance.cancel(true);
+        }
+    }
+
+    /**
+     * A running internal transition, tracked until it is done.
+     */
+    private final class InternalTransition extends FutureTask<Void> {
+
+        InternalTransition(Runnable transition) {
+            super(transition, null);
+        }
+
+        @SuppressWarnings("synthetic-access")
+        @Override
+        protected void done() {
+            transitionInstances.remove(this);
+        }
+    }
+
+    /**
+     * The current state of a state machine, the time its timers were armed and the last
+     * journaled event applied to the state.
+     */
+    static final class Position {
+
+        static final long NOT_ARMED = Long.MIN_VALUE;
+
+        private final State state;
+        private final long armedAt;
+        private final long journaled;
+
+        Position(State state, long armedAt, long journaled) {
+            this.state = state;
+            this.armedAt = armedAt;
+            this.journaled = journaled;
+        }
+
+        State getState() {
+            return state;
+        }
+
+        boolean isArmed() {
+            return armedAt != NOT_ARMED;
+        }
+
+        /**
+         * Returns the time the timers of the state were armed, read on the state machine clock.
+         *
+         * @return the time in milliseconds
+         */
+        long getArmedAt() {
+            return armedAt;
+        }
+
+        /**
+         * Returns the sequence number of the last journaled event applied to the state.
+         *
+         * @return the sequence number, 0 when no event was journaled
+         */
+        long getJournaled() {
+            return journaled;
+        }
     }
 
     /**
@@ -277,8 +1097,12 @@ public class SimpleStateMachine implements TimedStateListener {
      */
     static class Event {
 
-        private final EventId eventId;
+        private final EventId<?> eventId;
         private final Object message;
+        // set when metrics are enabled
+        long enqueuedAt;
+        // set when the event is submitted
+        CompletableFuture<TransitionResult> completion;
 
         /**
          * Creates a new state machine event.
@@ -286,7 +1110,7 @@ public class SimpleStateMachine implements TimedStateListener {
          * @param eventId the event id
          * @param message the event message
          */
-        Event(EventId eventId, Object message) {
+        Event(EventId<?> eventId, Object message) {
             this.eventId = eventId;
             this.message = message;
         }
@@ -296,7 +1120,7 @@ public class SimpleStateMachine implements TimedStateListener {
          *
          * @param eventId the event id
          */
-        Event(EventId eventId) {
+        Event(EventId<?> eventId) {
             this(eventId, null);
         }
 
@@ -305,7 +1129,7 @@ public class SimpleStateMachine implements TimedStateListener {
          *
          * @return the event id.
          */
-        EventId getId() {
+        EventId<?> getId() {
             return eventId;
         }
 
@@ -327,24 +1151,47 @@ public class SimpleStateMachine implements TimedStateListener {
     // for tests
 
     void setState(StateId stateId) {
-        current = states.get(stateId);
+        setCurrent(definition.getState(stateId));
+        if (current.getInitial() != null) {
+            throw new IllegalArgumentException("State " + stateId + " is not an atomic state");
+        }
+        if (currentRegions != null) {
+            currentRegions.reset();
+        }
+        publish();
+    }
+
+    boolean isCompiled() {
+        return transitionTable.isCompiled();
     }
 
     StateId getState() {
         return current.getId();
     }
 
-    void fireEventSync(EventId eventId) {
+    StateId getRegionState(int region) {
+        return currentRegions.getState(region);
+    }
+
+    int getInternalTransitionCount() {
+        return transitionInstances.size();
+    }
 
-        fireEventSync(new Event(eventId));
+    void fireEventSync(EventId<?> eventId) {
+
+        Event event = newEvent(eventId);
+        if (metrics != null) {
+            event.enqueuedAt = System.nanoTime();
+        }
+        fireEventSync(event);
     }
 
     private void fireEventSync(Event event) {
 
-        if (transitionMap.get(current.getId()).get(event.getId()) == null) {
+        if (transitionTable.get(current.getId(), event.getId()) == null && currentRegions == null) {
             throw new IllegalStateException(
                     "No transition found for event " + event);
         }
-        eventProcessor.onMessage(event);
+        dispatch(event);
     }
 }
@@ -1,5 +1,8 @@
 package com.alu.oamp.fsm;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * A state machine state.
  *
@@ -22,4 +25,31 @@ public interface State {
 	 */
 	void onExit();
 
+	/**
+	 * Returns the id of the enclosing compound state.
+	 *
+	 * @return the parent state id or null for a top level state.
+	 */
+	default StateId getParent() {
+		return null;
+	}
+
+	/**
+	 * Returns the id of the state entered when this compound state is entered.
+	 *
+	 * @return the initial child state id or null for an atomic state.
+	 */
+	default StateId getInitial() {
+		return null;
+	}
+
+	/**
+	 * Returns the orthogonal regions of the state.
+	 *
+	 * @return the regions, empty for a state without regions.
+	 */
+	default List<Region> getRegions() {
+		return Collections.emptyList();
+	}
+
 }
\ No newline at end of file
@@ -0,0 +1,57 @@
+package com.alu.oamp.fsm;
+
+/**
+ * Encodes the states written to a {@link StateSnapshot}.
+ *
+ * <p>
+ * A state id is saved as a code, which must stay stable across restarts: enum
+ * ordinals are fine as long as constants are only appended.
+ * </p>
+ */
+public interface StateCodec {
+
+	/**
+	 * Returns the code of a state id.
+	 *
+	 * @param stateId
+	 *            the state id
+	 * @return the code
+	 */
+	int encode(StateId stateId);
+
+	/**
+	 * Returns the state id of a code.
+	 *
+	 * @param code
+	 *            the code
+	 * @return the state id or null if the code is unknown
+	 */
+	StateId decode(int code);
+
+	/**
+	 * Returns a codec for the states of an enum, encoded by ordinal.
+	 *
+	 * @param states
+	 *            the enum class
+	 * @param <S>
+	 *            the enum type
+	 * @return the codec
+	 */
+	static <S extends Enum<S> & StateId> StateCodec ofEnum(Class<S> states) {
+		S[] constants = states.getEnumConstants();
+		return new StateCodec() {
+			@Override
+			public int encode(StateId stateId) {
+				if (!states.isInstance(stateId)) {
+					throw new IllegalArgumentException("State " + stateId + " is not a " + states.getSimpleName());
+				}
+				return ((Enum<?>) stateId).ordinal();
+			}
+
+			@Override
+			public StateId decode(int code) {
+				return code >= 0 && code < constants.length ? constants[code] : null;
+			}
+		};
+	}
+}
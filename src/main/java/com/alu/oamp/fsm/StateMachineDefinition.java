@@ -0,0 +1,231 @@
+package com.alu.oamp.fsm;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A state machine definition.
+ *
+ * <p>
+ * The definition holds the state machine graph: the states, the compiled transition
+ * table and the initial state. It is immutable and thread safe, and is meant to be
+ * built once and shared by all the state machines modelling the same kind of entity:
+ * </p>
+ * <pre>
+ * StateMachineDefinition door = StateMachineDefinition.newDefinition()
+ *         .states(states)
+ *         .transitions(transitions)
+ *         .initial(closed)
+ *         .build();
+ *
+ * SimpleStateMachine door1 = new SimpleStateMachine(door, "door 1");
+ * SimpleStateMachine door2 = new SimpleStateMachine(door, "door 2");
+ * </pre>
+ * <p>
+ * States and transitions hold no per machine data: the current state and the
+ * active timers are owned by each {@link SimpleStateMachine}. The timed states
+ * scheduler provider must be set before building the definition.
+ * </p>
+ * <p>
+ * States can be nested in compound states, see {@link States.Builder#parent(StateId)}.
+ * A compound state groups the transitions shared by its child states:
+ * </p>
+ * <pre>
+ * states.add(newState(Door.OPEN).initial(Door.OPENED).build());
+ * states.add(newState(Door.OPENED).parent(Door.OPEN).build());
+ * states.add(newState(Door.OPENED_AND_RINGING).parent(Door.OPEN).build());
+ *
+ * // closes the door, whether it is ringing or not
+ * transitions.add(newTransition(states).from(Door.OPEN).event(Cmd.CLOSE).to(Door.CLOSED).build());
+ * </pre>
+ * <p>
+ * A state machine is always in an atomic state, together with its ancestors.
+ * </p>
+ */
+public final class StateMachineDefinition {
+
+    private final Map<StateId, State> states;
+    private final TransitionTable transitionTable;
+    private final State initial;
+    private final SimpleStateMachine.Event[] events;
+    private final SimpleStateMachine.Position[] positions;
+
+    private StateMachineDefinition(Map<StateId, State> states,
+                                   TransitionTable transitionTable, State initial) {
+        this.states = states;
+        this.transitionTable = transitionTable;
+        this.initial = initial;
+        this.events = new SimpleStateMachine.Event[transitionTable.eventCount()];
+        // the enum constants without transition are indexed too
+        for (int index = 0; index < events.length; index++) {
+            events[index] = new SimpleStateMachine.Event(transitionTable.eventId(index));
+        }
+        this.positions = new SimpleStateMachine.Position[transitionTable.stateCount()];
+        for (int index = 0; index < positions.length; index++) {
+            StateId stateId = transitionTable.stateId(index);
+            if (stateId != null) {
+                positions[index] = new SimpleStateMachine.Position(states.get(stateId),
+                        SimpleStateMachine.Position.NOT_ARMED, 0);
+            }
+        }
+    }
+
+    /**
+     * Returns a new definition builder.
+     *
+     * @return the builder
+     */
+    public static Builder newDefinition() {
+        return new Builder();
+    }
+
+    /**
+     * Returns the initial state.
+     *
+     * <p>When the initial state is a compound state, its initial atomic state is returned.</p>
+     *
+     * @return the initial state.
+     */
+    State getInitial() {
+        return initial;
+    }
+
+    /**
+     * Returns a state.
+     *
+     * @param stateId the state id
+     * @return the state or null if the state is unknown
+     */
+    State getState(StateId stateId) {
+        return states.get(stateId);
+    }
+
+    /**
+     * Returns the states.
+     *
+     * @return the states
+     */
+    Collection<State> getStates() {
+        return states.values();
+    }
+
+    /**
+     * Returns the event without message of an event id.
+     *
+     * <p>
+     * Events without message are immutable and shared, the events of the indexed ids
+     * are created once and for all.
+     * </p>
+     *
+     * @param eventId the event id
+     * @return the event
+     */
+    SimpleStateMachine.Event getEvent(EventId<?> eventId) {
+        int index = transitionTable.eventIndex(eventId);
+        return index < 0 ? new SimpleStateMachine.Event(eventId) : events[index];
+    }
+
+    /**
+     * Returns the position of a state machine in a state without armed timers.
+     *
+     * <p>The positions are immutable and shared, they are created once and for all.</p>
+     *
+     * @param stateIndex the state index
+     * @return the position
+     */
+    SimpleStateMachine.Position getPosition(int stateIndex) {
+        return positions[stateIndex];
+    }
+
+    /**
+     * Returns the transition table.
+     *
+     * @return the transition table
+     */
+    TransitionTable getTransitionTable() {
+        return transitionTable;
+    }
+
+    /**
+     * A state machine definition builder.
+     *
+     * <p>The states and the initial state are mandatory, transitions are optional.</p>
+     */
+    public static class Builder {
+
+        private Set<State> states = new HashSet<>();
+        private Set<Transition> transitions = new HashSet<>();
+        private State initial;
+
+        private Builder() {
+        }
+
+        /**
+         * Specifies the states.
+         *
+         * @param states the states
+         * @return the builder
+         */
+        public Builder states(Set<State> states) {
+            this.states = new HashSet<>(states);
+            return this;
+        }
+
+        /**
+         * Specifies the transitions.
+         *
+         * @param transitions the transitions
+         * @return the builder
+         */
+        public Builder transitions(Set<Transition> transitions) {
+            this.transitions = transitions == null ? new HashSet<>() : new HashSet<>(transitions);
+            return this;
+        }
+
+        /**
+         * Specifies the initial state.
+         *
+         * @param initial the initial state
+         * @return the builder
+         */
+        public Builder initial(State initial) {
+            this.initial = initial;
+            return this;
+        }
+
+        /**
+         * Builds the definition.
+         *
+         * @return the definition
+         */
+        public StateMachineDefinition build() {
+            if (initial == null) {
+                throw new IllegalArgumentException("initial state can't be null.");
+            }
+            if (!states.contains(initial)) {
+                throw new IllegalArgumentException("initial state " + initial + " is not a state.");
+            }
+
+            Map<StateId, State> map = new HashMap<>();
+            List<Transition> allTransitions = new ArrayList<>();
+            for (State state : states) {
+                map.put(state.getId(), state);
+                if (state instanceof TimedState) {
+                    allTransitions.addAll(((TimedState) state).getInternal(states));
+                }
+            }
+
+            // Internal transitions first, user transitions take precedence
+            allTransitions.addAll(transitions);
+            TransitionTable transitionTable = TransitionTable.compile(states, allTransitions);
+            return new StateMachineDefinition(Collections.unmodifiableMap(map), transitionTable,
+                    TransitionTable.initialAtomic(map, initial));
+        }
+    }
+}
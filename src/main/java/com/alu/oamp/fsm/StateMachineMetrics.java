@@ -0,0 +1,305 @@
+package com.alu.oamp.fsm;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The metrics of a state machine.
+ *
+ * <p>
+ * Metrics are enabled with {@link EventLoopOptions.Builder#metrics(boolean)}. Counters
+ * are striped and histograms have fixed buckets, so recording costs a few nanoseconds
+ * and never allocates. The numbers are read through a consistent enough, immutable
+ * {@link Snapshot}, for instance to export them periodically to a monitoring system:
+ * </p>
+ * <pre>
+ * StateMachineMetrics.Snapshot metrics = door.getMetrics();
+ * gauge("door.pending", metrics.getPendingEvents());
+ * histogram("door.latency", metrics.getQueueLatency());
+ * </pre>
+ * <p>
+ * Transition and dwell time histograms are written by the event loop thread only,
+ * and created when first needed.
+ * </p>
+ */
+public final class StateMachineMetrics {
+
+    private final TransitionTable transitionTable;
+
+    private final LongAdder received = new LongAdder();
+    private final LongAdder ignored = new LongAdder();
+    private final LongAdder guarded = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder heartbeats = new LongAdder();
+    private final LongAccumulator highWaterMark = new LongAccumulator(Math::max, 0);
+    private final Histogram queueLatency = new Histogram();
+    private final Histogram[] transitionTimes;
+    private final Histogram[] dwellTimes;
+
+    StateMachineMetrics(StateMachineDefinition definition) {
+        this.transitionTable = definition.getTransitionTable();
+        this.transitionTimes = new Histogram[transitionTable.slotCount()];
+        // indexed by state index, which leaves room for the unused constants of the state enums
+        this.dwellTimes = new Histogram[transitionTable.stateCount()];
+    }
+
+    void onTimeout() {
+        timeouts.increment();
+    }
+
+    void onHeartBeat() {
+        heartbeats.increment();
+    }
+
+    void onOffered(SendStatus status, int pending) {
+        switch (status) {
+        case REJECTED:
+            rejected.increment();
+            break;
+        case COALESCED:
+            coalesced.increment();
+            break;
+        default:
+            highWaterMark.accumulate(pending);
+        }
+    }
+
+    void onDropped() {
+        dropped.increment();
+    }
+
+    void onReceived(long enqueuedAt) {
+        received.increment();
+        queueLatency.record(System.nanoTime() - enqueuedAt);
+    }
+
+    void onIgnored() {
+        ignored.increment();
+    }
+
+    void onGuarded() {
+        guarded.increment();
+    }
+
+    Histogram transitionTime(int slot) {
+        Histogram histogram = transitionTimes[slot];
+        if (histogram == null) {
+            histogram = new Histogram();
+            transitionTimes[slot] = histogram;
+        }
+        return histogram;
+    }
+
+    void onExited(int state, long dwellTime) {
+        Histogram histogram = dwellTimes[state];
+        if (histogram == null) {
+            histogram = new Histogram();
+            dwellTimes[state] = histogram;
+        }
+        histogram.record(dwellTime);
+    }
+
+    /**
+     * Returns a snapshot of the metrics.
+     *
+     * @param pending the number of pending events
+     * @return the snapshot
+     */
+    Snapshot snapshot(int pending) {
+
+        Map<String, Histogram.Snapshot> transitions = new LinkedHashMap<>();
+        for (int slot = 0; slot < transitionTimes.length; slot++) {
+            Histogram histogram = transitionTimes[slot];
+            if (histogram != null) {
+                Transition transition = transitionTable.get(slot);
+                // keyed by the active state, nested states share the transitions of their ancestors
+                transitions.put(transitionTable.stateId(slot / transitionTable.eventCount()) + " "
+                                + transition.getEventId(),
+                        histogram.snapshot());
+            }
+        }
+        Map<StateId, Histogram.Snapshot> dwells = new LinkedHashMap<>();
+        for (int state = 0; state < dwellTimes.length; state++) {
+            Histogram histogram = dwellTimes[state];
+            if (histogram != null) {
+                dwells.put(transitionTable.stateId(state), histogram.snapshot());
+            }
+        }
+        return new Snapshot(this, pending, transitions, dwells);
+    }
+
+    /**
+     * An immutable metrics snapshot.
+     */
+    public static final class Snapshot {
+
+        private final long received;
+        private final long ignored;
+        private final long guarded;
+        private final long rejected;
+        private final long dropped;
+        private final long coalesced;
+        private final long timeouts;
+        private final long heartbeats;
+        private final int pending;
+        private final long highWaterMark;
+        private final Histogram.Snapshot queueLatency;
+        private final Map<String, Histogram.Snapshot> transitionTimes;
+        private final Map<StateId, Histogram.Snapshot> dwellTimes;
+
+        private Snapshot(StateMachineMetrics metrics, int pending,
+                         Map<String, Histogram.Snapshot> transitionTimes,
+                         Map<StateId, Histogram.Snapshot> dwellTimes) {
+            this.received = metrics.received.sum();
+            this.ignored = metrics.ignored.sum();
+            this.guarded = metrics.guarded.sum();
+            this.rejected = metrics.rejected.sum();
+            this.dropped = metrics.dropped.sum();
+            this.coalesced = metrics.coalesced.sum();
+            this.timeouts = metrics.timeouts.sum();
+            this.heartbeats = metrics.heartbeats.sum();
+            this.pending = pending;
+            this.highWaterMark = Math.max(pending, metrics.highWaterMark.get());
+            this.queueLatency = metrics.queueLatency.snapshot();
+            this.transitionTimes = Collections.unmodifiableMap(transitionTimes);
+            this.dwellTimes = Collections.unmodifiableMap(dwellTimes);
+        }
+
+        /**
+         * Returns the number of events received by the event loop.
+         *
+         * @return the number of received events
+         */
+        public long getReceivedEvents() {
+            return received;
+        }
+
+        /**
+         * Returns the number of events without transition in the current state.
+         *
+         * @return the number of ignored events
+         */
+        public long getIgnoredEvents() {
+            return ignored;
+        }
+
+        /**
+         * Returns the number of events whose transition condition was false.
+         *
+         * @return the number of guarded events
+         */
+        public long getGuardedEvents() {
+            return guarded;
+        }
+
+        /**
+         * Returns the number of events rejected because the event loop was overloaded.
+         *
+         * @return the number of rejected events
+         */
+        public long getRejectedEvents() {
+            return rejected;
+        }
+
+        /**
+         * Returns the number of pending events dropped to make room for newer ones, by the
+         * drop oldest overflow policy, or dropped by the shutdown of the event loop.
+         *
+         * @return the number of dropped events
+         */
+        public long getDroppedEvents() {
+            return dropped;
+        }
+
+        /**
+         * Returns the number of events coalesced with a pending event.
+         *
+         * @return the number of coalesced events
+         */
+        public long getCoalescedEvents() {
+            return coalesced;
+        }
+
+        /**
+         * Returns the number of timeouts fired by the timed states.
+         *
+         * @return the number of timeouts
+         */
+        public long getTimeouts() {
+            return timeouts;
+        }
+
+        /**
+         * Returns the number of heartbeats fired by the timed states.
+         *
+         * @return the number of heartbeats
+         */
+        public long getHeartbeats() {
+            return heartbeats;
+        }
+
+        /**
+         * Returns the number of pending events.
+         *
+         * @return the mailbox depth
+         */
+        public int getPendingEvents() {
+            return pending;
+        }
+
+        /**
+         * Returns the largest number of pending events seen.
+         *
+         * @return the mailbox high water mark
+         */
+        public long getPendingHighWaterMark() {
+            return highWaterMark;
+        }
+
+        /**
+         * Returns the time events wait in the mailbox.
+         *
+         * @return the enqueue to dequeue latency histogram
+         */
+        public Histogram.Snapshot getQueueLatency() {
+            return queueLatency;
+        }
+
+        /**
+         * Returns the execution times of the transitions, by source state and event.
+         *
+         * <p>
+         * The execution time of a transition to a target state includes the exit and entry
+         * actions of the states.
+         * </p>
+         *
+         * @return the transition execution time histograms
+         */
+        public Map<String, Histogram.Snapshot> getTransitionTimes() {
+            return transitionTimes;
+        }
+
+        /**
+         * Returns the time spent in the states, by state.
+         *
+         * @return the state dwell time histograms
+         */
+        public Map<StateId, Histogram.Snapshot> getDwellTimes() {
+            return dwellTimes;
+        }
+
+        @Override
+        public String toString() {
+            return "[received=" + received + ", ignored=" + ignored + ", guarded=" + guarded
+                    + ", rejected=" + rejected + ", dropped=" + dropped + ", coalesced=" + coalesced + ", timeouts=" + timeouts
+                    + ", heartbeats=" + heartbeats + ", pending=" + pending
+                    + ", highWaterMark=" + highWaterMark + ", queueLatency=" + queueLatency + "]";
+        }
+    }
+}
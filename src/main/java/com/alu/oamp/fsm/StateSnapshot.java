@@ -0,0 +1,262 @@
+package com.alu.oamp.fsm;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A binary snapshot of the state of state machines.
+ *
+ * <p>
+ * The snapshot saves the current state of each state machine, and the time spent in its
+ * timed state, if any, so that the timeout and heartbeat timers are restored with the
+ * time they had left. Restoring a snapshot takes a time bounded by its size, unlike
+ * replaying an {@link EventJournal}:
+ * </p>
+ * <pre>
+ * StateSnapshot snapshot = StateSnapshot.newSnapshot(file)
+ *         .codec(StateCodec.ofEnum(Door.class))
+ *         .build();
+ * snapshot.write(doors.values());
+ * ...
+ * snapshot.restore(doors::get);
+ * </pre>
+ * <p>
+ * The snapshot is written in one streaming pass, through a direct buffer, to a temporary
+ * file atomically renamed once complete. A state machine dispatching events while the
+ * snapshot is written is saved in its state before or after the event. The snapshot is
+ * laid out as follows:
+ * </p>
+ * <pre>
+ * int magic | int version | long time | long journal position or -1 | int count
+ * count x (short name length | name | int state code | long elapsed time or -1 | long journal sequence)
+ * </pre>
+ * <p>
+ * The time spent in the timed state is saved rather than the timer deadlines: the time
+ * the state machines are down is not counted. Restoring a state machine does not run
+ * the entry methods, and the regions are restored in their initial states.
+ * </p>
+ * <p>
+ * A snapshot attached to the {@link EventJournal} of the state machines saves, for each
+ * state machine, the last journaled event applied to its state, and truncates the
+ * journal once written. On restart, the snapshot is restored first, then the journal
+ * replays the events that followed:
+ * </p>
+ * <pre>
+ * StateSnapshot snapshot = StateSnapshot.newSnapshot(file)
+ *         .codec(StateCodec.ofEnum(Door.class))
+ *         .journal(journal)
+ *         .build();
+ * ...
+ * snapshot.restore(doors::get);
+ * journal.replay(doors::get);
+ * </pre>
+ */
+public final class StateSnapshot {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StateSnapshot.class);
+
+    private static final int MAGIC = 0x46534D53;
+    private static final int VERSION = 2;
+    private static final int HEADER = 4 + 4 + 8 + 8 + 4;
+    private static final int COUNT_POSITION = 4 + 4 + 8 + 8;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path file;
+    private final StateCodec codec;
+    private final EventJournal journal;
+
+    private StateSnapshot(Builder builder) {
+        this.file = builder.file;
+        this.codec = builder.codec;
+        this.journal = builder.journal;
+    }
+
+    /**
+     * Returns a new snapshot builder.
+     *
+     * @param file the snapshot file
+     * @return the builder
+     */
+    public static Builder newSnapshot(Path file) {
+        return new Builder(file);
+    }
+
+    /**
+     * Writes the snapshot of state machines, replacing the previous one.
+     *
+     * <p>
+     * The journal, if any, is then truncated: its segments holding only events
+     * appended before the snapshot are deleted, so the snapshot must save all the
+     * state machines of the journal.
+     * </p>
+     *
+     * @param machines the state machines, with distinct names
+     * @return the number of state machines saved
+     * @throws IOException if the snapshot can't be written
+     */
+    public int write(Iterable<SimpleStateMachine> machines) throws IOException {
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        long now = System.currentTimeMillis();
+        // the events appended from now on may not be saved
+        long journalPosition = journal == null ? -1 : journal.getPosition();
+        int count = 0;
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(now).putLong(journalPosition).putInt(0);
+            for (SimpleStateMachine machine : machines) {
+                byte[] name = EventJournal.encodeName(machine.getName());
+                SimpleStateMachine.Position position = machine.getPosition();
+                if (buffer.remaining() < 2 + name.length + 4 + 8 + 8) {
+                    drain(buffer, channel);
+                }
+                buffer.putShort((short) name.length);
+                buffer.put(name);
+                buffer.putInt(codec.encode(position.getState().getId()));
+                buffer.putLong(position.isArmed()
+                        ? Math.max(0, machine.currentTimeMillis() - position.getArmedAt()) : -1);
+                buffer.putLong(position.getJournaled());
+                count++;
+            }
+            drain(buffer, channel);
+            buffer.putInt(count).flip();
+            channel.write(buffer, COUNT_POSITION);
+            channel.force(false);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (journal != null) {
+            journal.truncate(journalPosition);
+        }
+        return count;
+    }
+
+    private static void drain(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Restores the state machines saved in the snapshot.
+     *
+     * <p>
+     * The snapshot must be restored before any event is fired on the state machines, and
+     * before their journal is replayed. The regions of the restored states are in their
+     * initial states.
+     * </p>
+     *
+     * @param machines the state machines, by name, the unknown machines are skipped
+     * @return the number of state machines restored
+     * @throws IOException if the snapshot can't be read or is corrupted
+     */
+    public int restore(Function<String, SimpleStateMachine> machines) throws IOException {
+
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.remaining() < HEADER || buffer.getInt() != MAGIC) {
+            throw new IOException(file + " is not a state machine snapshot");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("Snapshot version " + version + " is not supported");
+        }
+        // the time and the journal position
+        buffer.getLong();
+        buffer.getLong();
+        int count = buffer.getInt();
+
+        int restored = 0;
+        byte[] name = new byte[Short.MAX_VALUE];
+        try {
+            for (int i = 0; i < count; i++) {
+                int length = buffer.getShort();
+                buffer.get(name, 0, length);
+                int code = buffer.getInt();
+                long elapsed = buffer.getLong();
+                long journaled = buffer.getLong();
+
+                SimpleStateMachine machine = machines.apply(new String(name, 0, length, StandardCharsets.UTF_8));
+                StateId state = codec.decode(code);
+                if (machine == null) {
+                    continue;
+                }
+                if (state == null) {
+                    LOGGER.warn("Saved state {} of {} is unknown", code, machine.getName());
+                    continue;
+                }
+                machine.restore(state, elapsed, journaled);
+                restored++;
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException ex) {
+            throw new IOException("Snapshot " + file + " is corrupted", ex);
+        }
+        return restored;
+    }
+
+    /**
+     * A snapshot builder.
+     */
+    public static class Builder {
+
+        private final Path file;
+        private StateCodec codec;
+        private EventJournal journal;
+
+        private Builder(Path file) {
+            this.file = file;
+        }
+
+        /**
+         * Specifies the codec of the saved states, mandatory.
+         *
+         * @param codec the state codec
+         * @return the builder
+         */
+        public Builder codec(StateCodec codec) {
+            this.codec = codec;
+            return this;
+        }
+
+        /**
+         * Specifies the journal of the saved state machines, none by default.
+         *
+         * @param journal the event journal, truncated when a snapshot is written
+         * @return the builder
+         */
+        public Builder journal(EventJournal journal) {
+            this.journal = journal;
+            return this;
+        }
+
+        /**
+         * Builds the snapshot.
+         *
+         * @return the snapshot
+         */
+        public StateSnapshot build() {
+            if (file == null) {
+                throw new IllegalArgumentException("file can't be null.");
+            }
+            if (codec == null) {
+                throw new IllegalArgumentException("codec can't be null.");
+            }
+            return new StateSnapshot(this);
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package com.alu.oamp.fsm;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -27,12 +30,19 @@ public class States {
 	 * When building a state, a state id is mandatory. on entry and on exit
 	 * methods are optional.
 	 * 
+	 * A state is nested in a compound state by naming its parent. A compound
+	 * state names the child state entered when the compound state is entered.
+	 * A state can also hold orthogonal regions, active together with the state.
+	 * 
 	 */
 	public static class Builder {
 		
 		private final StateId stateId;
 		private Runnable onEntry;
 		private Runnable onExit;
+		private StateId parent;
+		private StateId initial;
+		private final List<Region> regions = new ArrayList<>();
 
         private Optional<Timeout> timeout = Optional.empty();
 		private Optional<Heartbeat> heartbeat = Optional.empty();
@@ -66,6 +76,47 @@ public class States {
 			return this;
 		}
 		
+		/**
+		 * Specifies the compound state enclosing this state.
+		 *
+		 * The transitions of the parent state apply to this state, unless this
+		 * state defines its own transition for the same event.
+		 *
+		 * @param parent the parent state id
+		 * @return the state builder
+		 */
+		public Builder parent(StateId parent) {
+			this.parent = parent;
+			return this;
+		}
+
+		/**
+		 * Specifies the state entered when entering this compound state.
+		 *
+		 * The initial state is mandatory for a state having child states.
+		 *
+		 * @param initial the initial child state id
+		 * @return the state builder
+		 */
+		public Builder initial(StateId initial) {
+			this.initial = initial;
+			return this;
+		}
+
+		/**
+		 * Adds an orthogonal region to the state.
+		 *
+		 * A state with regions can't have child states.
+		 *
+		 * @param region the region
+		 * @return the state builder
+		 */
+		public Builder region(Region region) {
+			checkNotNull(region, "Region can't be null");
+			this.regions.add(region);
+			return this;
+		}
+
 		/**
 		 * Specifies the state timeout.
 		 * 
@@ -94,7 +145,8 @@ public class States {
 		 * @return the new state.
 		 */
 		public State build() {
-            State built = new BaseState(stateId, onEntry, onExit);
+            State built = new BaseState(stateId, onEntry, onExit, parent, initial,
+                    Collections.unmodifiableList(new ArrayList<>(regions)));
 
             if (heartbeat.isPresent()) {
                 built = new HeartbeatAbleState(built, heartbeat.get());
@@ -0,0 +1,93 @@
+package com.alu.oamp.fsm;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread factories for event loops and internal transitions.
+ *
+ * <p>
+ * The library targets Java 8, virtual threads are looked up at runtime. On a Java 21
+ * or later runtime, event loops can run on virtual threads rather than platform threads,
+ * so that a process may run hundreds of thousands of state machines with a dedicated
+ * event loop each, and blocking transition actions don't hold an OS thread:
+ * </p>
+ * <pre>
+ * EventLoopOptions options = EventLoopOptions.newOptions()
+ *         .threadFactory(ThreadFactories.virtual())
+ *         .build();
+ * SimpleStateMachine door = new SimpleStateMachine(definition, "door", options);
+ * </pre>
+ */
+public final class ThreadFactories {
+
+    private static final ThreadFactory PLATFORM = Executors.defaultThreadFactory();
+    private static final ThreadFactory VIRTUAL = lookupVirtual();
+
+    private ThreadFactories() {
+    }
+
+    /**
+     * Returns the platform thread factory, the default.
+     *
+     * <p>
+     * The factory is shared. The state machines using it run their internal transitions
+     * on the shared executor, see {@link InternalTransitionExecutor#shared()}.
+     * </p>
+     *
+     * @return the platform thread factory
+     */
+    public static ThreadFactory platform() {
+        return PLATFORM;
+    }
+
+    /**
+     * Returns a factory of daemon platform threads, for the pools shared by the whole process.
+     *
+     * @param name the thread name, suffixed with the thread number
+     * @return the daemon thread factory
+     */
+    static ThreadFactory daemon(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return task -> {
+            Thread thread = new Thread(task, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Returns a virtual thread factory.
+     *
+     * @return the virtual thread factory
+     * @throws UnsupportedOperationException when the runtime has no virtual threads
+     */
+    public static ThreadFactory virtual() {
+        if (VIRTUAL == null) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or later.");
+        }
+        return VIRTUAL;
+    }
+
+    /**
+     * Returns true when the runtime supports virtual threads.
+     *
+     * @return true when virtual threads are supported
+     */
+    public static boolean isVirtualSupported() {
+        return VIRTUAL != null;
+    }
+
+    private static ThreadFactory lookupVirtual() {
+        try {
+            // Thread.ofVirtual().factory()
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            return null;
+        }
+    }
+}
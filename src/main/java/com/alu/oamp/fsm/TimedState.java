@@ -1,7 +1,6 @@
 package com.alu.oamp.fsm;
 
 import java.util.Set;
-import java.util.Timer;
 import java.util.function.Supplier;
 
 /**
@@ -11,7 +10,9 @@ import java.util.function.Supplier;
  * timed states can exit after a specified duration.
  * </p>
  * <p>
- * Timed state must be shutdown before exiting (to shutdown the timer)
+ * A timed state holds no timer itself: the state machine arms the state timers
+ * each time the state is entered, and cancels them when the state is exited.
+ * Timed states can thus be shared by several state machines.
  * </p>
  * <p>
  * The creation of a timed state results in the creation of internal transition within the state machine.
@@ -21,12 +22,53 @@ import java.util.function.Supplier;
 public interface TimedState extends State {
 
 	/**
-	 * Set active state listener
+	 * Arms the state timers.
 	 *
+	 * <p>
+	 * Invoked by the state machine when the state is entered.
+	 * </p>
+	 *
+	 * @param listener
+	 *            the listener notified when the timers fire
+	 * @return the handle cancelling the timers when the state is exited
+	 */
+	default TimerHandle arm(TimedStateListener listener) {
+		return arm(listener, 0);
+	}
+
+	/**
+	 * Arms the state timers, as if the state had been entered some time ago.
+	 *
+	 * <p>
+	 * Invoked by the state machine when it is restored from a snapshot: the timeout
+	 * fires once its remaining time elapses, the heartbeat keeps its phase.
+	 * </p>
+	 *
+	 * @param listener
+	 *            the listener notified when the timers fire
+	 * @param elapsed
+	 *            the time already spent in the state, in milliseconds
+	 * @return the handle cancelling the timers when the state is exited
+	 */
+	TimerHandle arm(TimedStateListener listener, long elapsed);
+
+	/**
+	 * Arms the state timers on a scheduler other than the one of the state provider.
+	 *
+	 * <p>
+	 * Invoked by the state machines configured with their own scheduler, see
+	 * {@link EventLoopOptions.Builder#scheduler(Scheduler)}.
+	 * </p>
+	 *
+	 * @param scheduler
+	 *            the scheduler
 	 * @param listener
-	 *            the active state listener
+	 *            the listener notified when the timers fire
+	 * @param elapsed
+	 *            the time already spent in the state, in milliseconds
+	 * @return the handle cancelling the timers when the state is exited
 	 */
-	void setActiveStateListener(TimedStateListener listener);
+	TimerHandle arm(Scheduler scheduler, TimedStateListener listener, long elapsed);
 
 	/**
 	 * Returns the state internal transitions.
@@ -44,21 +86,18 @@ public interface TimedState extends State {
 	Set<Transition> getInternal(Set<State> states);
 
 	/**
-	 * Shutdown the state.
+	 * Sets the timer provider.
 	 *
 	 * <p>
-	 * active states must be shutdown
+	 * The provider is invoked each time the state is entered. By default, a timed
+	 * state uses a {@link TimerScheduler}, use {@link HashedWheelScheduler#shared()}
+	 * to share a single timer thread between all the state machines.
 	 * </p>
-	 */
-	void shutdown();
-
-	/**
-	 * Sets the timer provider.
 	 *
 	 * @param provider
-	 *            the time provider.
+	 *            the scheduler provider.
 	 *
 	 */
-	void setProvider(Supplier<Timer> provider);
+	void setProvider(Supplier<Scheduler> provider);
 
 }
\ No newline at end of file
@@ -1,8 +1,6 @@
 package com.alu.oamp.fsm;
 
 import java.util.Set;
-import java.util.Timer;
-import java.util.TimerTask;
 
 /**
  * A timeout able state times out if the state is active for more than the timeout duration.
@@ -20,21 +18,21 @@ public class TimeoutAbleState extends AbstractTimedState {
     TimeoutAbleState(State innerState, Timeout timeout) {
         super(innerState);
         this.timeout = timeout;
-        provider = () -> new Timer("Timer " + state.toString());
+        Scheduler scheduler = new TimerScheduler("Timer " + state.toString());
+        provider = () -> scheduler;
     }
 
     @Override
-    public void onEntry() {
-
-        state.onEntry();
-        timer = provider.get();
-        TimerTask task = new TimerTask() {
-            @Override
-            public void run() {
+    protected TimerHandle start(Scheduler scheduler, TimedStateListener listener, long elapsed) {
+        long delay = Math.max(0, timeout.getTimeout() - elapsed);
+        if (FsmEvents.ENABLED) {
+            FsmEvents.timerScheduled(getId(), SimpleStateMachine.InternalEvent.TIMEOUT, delay, 0);
+            return scheduler.schedule(() -> {
+                FsmEvents.timerFired(getId(), SimpleStateMachine.InternalEvent.TIMEOUT);
                 listener.onTimeout();
-            }
-        };
-        timer.schedule(task, timeout.getTimeout());
+            }, delay);
+        }
+        return scheduler.schedule(listener::onTimeout, delay);
     }
 
 
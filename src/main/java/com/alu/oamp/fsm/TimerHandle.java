@@ -0,0 +1,16 @@
+package com.alu.oamp.fsm;
+
+/**
+ * A handle on a task scheduled by a {@link Scheduler}.
+ */
+@FunctionalInterface
+public interface TimerHandle {
+
+    /**
+     * Cancels the scheduled task.
+     * <p>
+     * Cancelling a task that has already run or that is already cancelled has no effect.
+     * </p>
+     */
+    void cancel();
+}
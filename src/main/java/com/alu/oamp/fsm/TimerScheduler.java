@@ -0,0 +1,51 @@
+package com.alu.oamp.fsm;
+
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * A scheduler backed by {@link java.util.Timer}.
+ *
+ * <p>
+ * Each scheduled task gets its own timer, hence its own thread, which is stopped
+ * when the task is cancelled. This is the default scheduler of timed states. It is
+ * fine for a few machines but does not scale: prefer a {@link HashedWheelScheduler}
+ * when many machines switch states frequently.
+ * </p>
+ */
+public class TimerScheduler implements Scheduler {
+
+    private final String name;
+
+    /**
+     * Creates a new timer scheduler.
+     *
+     * @param name the timer thread name
+     */
+    public TimerScheduler(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public TimerHandle schedule(Runnable task, long delay) {
+        Timer timer = new Timer(name);
+        timer.schedule(asTimerTask(task), delay);
+        return timer::cancel;
+    }
+
+    @Override
+    public TimerHandle schedulePeriodic(Runnable task, long delay, long period) {
+        Timer timer = new Timer(name);
+        timer.schedule(asTimerTask(task), delay, period);
+        return timer::cancel;
+    }
+
+    private static TimerTask asTimerTask(Runnable task) {
+        return new TimerTask() {
+            @Override
+            public void run() {
+                task.run();
+            }
+        };
+    }
+}
@@ -5,7 +5,6 @@ import org.slf4j.LoggerFactory;
 
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Optional;
 import java.util.Set;
 import java.util.function.BooleanSupplier;
 
@@ -18,9 +17,9 @@ public class Transition {
 	private static final Logger LOGGER =
 		LoggerFactory.getLogger(Transition.class);
 
-	private final EventId eventId;
+	private final EventId<?> eventId;
 	private final State fromState;
-	private final Object action;
+	private final Action<Object> action;
 	private final State toState;
     private final BooleanSupplier condition;
 
@@ -38,8 +37,8 @@ public class Transition {
 	 * @param condition
 	 *            the transition condition
 	 */
-	private Transition(State fromState, EventId eventId, State toState,
-                       Object action, BooleanSupplier condition) {
+	private Transition(State fromState, EventId<?> eventId, State toState,
+                       Action<Object> action, BooleanSupplier condition) {
 		this.fromState = fromState;
 		this.eventId = eventId;
 		this.toState = toState;
@@ -48,12 +47,12 @@ public class Transition {
 	}
 
 	/**
-	 * Returns the transition target state via an optional.
+	 * Returns the transition target state.
 	 *
-	 * @return the transition target state.
+	 * @return the transition target state or null for an internal transition.
 	 */
-	Optional<State> getToState() {
-		return Optional.ofNullable(toState);
+	State getToState() {
+		return toState;
 	}
 
 	/**
@@ -61,7 +60,7 @@ public class Transition {
 	 *
 	 * @return the transition event id
 	 */
-	EventId getEventId() {
+	EventId<?> getEventId() {
 		return eventId;
 	}
 
@@ -75,16 +74,14 @@ public class Transition {
 	}
 
     /**
-     * Returns the transition condition.
+     * Returns true when the transition condition, if any, holds.
      *
-     * @return the transition condition
+     * @return true when the transition is allowed
      */
-    Optional<BooleanSupplier> getCondition() {
-        return Optional.ofNullable(condition);
+    boolean isAllowed() {
+        return condition == null || condition.getAsBoolean();
     }
 
-
-
     @Override
 	public String toString() {
 		return "Transition [" + eventId + ", " + fromState + "]";
@@ -93,29 +90,33 @@ public class Transition {
 	/**
 	 * Executes the transition action.
 	 *
-	 * An action is either an instance of a Runnable or an instance of Action
-	 * <T> (A Runnable with an input parameter).
+	 * The action kind is resolved when the transition is built: a Runnable is
+	 * adapted to an Action, so running any action is a single interface call.
 	 *
-	 * In case of an Action<T>, A class cast exception is logged if the event
-	 * message sent does not match the action expected input parameter.
+	 * A class cast exception is logged if the event message sent does not match
+	 * the action expected input parameter, which can only happen with untyped events.
 	 *
 	 * @param event
 	 *            the state machine event
+	 * @return false if the action failed
 	 */
-	@SuppressWarnings({ "unchecked", "rawtypes" })
-	void run(SimpleStateMachine.Event event) {
+	boolean run(SimpleStateMachine.Event event) {
 
 		if (action != null) {
+			Object jfrEvent = FsmEvents.beginAction();
+			boolean done = true;
 			try {
-				if (action instanceof Runnable) {
-					((Runnable) action).run();
-				} else {
-					((Action) action).run(event.getMessage());
-				}
+				action.run(event.getMessage());
 			} catch (Exception ex) {
 				LOGGER.error("Exception on transition " + toString(), ex);
+				done = false;
+			}
+			if (jfrEvent != null) {
+				FsmEvents.endAction(jfrEvent, this, !done);
 			}
+			return done;
 		}
+		return true;
 	}
 
 	/**
@@ -142,9 +143,9 @@ public class Transition {
 
 		private final Map<StateId, State> map;
 		private State toState;
-		private EventId eventId;
+		private EventId<?> eventId;
 		private State fromState;
-		private Object action;
+		private Action<Object> action;
         private BooleanSupplier condition;
 
         private Builder(Map<StateId, State> map) {
@@ -219,7 +220,7 @@ public class Transition {
 		 *            the event id
 		 * @return the builder
 		 */
-		public Builder event(EventId eventId) {
+		public Builder event(EventId<?> eventId) {
 			this.eventId = eventId;
 			return this;
 		}
@@ -233,7 +234,7 @@ public class Transition {
 		 * @return the builder
 		 */
 		public Builder action(Runnable action) {
-			this.action = action;
+			this.action = action == null ? null : message -> action.run();
 			return this;
 		}
 
@@ -246,8 +247,29 @@ public class Transition {
          *            the action runnable
          * @return the builder
          */
-        public Builder consume(Action action) {
-            this.action = action;
+        @SuppressWarnings("unchecked")
+        public Builder consume(Action<?> action) {
+            this.action = (Action<Object>) action;
+            return this;
+        }
+
+        /**
+         * Specifies the transition event and an action consuming the event message.
+         *
+         * The action input parameter is checked against the event message type at compile time.
+         *
+         * @param eventId
+         *            the event id
+         * @param action
+         *            the action
+         * @param <P>
+         *            the message type
+         * @return the builder
+         */
+        @SuppressWarnings("unchecked")
+        public <P> Builder consume(EventId<P> eventId, Action<? super P> action) {
+            this.eventId = eventId;
+            this.action = (Action<Object>) action;
             return this;
         }
 
@@ -0,0 +1,86 @@
+package com.alu.oamp.fsm;
+
+/**
+ * What became of an event submitted to a state machine.
+ *
+ * @see SimpleStateMachine#submit(EventId)
+ */
+public final class TransitionResult {
+
+    /**
+     * The outcome of a submitted event.
+     */
+    public enum Outcome {
+        /**
+         * The state machine made a transition to a target state.
+         */
+        TRANSITIONED,
+        /**
+         * The state machine submitted an internal transition, which may still be running.
+         */
+        INTERNAL,
+        /**
+         * The transition condition was false.
+         */
+        GUARDED,
+        /**
+         * No transition is defined for the event in the current state.
+         */
+        IGNORED,
+        /**
+         * The transition action threw an exception.
+         */
+        FAILED,
+        /**
+         * The event was not queued, or dropped before being dispatched.
+         */
+        REJECTED
+    }
+
+    private final Outcome outcome;
+    private final StateId state;
+
+    TransitionResult(Outcome outcome, StateId state) {
+        this.outcome = outcome;
+        this.state = state;
+    }
+
+    static TransitionResult of(FlightRecorder.Outcome outcome, StateId state) {
+        switch (outcome) {
+        case TRANSITIONED:
+        case TIMEOUT:
+            return new TransitionResult(Outcome.TRANSITIONED, state);
+        case INTERNAL:
+            return new TransitionResult(Outcome.INTERNAL, state);
+        case GUARDED:
+            return new TransitionResult(Outcome.GUARDED, state);
+        case IGNORED:
+            return new TransitionResult(Outcome.IGNORED, state);
+        default:
+            return new TransitionResult(Outcome.FAILED, state);
+        }
+    }
+
+    /**
+     * Returns the outcome of the event.
+     *
+     * @return the outcome
+     */
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+    /**
+     * Returns the state of the state machine once the event is dispatched.
+     *
+     * @return the state id or null when the event is rejected
+     */
+    public StateId getState() {
+        return state;
+    }
+
+    @Override
+    public String toString() {
+        return outcome + " " + state;
+    }
+}
@@ -0,0 +1,553 @@
+package com.alu.oamp.fsm;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A dense transition table.
+ *
+ * <p>
+ * State ids and event ids are mapped to indexes, and the transitions are stored in a
+ * flat array indexed by {@code stateIndex * eventCount + eventIndex}.
+ * </p>
+ * <p>
+ * When ids are enums (the usual case), the table is compiled: an id index is
+ * its enum ordinal, shifted by an offset when ids come from several enum classes
+ * (user events and internal events for instance). Looking up a transition is then
+ * a single array load. Otherwise, the ids are indexed through a hash map.
+ * </p>
+ * <p>
+ * Nested states inherit the transitions of their ancestors: a slot left empty by a
+ * state is filled with the transition of its nearest ancestor for the same event.
+ * The states exited and entered by each transition, from the active state up to the
+ * least common ancestor of the source and target states and down to the target atomic
+ * state, are computed once per slot into a {@link Route}. A transition between nested
+ * states costs the same lookup as a flat one.
+ * </p>
+ * <p>
+ * The table is immutable once built.
+ * </p>
+ */
+final class TransitionTable {
+
+    private final Index states;
+    private final Index events;
+    private final int eventCount;
+    private final Transition[] transitions;
+    private final Route[] routes;
+
+    private TransitionTable(Index states, Index events) {
+        this.states = states;
+        this.events = events;
+        this.eventCount = events.size();
+        this.transitions = new Transition[states.size() * eventCount];
+        this.routes = new Route[transitions.length];
+    }
+
+    /**
+     * Builds the transition table.
+     *
+     * <p>When several transitions are defined for the same state and event, the last one wins.</p>
+     *
+     * @param states      the states
+     * @param transitions the transitions
+     * @return the transition table
+     */
+    static TransitionTable compile(Collection<State> states, Collection<Transition> transitions) {
+
+        List<Object> stateIds = new ArrayList<>();
+        for (State state : states) {
+            stateIds.add(state.getId());
+        }
+        Set<Object> eventIds = new LinkedHashSet<>();
+        for (Transition transition : transitions) {
+            eventIds.add(transition.getEventId());
+        }
+        // the events of the regions are indexed too, for the shared events and coalescing
+        for (State state : states) {
+            for (Region region : state.getRegions()) {
+                TransitionTable regionTable = region.getDefinition().getTransitionTable();
+                for (int event = 0; event < regionTable.eventCount(); event++) {
+                    eventIds.add(regionTable.eventId(event));
+                }
+            }
+        }
+
+        TransitionTable table = new TransitionTable(Index.of(stateIds), Index.of(eventIds));
+        for (Transition transition : transitions) {
+            int state = table.stateIndex(transition.getFromState().getId());
+            if (state < 0) {
+                throw new IllegalArgumentException(
+                        "No state with id: " + transition.getFromState().getId());
+            }
+            int event = table.eventIndex(transition.getEventId());
+            table.transitions[state * table.eventCount + event] = transition;
+        }
+
+        Map<StateId, State> map = toMap(states);
+        checkHierarchy(map);
+        Transition[] declared = table.transitions.clone();
+        for (State state : states) {
+            int row = table.stateIndex(state.getId()) * table.eventCount;
+            for (int event = 0; event < table.eventCount; event++) {
+                // the innermost transition wins
+                for (State declaring = state; declaring != null && table.transitions[row + event] == null;
+                     declaring = map.get(declaring.getParent())) {
+                    table.transitions[row + event] =
+                            declared[table.stateIndex(declaring.getId()) * table.eventCount + event];
+                }
+                Transition transition = table.transitions[row + event];
+                if (transition != null && transition.getToState() != null) {
+                    table.routes[row + event] = Route.of(map, state, transition);
+                }
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Returns the atomic state entered when entering a state.
+     *
+     * @param states the states, by id
+     * @param state  the entered state
+     * @return the state itself or its initial atomic descendant
+     */
+    static State initialAtomic(Map<StateId, State> states, State state) {
+        State atomic = state;
+        while (atomic.getInitial() != null) {
+            atomic = states.get(atomic.getInitial());
+        }
+        return atomic;
+    }
+
+    private static Map<StateId, State> toMap(Collection<State> states) {
+        Map<StateId, State> map = new HashMap<>();
+        for (State state : states) {
+            map.put(state.getId(), state);
+        }
+        return map;
+    }
+
+    /**
+     * Checks the parents and the initial states of nested states.
+     *
+     * <p>
+     * At most one timed state can be active at a time, so that a timeout or a
+     * heartbeat is unambiguous: a timed state can't be nested in a timed state.
+     * </p>
+     */
+    private static void checkHierarchy(Map<StateId, State> states) {
+
+        Set<StateId> compounds = new LinkedHashSet<>();
+        for (State state : states.values()) {
+            int depth = 0;
+            boolean timed = false;
+            for (State ancestor = state; ancestor != null; ancestor = parentOf(states, ancestor)) {
+                if (++depth > states.size()) {
+                    throw new IllegalArgumentException("State " + state.getId() + " is its own ancestor.");
+                }
+                if (ancestor instanceof TimedState) {
+                    if (timed) {
+                        throw new IllegalArgumentException(
+                                "Timed state " + ancestor.getId() + " has a timed descendant.");
+                    }
+                    timed = true;
+                }
+            }
+            if (state.getParent() != null) {
+                compounds.add(state.getParent());
+            }
+        }
+        for (State state : states.values()) {
+            StateId initial = state.getInitial();
+            if (compounds.contains(state.getId())) {
+                if (!state.getRegions().isEmpty()) {
+                    throw new IllegalArgumentException(
+                            "State " + state.getId() + " with regions can't have child states.");
+                }
+                if (initial == null) {
+                    throw new IllegalArgumentException("Compound state " + state.getId() + " has no initial state.");
+                }
+                if (!ancestors(states, states.get(initial)).contains(state)) {
+                    throw new IllegalArgumentException(
+                            "Initial state " + initial + " is not a descendant of " + state.getId());
+                }
+            } else if (initial != null) {
+                throw new IllegalArgumentException("State " + state.getId() + " has no child state.");
+            }
+        }
+    }
+
+    private static State parentOf(Map<StateId, State> states, State state) {
+        if (state.getParent() == null) {
+            return null;
+        }
+        State parent = states.get(state.getParent());
+        if (parent == null) {
+            throw new IllegalArgumentException("No state with id: " + state.getParent());
+        }
+        return parent;
+    }
+
+    /**
+     * Returns a state and its ancestors, the state first.
+     */
+    private static List<State> ancestors(Map<StateId, State> states, State state) {
+        if (state == null) {
+            return Collections.emptyList();
+        }
+        List<State> ancestors = new ArrayList<>();
+        for (State ancestor = state; ancestor != null; ancestor = states.get(ancestor.getParent())) {
+            ancestors.add(ancestor);
+        }
+        return ancestors;
+    }
+
+    /**
+     * Returns true when both states and events are indexed by their enum ordinal.
+     *
+     * @return true when the table is compiled
+     */
+    boolean isCompiled() {
+        return states instanceof EnumIndex && events instanceof EnumIndex;
+    }
+
+    /**
+     * Returns the index of a state id.
+     *
+     * @param stateId the state id
+     * @return the state index or -1 if the state is unknown
+     */
+    int stateIndex(StateId stateId) {
+        return states.indexOf(stateId);
+    }
+
+    /**
+     * Returns the index of an event id.
+     *
+     * @param eventId the event id
+     * @return the event index or -1 if no transition is defined for the event
+     */
+    int eventIndex(EventId<?> eventId) {
+        return events.indexOf(eventId);
+    }
+
+    /**
+     * Returns the transition for a state and an event.
+     *
+     * @param state the state index
+     * @param event the event index
+     * @return the transition or null if there is none
+     */
+    Transition get(int state, int event) {
+        if (event < 0) {
+            return null;
+        }
+        return transitions[state * eventCount + event];
+    }
+
+    /**
+     * Returns the route of a transition to a target state.
+     *
+     * @param state the state index
+     * @param event the event index, must be valid
+     * @return the route or null for an internal transition or no transition
+     */
+    Route route(int state, int event) {
+        return routes[state * eventCount + event];
+    }
+
+    /**
+     * Returns the slot of a state and an event, in [0, slotCount[.
+     *
+     * @param state the state index
+     * @param event the event index, must be valid
+     * @return the slot
+     */
+    int slot(int state, int event) {
+        return state * eventCount + event;
+    }
+
+    /**
+     * Returns the state id of an index.
+     *
+     * @param index the state index
+     * @return the state id or null if the index is unknown
+     */
+    StateId stateId(int index) {
+        return (StateId) states.idOf(index);
+    }
+
+    /**
+     * Returns the event id of an index.
+     *
+     * @param index the event index
+     * @return the event id or null if the index is unknown
+     */
+    EventId<?> eventId(int index) {
+        return (EventId<?>) events.idOf(index);
+    }
+
+    /**
+     * Returns the number of state indexes.
+     *
+     * @return the number of states
+     */
+    int stateCount() {
+        return states.size();
+    }
+
+    /**
+     * Returns the number of event indexes.
+     *
+     * @return the number of events
+     */
+    int eventCount() {
+        return eventCount;
+    }
+
+    /**
+     * Returns the number of slots, one per state and event.
+     *
+     * @return the number of slots
+     */
+    int slotCount() {
+        return transitions.length;
+    }
+
+    /**
+     * Returns the transition of a slot.
+     *
+     * @param slot the slot
+     * @return the transition or null if there is none
+     */
+    Transition get(int slot) {
+        return transitions[slot];
+    }
+
+    /**
+     * Returns the transition for a state and an event.
+     *
+     * @param stateId the state id
+     * @param eventId the event id
+     * @return the transition or null if there is none
+     */
+    Transition get(StateId stateId, EventId<?> eventId) {
+        int state = stateIndex(stateId);
+        if (state < 0) {
+            return null;
+        }
+        return get(state, eventIndex(eventId));
+    }
+
+    /**
+     * The states exited and entered by a transition from an atomic state.
+     *
+     * <p>
+     * As in SCXML, the transition leaves the active states up to the least common
+     * compound ancestor of its source and target states, excluded. A transition
+     * targeting its source state, one of its descendants or one of its ancestors
+     * thus exits and enters the source state again.
+     * </p>
+     */
+    static final class Route {
+
+        private final State[] exits;
+        private final State[] entries;
+
+        private Route(State[] exits, State[] entries) {
+            this.exits = exits;
+            this.entries = entries;
+        }
+
+        static Route of(Map<StateId, State> states, State active, Transition transition) {
+
+            List<State> source = ancestors(states, states.get(transition.getFromState().getId()));
+            List<State> target = ancestors(states, states.get(transition.getToState().getId()));
+            if (target.isEmpty()) {
+                throw new IllegalArgumentException("No state with id: " + transition.getToState().getId());
+            }
+            State domain = null;
+            for (State ancestor : source.subList(1, source.size())) {
+                if (target.indexOf(ancestor) > 0) {
+                    domain = ancestor;
+                    break;
+                }
+            }
+
+            List<State> exits = new ArrayList<>();
+            for (State exited : ancestors(states, active)) {
+                if (exited == domain) {
+                    break;
+                }
+                exits.add(exited);
+            }
+            List<State> entries = new ArrayList<>();
+            for (State entered : target) {
+                if (entered == domain) {
+                    break;
+                }
+                entries.add(0, entered);
+            }
+            // then down to the initial atomic state of the target
+            State atomic = initialAtomic(states, target.get(0));
+            entries.addAll(reversedUntil(ancestors(states, atomic), target.get(0)));
+            return new Route(exits.toArray(new State[exits.size()]), entries.toArray(new State[entries.size()]));
+        }
+
+        private static List<State> reversedUntil(List<State> ancestors, State stop) {
+            List<State> reversed = new ArrayList<>();
+            for (State state : ancestors) {
+                if (state == stop) {
+                    break;
+                }
+                reversed.add(0, state);
+            }
+            return reversed;
+        }
+
+        /**
+         * Returns the states exited, the active atomic state first.
+         *
+         * @return the exited states
+         */
+        State[] getExits() {
+            return exits;
+        }
+
+        /**
+         * Returns the states entered, the target atomic state last.
+         *
+         * @return the entered states
+         */
+        State[] getEntries() {
+            return entries;
+        }
+
+        /**
+         * Returns the atomic state active after the transition.
+         *
+         * @return the target atomic state
+         */
+        State getTarget() {
+            return entries[entries.length - 1];
+        }
+    }
+
+    /**
+     * Maps ids to dense indexes.
+     */
+    private abstract static class Index {
+
+        abstract int indexOf(Object id);
+
+        abstract Object idOf(int index);
+
+        abstract int size();
+
+        static Index of(Collection<Object> ids) {
+            for (Object id : ids) {
+                if (!(id instanceof Enum)) {
+                    return new MapIndex(ids);
+                }
+            }
+            return new EnumIndex(ids);
+        }
+    }
+
+    /**
+     * Indexes enum ids by ordinal, each enum class being given its own range.
+     */
+    private static final class EnumIndex extends Index {
+
+        private final Class<?>[] classes;
+        private final int[] offsets;
+        private final int size;
+
+        EnumIndex(Collection<Object> ids) {
+            Set<Class<?>> enums = new LinkedHashSet<>();
+            for (Object id : ids) {
+                enums.add(((Enum<?>) id).getDeclaringClass());
+            }
+            classes = enums.toArray(new Class<?>[enums.size()]);
+            offsets = new int[classes.length];
+            int offset = 0;
+            for (int i = 0; i < classes.length; i++) {
+                offsets[i] = offset;
+                offset += classes[i].getEnumConstants().length;
+            }
+            size = offset;
+        }
+
+        @Override
+        int indexOf(Object id) {
+            if (!(id instanceof Enum)) {
+                return -1;
+            }
+            Enum<?> constant = (Enum<?>) id;
+            Class<?> clazz = constant.getDeclaringClass();
+            for (int i = 0; i < classes.length; i++) {
+                if (classes[i] == clazz) {
+                    return offsets[i] + constant.ordinal();
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        Object idOf(int index) {
+            for (int i = classes.length - 1; i >= 0; i--) {
+                if (index >= offsets[i]) {
+                    Object[] constants = classes[i].getEnumConstants();
+                    return index - offsets[i] < constants.length ? constants[index - offsets[i]] : null;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Indexes arbitrary ids through a hash map.
+     */
+    private static final class MapIndex extends Index {
+
+        private final Map<Object, Integer> indexes = new HashMap<>();
+        private final List<Object> ids = new ArrayList<>();
+
+        MapIndex(Collection<Object> ids) {
+            for (Object id : ids) {
+                if (!indexes.containsKey(id)) {
+                    indexes.put(id, indexes.size());
+                    this.ids.add(id);
+                }
+            }
+        }
+
+        @Override
+        Object idOf(int index) {
+            return index >= 0 && index < ids.size() ? ids.get(index) : null;
+        }
+
+        @Override
+        int indexOf(Object id) {
+            Integer index = indexes.get(id);
+            return index == null ? -1 : index;
+        }
+
+        @Override
+        int size() {
+            return indexes.size();
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.alu.oamp.fsm;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.PriorityQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A scheduler running in virtual time.
+ *
+ * <p>
+ * Time only passes when {@link #advance(long)} is invoked: the tasks due meanwhile are
+ * then run on the calling thread, in the order of their deadlines, the tasks due at the
+ * same time in the order they were scheduled. Together with inline event loops, timed
+ * scenarios run instantly and deterministically:
+ * </p>
+ * <pre>
+ * VirtualTimeScheduler scheduler = new VirtualTimeScheduler();
+ * EventLoopOptions options = EventLoopOptions.newOptions()
+ *         .inline(true)
+ *         .scheduler(scheduler)
+ *         .build();
+ * SimpleStateMachine door = new SimpleStateMachine(definition, "door", options);
+ *
+ * door.fireEvent(Cmd.OPEN);
+ * scheduler.advance(6000);
+ * // the door has timed out
+ * </pre>
+ * <p>
+ * The virtual time starts at 0. The class is thread safe, but tasks run on the thread
+ * advancing the time, and concurrent advances run one after the other.
+ * </p>
+ */
+public final class VirtualTimeScheduler implements Scheduler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VirtualTimeScheduler.class);
+
+    private final PriorityQueue<VirtualTask> tasks = new PriorityQueue<>();
+    private final Clock clock = new VirtualClock(ZoneOffset.UTC);
+    // held while the time advances
+    private final Object advancing = new Object();
+    private long now;
+    private long sequence;
+
+    @Override
+    public TimerHandle schedule(Runnable task, long delay) {
+        return schedule(task, delay, 0);
+    }
+
+    @Override
+    public TimerHandle schedulePeriodic(Runnable task, long delay, long period) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("period must be positive");
+        }
+        return schedule(task, delay, period);
+    }
+
+    private synchronized TimerHandle schedule(Runnable task, long delay, long period) {
+        VirtualTask scheduled = new VirtualTask(task, now + Math.max(0, delay), period, sequence++);
+        tasks.add(scheduled);
+        return () -> cancel(scheduled);
+    }
+
+    private synchronized void cancel(VirtualTask task) {
+        task.cancelled = true;
+        tasks.remove(task);
+    }
+
+    /**
+     * Advances the virtual time, running the tasks due meanwhile.
+     *
+     * <p>
+     * A task scheduled by a running task runs in the same call when it is due before the
+     * end of the period.
+     * </p>
+     *
+     * @param millis the time to advance, in milliseconds
+     * @return the number of tasks run
+     */
+    public int advance(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("time can't go backwards");
+        }
+        synchronized (advancing) {
+            long target;
+            synchronized (this) {
+                target = now + millis;
+            }
+            int run = 0;
+            VirtualTask task;
+            while ((task = next(target)) != null) {
+                try {
+                    task.task.run();
+                } catch (Exception ex) {
+                    LOGGER.error("Task failed with exception", ex);
+                }
+                run++;
+                reschedule(task);
+            }
+            synchronized (this) {
+                // a task may have advanced the time further
+                now = Math.max(now, target);
+            }
+            return run;
+        }
+    }
+
+    private synchronized VirtualTask next(long target) {
+        VirtualTask task = tasks.peek();
+        if (task == null || task.deadline > target) {
+            return null;
+        }
+        tasks.poll();
+        now = task.deadline;
+        return task;
+    }
+
+    private synchronized void reschedule(VirtualTask task) {
+        if (task.period > 0 && !task.cancelled) {
+            task.deadline += task.period;
+            task.sequence = sequence++;
+            tasks.add(task);
+        }
+    }
+
+    /**
+     * Returns the virtual time.
+     *
+     * @return the time elapsed since the creation of the scheduler, in milliseconds
+     */
+    public synchronized long now() {
+        return now;
+    }
+
+    /**
+     * Returns the number of scheduled tasks.
+     *
+     * @return the number of tasks
+     */
+    public synchronized int getPendingCount() {
+        return tasks.size();
+    }
+
+    /**
+     * Returns a clock reading the virtual time.
+     *
+     * @return the clock, whose epoch is the creation of the scheduler
+     */
+    public Clock getClock() {
+        return clock;
+    }
+
+    /**
+     * Returns true when a clock reads the virtual time of the scheduler.
+     *
+     * @param other the clock
+     * @return true for the clock of the scheduler, whatever its zone
+     */
+    boolean isVirtual(Clock other) {
+        return other instanceof VirtualClock && ((VirtualClock) other).getScheduler() == this;
+    }
+
+    /**
+     * A task scheduled in virtual time.
+     */
+    private static final class VirtualTask implements Comparable<VirtualTask> {
+
+        private final Runnable task;
+        private final long period;
+        private long deadline;
+        private long sequence;
+        private boolean cancelled;
+
+        VirtualTask(Runnable task, long deadline, long period, long sequence) {
+            this.task = task;
+            this.deadline = deadline;
+            this.period = period;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(VirtualTask other) {
+            int order = Long.compare(deadline, other.deadline);
+            return order != 0 ? order : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    /**
+     * A clock reading the virtual time of the scheduler.
+     */
+    private final class VirtualClock extends Clock {
+
+        private final ZoneId zone;
+
+        VirtualClock(ZoneId zone) {
+            this.zone = zone;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return zone;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return new VirtualClock(zone);
+        }
+
+        @Override
+        public long millis() {
+            return now();
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis());
+        }
+
+        VirtualTimeScheduler getScheduler() {
+            return VirtualTimeScheduler.this;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.alu.oamp.fsm;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * The JFR events, only loaded through {@link FsmEvents} when supported.
+ */
+final class JfrEvents implements FsmEvents.Events {
+
+    private static final String CATEGORY = "State Machine";
+
+    @Override
+    public Object beginTransition() {
+        TransitionEvent event = new TransitionEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void endTransition(Object jfrEvent, String machine, StateId source, EventId<?> eventId,
+                              StateId target, FlightRecorder.Outcome outcome) {
+        TransitionEvent event = (TransitionEvent) jfrEvent;
+        event.end();
+        if (event.shouldCommit()) {
+            event.machine = machine;
+            event.source = String.valueOf(source);
+            event.event = String.valueOf(eventId);
+            event.target = String.valueOf(target);
+            event.outcome = outcome.name();
+            event.commit();
+        }
+    }
+
+    @Override
+    public Object beginAction() {
+        SlowActionEvent event = new SlowActionEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void endAction(Object jfrEvent, Transition transition, boolean failed) {
+        SlowActionEvent event = (SlowActionEvent) jfrEvent;
+        event.end();
+        if (event.shouldCommit()) {
+            event.transition = transition.toString();
+            event.failed = failed;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void timerScheduled(StateId state, EventId<?> kind, long delay, long period) {
+        TimerScheduledEvent event = new TimerScheduledEvent();
+        if (event.shouldCommit()) {
+            event.state = String.valueOf(state);
+            event.kind = String.valueOf(kind);
+            event.delay = delay;
+            event.period = period;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void timerFired(StateId state, EventId<?> kind) {
+        TimerFiredEvent event = new TimerFiredEvent();
+        if (event.shouldCommit()) {
+            event.state = String.valueOf(state);
+            event.kind = String.valueOf(kind);
+            event.commit();
+        }
+    }
+
+    @Override
+    public void mailboxRejected(String loop, OverflowPolicy policy, int pending, long blocked) {
+        MailboxRejectedEvent event = new MailboxRejectedEvent();
+        if (event.shouldCommit()) {
+            event.loop = loop;
+            event.policy = policy.name();
+            event.pending = pending;
+            event.blocked = blocked;
+            event.commit();
+        }
+    }
+
+    @Name("com.alu.oamp.fsm.Transition")
+    @Label("Transition")
+    @Description("The dispatch of an event by a state machine")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class TransitionEvent extends Event {
+
+        @Label("Machine")
+        String machine;
+
+        @Label("Source State")
+        String source;
+
+        @Label("Event")
+        String event;
+
+        @Label("Target State")
+        String target;
+
+        @Label("Outcome")
+        String outcome;
+    }
+
+    @Name("com.alu.oamp.fsm.SlowAction")
+    @Label("Slow Action")
+    @Description("A transition action running longer than the threshold")
+    @Category(CATEGORY)
+    @Threshold("10 ms")
+    static final class SlowActionEvent extends Event {
+
+        @Label("Transition")
+        String transition;
+
+        @Label("Failed")
+        boolean failed;
+    }
+
+    @Name("com.alu.oamp.fsm.TimerScheduled")
+    @Label("Timer Scheduled")
+    @Description("A timeout or heartbeat timer scheduled on entering a timed state")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class TimerScheduledEvent extends Event {
+
+        @Label("State")
+        String state;
+
+        @Label("Kind")
+        String kind;
+
+        @Label("Delay")
+        @Timespan(Timespan.MILLISECONDS)
+        long delay;
+
+        @Label("Period")
+        @Timespan(Timespan.MILLISECONDS)
+        long period;
+    }
+
+    @Name("com.alu.oamp.fsm.TimerFired")
+    @Label("Timer Fired")
+    @Description("A timeout or heartbeat timer firing")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class TimerFiredEvent extends Event {
+
+        @Label("State")
+        String state;
+
+        @Label("Kind")
+        String kind;
+    }
+
+    @Name("com.alu.oamp.fsm.MailboxRejected")
+    @Label("Mailbox Rejected")
+    @Description("A message rejected by a full event loop")
+    @Category(CATEGORY)
+    static final class MailboxRejectedEvent extends Event {
+
+        @Label("Event Loop")
+        String loop;
+
+        @Label("Overflow Policy")
+        String policy;
+
+        @Label("Pending Messages")
+        int pending;
+
+        @Label("Blocked")
+        @Timespan(Timespan.NANOSECONDS)
+        long blocked;
+    }
+}
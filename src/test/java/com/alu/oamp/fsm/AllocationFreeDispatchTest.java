@@ -0,0 +1,119 @@
+package com.alu.oamp.fsm;
+
+import org.testng.Assert;
+import org.testng.SkipException;
+import org.testng.annotations.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashSet;
+import java.util.Set;
+
+import static com.alu.oamp.fsm.States.newState;
+import static com.alu.oamp.fsm.Transition.newTransition;
+
+/**
+ * Checks that firing and dispatching events allocates nothing once warmed up
+ */
+public class AllocationFreeDispatchTest {
+
+    private static final int EVENTS = 50_000;
+
+    enum Cmd implements EventId<Void> {
+        TOGGLE,
+        UNKNOWN
+    }
+
+    enum Tick implements CoalescableEventId<Void> {
+        TICK
+    }
+
+    enum Toggle implements StateId {
+        ON,
+        OFF
+    }
+
+    /**
+     * Counts the state changes and remembers the event loop thread.
+     */
+    private static final class CountingListener implements StateMachineListener {
+
+        private volatile long entered;
+        private volatile Thread loop;
+
+        @Override
+        public void onStateEntered(StateId stateId) {
+            loop = Thread.currentThread();
+            entered++;
+        }
+
+        @Override
+        public void onStateExited(StateId stateId) {
+        }
+    }
+
+    @Test
+    public void test_steady_state_dispatch_does_not_allocate() {
+
+        assertDispatchDoesNotAllocate(EventLoopOptions.defaults());
+    }
+
+    @Test
+    public void test_flight_recorder_does_not_allocate() {
+
+        assertDispatchDoesNotAllocate(EventLoopOptions.newOptions().flightRecorder(1024).build());
+    }
+
+    private static void assertDispatchDoesNotAllocate(EventLoopOptions options) {
+
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)
+                || !((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            throw new SkipException("Thread allocation counters are not supported");
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+
+        Set<State> states = new HashSet<>();
+        State off = newState(Toggle.OFF).build();
+        states.add(off);
+        states.add(newState(Toggle.ON).build());
+        Set<Transition> transitions = new HashSet<>();
+        transitions.add(newTransition(states).from(Toggle.OFF).event(Cmd.TOGGLE).to(Toggle.ON).build());
+        transitions.add(newTransition(states).from(Toggle.ON).event(Cmd.TOGGLE).to(Toggle.OFF)
+                .when(() -> true).build());
+        transitions.add(newTransition(states).from(Toggle.ON).event(Tick.TICK).to(Toggle.ON).build());
+        SimpleStateMachine machine = new SimpleStateMachine(StateMachineDefinition.newDefinition()
+                .states(states).transitions(transitions).initial(off).build(), "toggle", options);
+        CountingListener listener = new CountingListener();
+        machine.addStateMachineListener(listener);
+
+        try {
+            // warm up, then measure
+            toggle(machine, listener, EVENTS);
+            long producer = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            long loop = threads.getThreadAllocatedBytes(listener.loop.getId());
+
+            toggle(machine, listener, EVENTS);
+            producer = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - producer;
+            loop = threads.getThreadAllocatedBytes(listener.loop.getId()) - loop;
+
+            // a few bytes of noise, far less than a byte per event
+            Assert.assertTrue(producer < 4096, producer + " bytes allocated by the producer");
+            Assert.assertTrue(loop < 4096, loop + " bytes allocated by the event loop");
+        } finally {
+            machine.shutdown();
+        }
+    }
+
+    private static void toggle(SimpleStateMachine machine, CountingListener listener, int events) {
+
+        for (int i = 0; i < events; i++) {
+            long expected = listener.entered + 1;
+            machine.fireEvent(Cmd.TOGGLE);
+            machine.fireEvent(Cmd.UNKNOWN);
+            machine.fireEvent(Tick.TICK);
+            while (listener.entered < expected) {
+                Thread.yield();
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.alu.oamp.fsm;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.alu.oamp.fsm.States.newState;
+import static com.alu.oamp.fsm.Transition.newTransition;
+
+/**
+ * Test class for coalescable events
+ */
+public class CoalescableEventTest {
+
+    enum Cmd implements EventId<Void> {
+        BLOCK
+    }
+
+    enum Tick implements CoalescableEventId<String> {
+        TICK
+    }
+
+    enum Machine implements StateId {
+        IDLE
+    }
+
+    private CountDownLatch started;
+    private CountDownLatch unblocked;
+    private AtomicInteger ticks;
+
+    @BeforeMethod
+    public void setUp() {
+
+        started = new CountDownLatch(1);
+        unblocked = new CountDownLatch(1);
+        ticks = new AtomicInteger();
+    }
+
+    private SimpleStateMachine newMachine() {
+
+        Set<State> states = new HashSet<>();
+        State idle = newState(Machine.IDLE).build();
+        states.add(idle);
+
+        Set<Transition> transitions = new HashSet<>();
+        transitions.add(newTransition(states).from(Machine.IDLE).event(Cmd.BLOCK).to(Machine.IDLE)
+                .action(() -> {
+                    started.countDown();
+                    try {
+                        unblocked.await();
+                    } catch (InterruptedException ignored) {
+                    }
+                }).build());
+        transitions.add(newTransition(states).from(Machine.IDLE).event(Tick.TICK).to(Machine.IDLE)
+                .action(ticks::incrementAndGet).build());
+        return new SimpleStateMachine(states, transitions, "machine", idle);
+    }
+
+    @Test
+    public void test_pending_event_is_coalesced() throws InterruptedException {
+
+        SimpleStateMachine machine = newMachine();
+        machine.fireEvent(Cmd.BLOCK);
+        started.await();
+
+        Assert.assertEquals(machine.offerEvent(Tick.TICK), SendStatus.ACCEPTED);
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(machine.offerEvent(Tick.TICK), SendStatus.COALESCED);
+        }
+        Assert.assertEquals(machine.offerEvent(SimpleStateMachine.InternalEvent.HEARTBEAT), SendStatus.ACCEPTED);
+        Assert.assertEquals(machine.offerEvent(SimpleStateMachine.InternalEvent.HEARTBEAT), SendStatus.COALESCED);
+
+        unblocked.countDown();
+        machine.shutdown();
+        Assert.assertEquals(ticks.get(), 1);
+    }
+
+    @Test
+    public void test_processed_event_can_be_fired_again() throws InterruptedException {
+
+        SimpleStateMachine machine = newMachine();
+        unblocked.countDown();
+        for (int i = 0; i < 3; i++) {
+            machine.fireEvent(Tick.TICK);
+            long deadline = System.currentTimeMillis() + 1000;
+            while (ticks.get() <= i && System.currentTimeMillis() < deadline) {
+                TimeUnit.MILLISECONDS.sleep(5);
+            }
+        }
+        machine.shutdown();
+        Assert.assertEquals(ticks.get(), 3);
+    }
+
+    @Test
+    public void test_event_with_message_is_not_coalesced() throws InterruptedException {
+
+        SimpleStateMachine machine = newMachine();
+        machine.fireEvent(Cmd.BLOCK);
+        started.await();
+
+        Assert.assertEquals(machine.offerEvent(Tick.TICK, "first"), SendStatus.ACCEPTED);
+        Assert.assertEquals(machine.offerEvent(Tick.TICK, "second"), SendStatus.ACCEPTED);
+
+        unblocked.countDown();
+        machine.shutdown();
+        Assert.assertEquals(ticks.get(), 2);
+    }
+}
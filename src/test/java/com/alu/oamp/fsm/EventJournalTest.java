@@ -0,0 +1,369 @@
+package com.alu.oamp.fsm;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static com.alu.oamp.fsm.StateMachineDefinitionTest.Door;
+import static com.alu.oamp.fsm.States.newState;
+import static com.alu.oamp.fsm.Transition.newTransition;
+
+/**
+ * Test class for the event journal
+ */
+public class EventJournalTest {
+
+    enum Cmd implements EventId<Integer> {
+        OPEN,
+        CLOSE
+    }
+
+    enum Device implements StateId {
+        ON,
+        OFF
+    }
+
+    private Path directory;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("journal");
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> file.toFile().delete());
+        }
+        Files.delete(directory);
+    }
+
+    private static StateMachineDefinition newDefinition() {
+        return newDefinition(null);
+    }
+
+    private static StateMachineDefinition newDefinition(Runnable openAction) {
+        // the commands carry a message, journaled with the event
+        return StateMachineDefinitionTest.newDoorDefinition(Cmd.OPEN, Cmd.CLOSE, 0, openAction);
+    }
+
+    private EventJournal newJournal(int segmentSize) throws IOException {
+        EventCodec enumCodec = EventCodec.ofEnum(Cmd.class);
+        return EventJournal.newJournal(directory)
+                .codec(new EventCodec() {
+                    @Override
+                    public int encode(EventId<?> eventId) {
+                        return enumCodec.encode(eventId);
+                    }
+
+                    @Override
+                    public EventId<?> decode(int code) {
+                        return enumCodec.decode(code);
+                    }
+
+                    @Override
+                    public void writeMessage(Object message, ByteBuffer buffer) {
+                        buffer.putInt((Integer) message);
+                    }
+                })
+                .segmentSize(segmentSize)
+                .build();
+    }
+
+    private static EventLoopOptions options(EventJournal journal) {
+        return EventLoopOptions.newOptions().inline(true).journal(journal).build();
+    }
+
+    @Test
+    public void test_state_is_restored_from_the_journal() throws IOException {
+
+        StateMachineDefinition definition = newDefinition();
+        EventJournal journal = newJournal(1024 * 1024);
+        SimpleStateMachine door1 = new SimpleStateMachine(definition, "door 1", options(journal));
+        SimpleStateMachine door2 = new SimpleStateMachine(definition, "door 2", options(journal));
+        try {
+            door1.fireEvent(Cmd.OPEN, 1);
+            door2.fireEvent(Cmd.OPEN, 2);
+            door2.fireEvent(Cmd.CLOSE);
+            // ignored events are not journaled
+            door2.fireEvent(Cmd.CLOSE);
+        } finally {
+            door1.shutdown();
+            door2.shutdown();
+            journal.close();
+        }
+
+        journal = newJournal(1024 * 1024);
+        Map<String, SimpleStateMachine> doors = new HashMap<>();
+        doors.put("door 1", new SimpleStateMachine(definition, "door 1", options(journal)));
+        doors.put("door 2", new SimpleStateMachine(definition, "door 2", options(journal)));
+        try {
+            Assert.assertEquals(journal.replay(doors::get), 3);
+            Assert.assertEquals(doors.get("door 1").getState(), Door.OPENED);
+            Assert.assertEquals(doors.get("door 2").getState(), Door.CLOSED);
+        } finally {
+            doors.values().forEach(SimpleStateMachine::shutdown);
+            journal.close();
+        }
+    }
+
+    @Test
+    public void test_events_are_appended_to_new_segments() throws IOException {
+
+        StateMachineDefinition definition = newDefinition();
+        EventJournal journal = newJournal(1024);
+        SimpleStateMachine door = new SimpleStateMachine(definition, "door", options(journal));
+        try {
+            for (int i = 0; i < 100; i++) {
+                door.fireEvent(Cmd.OPEN, i);
+                door.fireEvent(Cmd.CLOSE, i);
+            }
+            door.fireEvent(Cmd.OPEN);
+        } finally {
+            door.shutdown();
+            journal.close();
+        }
+        try (Stream<Path> segments = Files.list(directory)) {
+            Assert.assertTrue(segments.count() > 1);
+        }
+
+        journal = newJournal(1024);
+        SimpleStateMachine restored = new SimpleStateMachine(definition, "door", options(journal));
+        try {
+            Assert.assertEquals(journal.replay(name -> restored), 201);
+            Assert.assertEquals(restored.getState(), Door.OPENED);
+        } finally {
+            restored.shutdown();
+            journal.close();
+        }
+    }
+
+    @Test
+    public void test_partially_written_record_is_skipped() throws IOException {
+
+        StateMachineDefinition definition = newDefinition();
+        EventJournal journal = newJournal(1024 * 1024);
+        SimpleStateMachine door1 = new SimpleStateMachine(definition, "door 1", options(journal));
+        SimpleStateMachine door2 = new SimpleStateMachine(definition, "door 2", options(journal));
+        try {
+            door1.fireEvent(Cmd.OPEN, 1);
+            door2.fireEvent(Cmd.OPEN, 2);
+        } finally {
+            door1.shutdown();
+            door2.shutdown();
+            journal.close();
+        }
+        // as left by a JVM crash while the first record is written
+        try (Stream<Path> segments = Files.list(directory);
+             FileChannel channel = FileChannel.open(segments.findFirst().get(),
+                     StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer length = ByteBuffer.allocate(4);
+            channel.read(length, 0);
+            length.putInt(0, -length.getInt(0));
+            length.rewind();
+            channel.write(length, 0);
+        }
+
+        journal = newJournal(1024 * 1024);
+        Map<String, SimpleStateMachine> doors = new HashMap<>();
+        doors.put("door 1", new SimpleStateMachine(definition, "door 1", options(journal)));
+        doors.put("door 2", new SimpleStateMachine(definition, "door 2", options(journal)));
+        try {
+            Assert.assertEquals(journal.replay(doors::get), 1);
+            Assert.assertEquals(doors.get("door 1").getState(), Door.CLOSED);
+            Assert.assertEquals(doors.get("door 2").getState(), Door.OPENED);
+        } finally {
+            doors.values().forEach(SimpleStateMachine::shutdown);
+            journal.close();
+        }
+    }
+
+    @Test
+    public void test_events_of_unknown_machines_are_skipped() throws IOException {
+
+        StateMachineDefinition definition = newDefinition();
+        EventJournal journal = newJournal(1024 * 1024);
+        SimpleStateMachine door = new SimpleStateMachine(definition, "door", options(journal));
+        try {
+            door.fireEvent(Cmd.OPEN);
+        } finally {
+            door.shutdown();
+            journal.close();
+        }
+
+        journal = newJournal(1024 * 1024);
+        try {
+            Assert.assertEquals(journal.replay(name -> null), 0);
+        } finally {
+            journal.close();
+        }
+    }
+
+    @Test
+    public void test_failed_transition_is_journaled() throws IOException {
+
+        StateMachineDefinition definition = newDefinition(() -> {
+            throw new IllegalStateException("the door is stuck");
+        });
+        EventJournal journal = newJournal(1024 * 1024);
+        SimpleStateMachine door = new SimpleStateMachine(definition, "door", options(journal));
+        try {
+            // the action fails, the state machine enters the target state all the same
+            door.fireEvent(Cmd.OPEN);
+            Assert.assertEquals(door.getState(), Door.OPENED);
+        } finally {
+            door.shutdown();
+            journal.close();
+        }
+
+        journal = newJournal(1024 * 1024);
+        SimpleStateMachine restored = new SimpleStateMachine(definition, "door", options(journal));
+        try {
+            Assert.assertEquals(journal.replay(name -> restored), 1);
+            Assert.assertEquals(restored.getState(), Door.OPENED);
+        } finally {
+            restored.shutdown();
+            journal.close();
+        }
+    }
+
+    @Test
+    public void test_threads_append_concurrently() throws Exception {
+
+        int threads = 4;
+        int steps = 1000;
+        StateMachineDefinition definition = newDefinition();
+        EventJournal journal = newJournal(4096);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                SimpleStateMachine door = new SimpleStateMachine(definition, "door " + i, options(journal));
+                futures.add(executor.submit(() -> {
+                    for (int step = 0; step < steps; step++) {
+                        door.fireEvent(step % 2 == 0 ? Cmd.OPEN : Cmd.CLOSE, step);
+                    }
+                    // ends opened
+                    door.fireEvent(Cmd.OPEN, steps);
+                    door.shutdown();
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+            journal.close();
+        }
+
+        journal = newJournal(4096);
+        Map<String, SimpleStateMachine> doors = new HashMap<>();
+        for (int i = 0; i < threads; i++) {
+            doors.put("door " + i, new SimpleStateMachine(definition, "door " + i, options(journal)));
+        }
+        try {
+            Assert.assertEquals(journal.replay(doors::get), threads * (steps + 1));
+            for (SimpleStateMachine door : doors.values()) {
+                Assert.assertEquals(door.getState(), Door.OPENED);
+            }
+        } finally {
+            doors.values().forEach(SimpleStateMachine::shutdown);
+            journal.close();
+        }
+    }
+
+    @Test
+    public void test_segments_before_a_position_are_truncated() throws IOException {
+
+        EventJournal journal = newJournal(1024);
+        SimpleStateMachine door = new SimpleStateMachine(newDefinition(), "door", options(journal));
+        try {
+            for (int i = 0; i < 100; i++) {
+                door.fireEvent(Cmd.OPEN, i);
+                door.fireEvent(Cmd.CLOSE, i);
+            }
+            long position = journal.getPosition();
+            long segments;
+            try (Stream<Path> files = Files.list(directory)) {
+                segments = files.count();
+            }
+            Assert.assertEquals(journal.truncate(position), segments - 1);
+            Assert.assertEquals(journal.truncate(position), 0);
+
+            door.fireEvent(Cmd.OPEN, 100);
+        } finally {
+            door.shutdown();
+            journal.close();
+        }
+
+        journal = newJournal(1024);
+        SimpleStateMachine restored = new SimpleStateMachine(newDefinition(), "door", options(journal));
+        try {
+            // only the events of the last segment are left
+            Assert.assertTrue(journal.replay(name -> restored) < 201);
+            Assert.assertEquals(restored.getState(), Door.OPENED);
+        } finally {
+            restored.shutdown();
+            journal.close();
+        }
+    }
+
+    @Test
+    public void test_events_handled_by_regions_are_not_journaled() throws IOException {
+
+        Set<State> states = new HashSet<>();
+        State off = newState(Device.OFF).build();
+        states.add(off);
+        states.add(newState(Device.ON).region(Region.newRegion("door", newDefinition()).build()).build());
+        Set<Transition> transitions = new HashSet<>();
+        transitions.add(newTransition(states).from(Device.OFF).event(Cmd.OPEN).to(Device.ON).build());
+        // the region has its own transition for the event
+        transitions.add(newTransition(states).from(Device.ON).event(Cmd.CLOSE).to(Device.OFF).build());
+        StateMachineDefinition definition = StateMachineDefinition.newDefinition()
+                .states(states)
+                .transitions(transitions)
+                .initial(off)
+                .build();
+
+        EventJournal journal = newJournal(1024 * 1024);
+        SimpleStateMachine device = new SimpleStateMachine(definition, "device", options(journal));
+        try {
+            device.fireEvent(Cmd.OPEN);
+            device.fireEvent(Cmd.OPEN);
+            device.fireEvent(Cmd.CLOSE);
+            Assert.assertEquals(device.getState(), Device.ON);
+        } finally {
+            device.shutdown();
+            journal.close();
+        }
+
+        journal = newJournal(1024 * 1024);
+        SimpleStateMachine restored = new SimpleStateMachine(definition, "device", options(journal));
+        try {
+            Assert.assertEquals(journal.replay(name -> restored), 1);
+            Assert.assertEquals(restored.getState(), Device.ON);
+            Assert.assertEquals(restored.getRegionState(0), Door.CLOSED);
+        } finally {
+            restored.shutdown();
+            journal.close();
+        }
+    }
+}
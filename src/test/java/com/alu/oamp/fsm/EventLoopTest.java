@@ -3,8 +3,13 @@ package com.alu.oamp.fsm;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.testng.Assert;
+import org.testng.SkipException;
 import org.testng.annotations.Test;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
 import static java.util.concurrent.TimeUnit.SECONDS;
 
 
@@ -64,6 +69,87 @@ public class EventLoopTest {
 		worker.send("Msg #1");
 	}
 	
+	@Test
+	public void test_pending_messages_are_drained_in_batches() throws InterruptedException {
+
+		CountDownLatch blocked = new CountDownLatch(1);
+		BatchEventLoop bel = new BatchEventLoop(blocked, 16);
+		for (int i = 0; i < 40; i++) {
+			bel.send("Msg #" + i);
+		}
+		blocked.countDown();
+		bel.shutdown();
+		Assert.assertTrue(bel.isShutdown());
+
+		// the first batch blocks the loop, the other messages pile up and are drained 16 at most at once
+		int total = 0;
+		for (int size : bel.batches) {
+			Assert.assertTrue(size <= 16);
+			total += size;
+		}
+		Assert.assertEquals(total, 40);
+		Assert.assertTrue(bel.batches.size() <= 4);
+	}
+
+	@Test(expectedExceptions=IllegalArgumentException.class)
+	public void test_exception_is_raised_on_invalid_batch_size() {
+
+		new BatchEventLoop(new CountDownLatch(0), 0);
+	}
+
+	@Test
+	public void test_event_loop_runs_on_a_virtual_thread() throws Exception {
+
+		if (!ThreadFactories.isVirtualSupported()) {
+			throw new SkipException("Virtual threads require Java 21 or later");
+		}
+		List<Thread> threads = new CopyOnWriteArrayList<>();
+		AbstractEventLoop<String> loop = new AbstractEventLoop<String>("virtual",
+				EventLoopOptions.newOptions().threadFactory(ThreadFactories.virtual()).build()) {
+			@Override
+			protected void onMessage(String msg) {
+				threads.add(Thread.currentThread());
+			}
+		};
+		loop.send("Msg #1");
+		loop.shutdown();
+		Assert.assertEquals(threads.size(), 1);
+		Assert.assertEquals(threads.get(0).getName(), "virtual");
+		Assert.assertEquals(Thread.class.getMethod("isVirtual").invoke(threads.get(0)), Boolean.TRUE);
+	}
+
+	@Test(expectedExceptions=IllegalArgumentException.class)
+	public void test_exception_is_raised_on_null_thread_factory() {
+
+		EventLoopOptions.newOptions().threadFactory(null).build();
+	}
+
+	public static class BatchEventLoop extends AbstractEventLoop<String> {
+
+		private final CountDownLatch blocked;
+		private final List<Integer> batches = new CopyOnWriteArrayList<>();
+
+		public BatchEventLoop(CountDownLatch blocked, int maxBatch) {
+			super(BatchEventLoop.class.getSimpleName(),
+					EventLoopOptions.newOptions().maxBatch(maxBatch).build());
+			this.blocked = blocked;
+		}
+
+		@Override
+		protected void onBatch(List<String> messages) {
+			batches.add(messages.size());
+			super.onBatch(messages);
+		}
+
+		@Override
+		protected void onMessage(String msg) {
+			try {
+				blocked.await();
+			} catch (InterruptedException ignored) {
+			}
+		}
+	}
+
 	public static class SleepingEventLoop extends AbstractEventLoop<String> {
 		
 		public SleepingEventLoop(int capacity) {
@@ -0,0 +1,98 @@
+package com.alu.oamp.fsm;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static com.alu.oamp.fsm.FlightRecorder.Outcome;
+import static com.alu.oamp.fsm.StateMachineDefinitionTest.Cmd;
+import static com.alu.oamp.fsm.StateMachineDefinitionTest.Door;
+import static com.alu.oamp.fsm.States.newState;
+import static com.alu.oamp.fsm.Transition.newTransition;
+
+/**
+ * Test class for the flight recorder
+ */
+public class FlightRecorderTest {
+
+    @Test
+    public void test_last_dispatches_are_recorded() throws InterruptedException {
+
+        BlockingQueue<StateId> queue = new LinkedBlockingQueue<>();
+        SimpleStateMachine door = new SimpleStateMachine(
+                StateMachineDefinitionTest.newDoorDefinition(100), "door",
+                EventLoopOptions.newOptions().flightRecorder(4).build());
+        door.addStateMachineListener(new SimpleStateListener(queue));
+
+        door.fireEvent(Cmd.CLOSE);
+        door.fireEvent(Cmd.OPEN);
+        Assert.assertEquals(queue.poll(200, TimeUnit.MILLISECONDS), Door.OPENED);
+        Assert.assertEquals(queue.poll(500, TimeUnit.MILLISECONDS), Door.CLOSED);
+        door.fireEvent(Cmd.CLOSE);
+        door.fireEvent(Cmd.OPEN);
+        Assert.assertEquals(queue.poll(200, TimeUnit.MILLISECONDS), Door.OPENED);
+        door.fireEvent(Cmd.CLOSE);
+        Assert.assertEquals(queue.poll(200, TimeUnit.MILLISECONDS), Door.CLOSED);
+        door.shutdown();
+
+        // the first ignored close has been overwritten
+        List<FlightRecorder.Entry> record = door.getFlightRecord();
+        Assert.assertEquals(record.size(), 4);
+        assertEntry(record.get(0), Door.OPENED, SimpleStateMachine.InternalEvent.TIMEOUT, Outcome.TIMEOUT, Door.CLOSED);
+        assertEntry(record.get(1), Door.CLOSED, Cmd.CLOSE, Outcome.IGNORED, Door.CLOSED);
+        assertEntry(record.get(2), Door.CLOSED, Cmd.OPEN, Outcome.TRANSITIONED, Door.OPENED);
+        assertEntry(record.get(3), Door.OPENED, Cmd.CLOSE, Outcome.TRANSITIONED, Door.CLOSED);
+        Assert.assertTrue(record.get(0).getTime() <= record.get(3).getTime());
+    }
+
+    @Test
+    public void test_failed_action_is_recorded() {
+
+        Set<State> states = new HashSet<>();
+        State closed = newState(Door.CLOSED).build();
+        states.add(closed);
+        states.add(newState(Door.OPENED).build());
+        Set<Transition> transitions = new HashSet<>();
+        transitions.add(newTransition(states).from(Door.CLOSED).event(Cmd.OPEN).to(Door.OPENED)
+                .action(() -> {
+                    throw new IllegalStateException("jammed");
+                }).build());
+        SimpleStateMachine door = new SimpleStateMachine(StateMachineDefinition.newDefinition()
+                .states(states).transitions(transitions).initial(closed).build(), "door",
+                EventLoopOptions.newOptions().flightRecorder(16).build());
+
+        door.fireEventSync(Cmd.OPEN);
+        door.shutdown();
+
+        List<FlightRecorder.Entry> record = door.getFlightRecord();
+        Assert.assertEquals(record.size(), 1);
+        assertEntry(record.get(0), Door.CLOSED, Cmd.OPEN, Outcome.FAILED, Door.OPENED);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void test_exception_is_raised_when_flight_recorder_is_disabled() {
+
+        SimpleStateMachine door = new SimpleStateMachine(
+                StateMachineDefinitionTest.newDoorDefinition(100), "door");
+        try {
+            door.getFlightRecord();
+        } finally {
+            door.shutdown();
+        }
+    }
+
+    private static void assertEntry(FlightRecorder.Entry entry, StateId source, EventId<?> event,
+                                    Outcome outcome, StateId target) {
+        Assert.assertEquals(entry.getSource(), source);
+        Assert.assertEquals(entry.getEvent(), event);
+        Assert.assertEquals(entry.getOutcome(), outcome);
+        Assert.assertEquals(entry.getTarget(), target);
+        Assert.assertTrue(entry.getDuration() >= 0);
+    }
+}
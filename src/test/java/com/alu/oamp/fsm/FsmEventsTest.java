@@ -0,0 +1,30 @@
+package com.alu.oamp.fsm;
+
+import org.testng.Assert;
+import org.testng.SkipException;
+import org.testng.annotations.Test;
+
+import static com.alu.oamp.fsm.StateMachineDefinitionTest.Cmd;
+import static com.alu.oamp.fsm.StateMachineDefinitionTest.Door;
+
+/**
+ * Test class for the JFR events switch
+ */
+public class FsmEventsTest {
+
+    @Test
+    public void test_no_event_is_created_when_disabled() {
+
+        if (FsmEvents.isEnabled()) {
+            throw new SkipException("JFR events are enabled");
+        }
+        Assert.assertNull(FsmEvents.beginTransition());
+        Assert.assertNull(FsmEvents.beginAction());
+        // nothing to record
+        FsmEvents.endTransition(null, "door", Door.CLOSED, Cmd.OPEN, Door.OPENED,
+                FlightRecorder.Outcome.TRANSITIONED);
+        FsmEvents.timerScheduled(Door.OPENED, SimpleStateMachine.InternalEvent.TIMEOUT, 100, 0);
+        FsmEvents.timerFired(Door.OPENED, SimpleStateMachine.InternalEvent.TIMEOUT);
+        FsmEvents.mailboxRejected("loop", OverflowPolicy.DROP_NEWEST, 8, 0);
+    }
+}
@@ -0,0 +1,215 @@
+package com.alu.oamp.fsm;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.alu.oamp.fsm.States.newState;
+import static com.alu.oamp.fsm.Transition.newTransition;
+
+/**
+ * Test class for state machines running on a shared runtime
+ */
+public class FsmRuntimeTest {
+
+    private static final int MACHINES = 1000;
+    private static final int EVENTS = 100;
+
+    enum Cmd implements EventId<Void> {
+        TOGGLE
+    }
+
+    enum Switch implements StateId {
+        ON,
+        OFF
+    }
+
+    private FsmRuntime runtime;
+
+    @BeforeMethod
+    public void setUp() {
+        runtime = new FsmRuntime(2, "Test runtime");
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        runtime.shutdown();
+        Assert.assertTrue(runtime.isShutdown());
+    }
+
+    @Test
+    public void test_many_machines_run_on_few_threads() throws InterruptedException {
+
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicBoolean overlap = new AtomicBoolean();
+        CountDownLatch done = new CountDownLatch(MACHINES * EVENTS);
+        StateMachineDefinition definition = newSwitch(() -> {
+            if (inFlight.incrementAndGet() > runtime.getWorkerCount()) {
+                overlap.set(true);
+            }
+            inFlight.decrementAndGet();
+            done.countDown();
+        });
+
+        int threads = Thread.activeCount();
+        List<SimpleStateMachine> machines = new ArrayList<>();
+        for (int i = 0; i < MACHINES; i++) {
+            machines.add(new SimpleStateMachine(definition, "switch " + i, runtime));
+        }
+        Assert.assertTrue(Thread.activeCount() - threads <= runtime.getWorkerCount());
+
+        for (int i = 0; i < EVENTS; i++) {
+            for (SimpleStateMachine machine : machines) {
+                machine.fireEvent(Cmd.TOGGLE);
+            }
+        }
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        Assert.assertFalse(overlap.get());
+        for (SimpleStateMachine machine : machines) {
+            // an even number of toggles
+            Assert.assertEquals(machine.getState(), Switch.OFF);
+            machine.shutdown();
+        }
+    }
+
+    @Test
+    public void test_events_of_a_machine_are_processed_in_order_one_at_a_time() throws InterruptedException {
+
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicBoolean overlap = new AtomicBoolean();
+        CountDownLatch done = new CountDownLatch(EVENTS);
+        StateMachineDefinition definition = newSwitch(() -> {
+            if (inFlight.incrementAndGet() > 1) {
+                overlap.set(true);
+            }
+            inFlight.decrementAndGet();
+            done.countDown();
+        });
+        SimpleStateMachine machine = new SimpleStateMachine(definition, "switch", runtime);
+
+        List<Thread> producers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Thread producer = new Thread(() -> {
+                for (int j = 0; j < EVENTS / 4; j++) {
+                    machine.fireEvent(Cmd.TOGGLE);
+                }
+            });
+            producers.add(producer);
+            producer.start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        Assert.assertFalse(overlap.get());
+        machine.shutdown();
+    }
+
+    @Test
+    public void test_machine_shutdown_does_not_stop_the_runtime() throws InterruptedException {
+
+        CountDownLatch done = new CountDownLatch(1);
+        StateMachineDefinition definition = newSwitch(done::countDown);
+        SimpleStateMachine first = new SimpleStateMachine(definition, "first", runtime);
+        SimpleStateMachine second = new SimpleStateMachine(definition, "second", runtime);
+
+        first.shutdown();
+        second.fireEvent(Cmd.TOGGLE);
+        Assert.assertTrue(done.await(1, TimeUnit.SECONDS));
+        second.shutdown();
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void test_exception_is_raised_when_runtime_is_full() {
+
+        FsmRuntime small = new FsmRuntime(1, 1, "Small runtime");
+        try {
+            StateMachineDefinition definition = newSwitch(() -> { });
+            new SimpleStateMachine(definition, "first", small);
+            new SimpleStateMachine(definition, "second", small);
+        } finally {
+            small.shutdown();
+        }
+    }
+
+    @Test
+    public void test_options_apply_to_machines_on_the_runtime() throws Exception {
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        StateMachineDefinition definition = newSwitch(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        SimpleStateMachine machine = new SimpleStateMachine(definition, "switch", runtime,
+                EventLoopOptions.newOptions()
+                        .mailbox(LinkedMailbox::new)
+                        .capacity(1)
+                        .overflowPolicy(OverflowPolicy.DROP_OLDEST)
+                        .metrics(true)
+                        .build());
+        try {
+            machine.fireEvent(Cmd.TOGGLE);
+            Assert.assertTrue(started.await(1, TimeUnit.SECONDS));
+            CompletionStage<TransitionResult> oldest = machine.submit(Cmd.TOGGLE);
+            Assert.assertEquals(machine.offerEvent(Cmd.TOGGLE), SendStatus.DROPPED_OLDEST);
+            Assert.assertEquals(oldest.toCompletableFuture().get(1, TimeUnit.SECONDS).getOutcome(),
+                    TransitionResult.Outcome.REJECTED);
+            release.countDown();
+
+            // the first and the last toggles are dispatched
+            long deadline = System.currentTimeMillis() + 1000;
+            while (machine.getMetrics().getReceivedEvents() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(machine.getMetrics().getReceivedEvents(), 2);
+            Assert.assertEquals(machine.getState(), Switch.OFF);
+            Assert.assertEquals(machine.getMetrics().getDroppedEvents(), 1);
+        } finally {
+            release.countDown();
+            machine.shutdown();
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void test_exception_is_raised_when_policy_is_not_supported() {
+
+        new SimpleStateMachine(newSwitch(() -> { }), "switch", runtime,
+                EventLoopOptions.newOptions().overflowPolicy(OverflowPolicy.CALLER_RUNS).build());
+    }
+
+    private static StateMachineDefinition newSwitch(Runnable action) {
+
+        Set<State> states = new HashSet<>();
+        states.add(newState(Switch.ON).build());
+        State off = newState(Switch.OFF).build();
+        states.add(off);
+
+        Set<Transition> transitions = new HashSet<>();
+        transitions.add(newTransition(states).from(Switch.OFF)
+                .event(Cmd.TOGGLE).to(Switch.ON).action(action).build());
+        transitions.add(newTransition(states).from(Switch.ON)
+                .event(Cmd.TOGGLE).to(Switch.OFF).action(action).build());
+
+        return StateMachineDefinition.newDefinition()
+                .states(states)
+                .transitions(transitions)
+                .initial(off)
+                .build();
+    }
+}
@@ -0,0 +1,151 @@
+package com.alu.oamp.fsm;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.alu.oamp.fsm.States.newState;
+import static com.alu.oamp.fsm.Timeout.newTimeout;
+
+/**
+ * Test class for the hashed wheel scheduler
+ */
+public class HashedWheelSchedulerTest {
+
+    private HashedWheelScheduler scheduler;
+
+    @BeforeClass
+    public void setUp() {
+        scheduler = new HashedWheelScheduler(5, TimeUnit.MILLISECONDS, 8, "Test wheel");
+    }
+
+    @AfterClass
+    public void tearDown() {
+        scheduler.stop();
+    }
+
+    @Test
+    public void test_task_fires_after_delay() throws InterruptedException {
+
+        CountDownLatch latch = new CountDownLatch(1);
+        long start = System.nanoTime();
+        scheduler.schedule(latch::countDown, 100);
+        Assert.assertTrue(latch.await(1, TimeUnit.SECONDS));
+        Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    @Test
+    public void test_task_spanning_several_rounds_fires() throws InterruptedException {
+
+        // 8 buckets of 5 ms, the task needs several turns of the wheel
+        CountDownLatch latch = new CountDownLatch(1);
+        scheduler.schedule(latch::countDown, 200);
+        Assert.assertFalse(latch.await(150, TimeUnit.MILLISECONDS));
+        Assert.assertTrue(latch.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void test_cancelled_task_does_not_fire() throws InterruptedException {
+
+        AtomicInteger count = new AtomicInteger();
+        TimerHandle handle = scheduler.schedule(count::incrementAndGet, 50);
+        handle.cancel();
+        TimeUnit.MILLISECONDS.sleep(150);
+        Assert.assertEquals(count.get(), 0);
+    }
+
+    @Test
+    public void test_periodic_task_fires_until_cancelled() throws InterruptedException {
+
+        CountDownLatch latch = new CountDownLatch(5);
+        TimerHandle handle = scheduler.schedulePeriodic(latch::countDown, 10, 10);
+        Assert.assertTrue(latch.await(1, TimeUnit.SECONDS));
+        handle.cancel();
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void test_exception_is_raised_when_scheduling_after_stop() {
+
+        HashedWheelScheduler stopped = new HashedWheelScheduler("Stopped wheel");
+        stopped.stop();
+        stopped.schedule(() -> { }, 10);
+    }
+
+    @Test
+    public void test_door_times_out_on_shared_wheel() throws InterruptedException {
+
+        BlockingQueue<StateId> queue = new LinkedBlockingQueue<>();
+        Set<State> states = new HashSet<>();
+        State opened = newState(SimpleLiftDoor.State.OPENED)
+                .timeout(newTimeout().timeout(200).target(SimpleLiftDoor.State.CLOSED).build())
+                .build();
+        ((TimedState) opened).setProvider(HashedWheelScheduler::shared);
+        states.add(opened);
+        State closed = newState(SimpleLiftDoor.State.CLOSED).build();
+        states.add(closed);
+
+        Set<Transition> transitions = new HashSet<>();
+        transitions.add(Transition.newTransition(states).from(SimpleLiftDoor.State.CLOSED)
+                .event(SimpleLiftDoor.Cmd.OPEN).to(SimpleLiftDoor.State.OPENED).build());
+
+        SimpleStateMachine fsm = new SimpleStateMachine(states, transitions, "Wheel door", closed);
+        fsm.addStateMachineListener(new SimpleStateListener(queue));
+        try {
+            for (int i = 0; i < 3; i++) {
+                fsm.fireEvent(SimpleLiftDoor.Cmd.OPEN);
+                Assert.assertEquals(queue.poll(100, TimeUnit.MILLISECONDS),
+                        SimpleLiftDoor.State.OPENED);
+                Assert.assertEquals(queue.poll(1000, TimeUnit.MILLISECONDS),
+                        SimpleLiftDoor.State.CLOSED);
+            }
+        } finally {
+            fsm.shutdown();
+        }
+    }
+
+    @Test
+    public void test_blocked_task_does_not_delay_the_other_tasks() throws InterruptedException {
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        HashedWheelScheduler wheel = new HashedWheelScheduler(5, TimeUnit.MILLISECONDS, 8, "Executor wheel",
+                executor);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch fired = new CountDownLatch(1);
+        try {
+            wheel.schedule(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }, 10);
+            wheel.schedule(fired::countDown, 50);
+            Assert.assertTrue(fired.await(1, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            wheel.stop();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void test_shared_wheel_runs_the_tasks_off_the_wheel_thread() throws InterruptedException {
+
+        BlockingQueue<String> threads = new LinkedBlockingQueue<>();
+        HashedWheelScheduler.shared().schedule(() -> threads.add(Thread.currentThread().getName()), 10);
+        String thread = threads.poll(1, TimeUnit.SECONDS);
+        Assert.assertNotNull(thread);
+        Assert.assertNotEquals(thread, "Shared timer wheel");
+    }
+}
@@ -0,0 +1,215 @@
+package com.alu.oamp.fsm;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static com.alu.oamp.fsm.States.newState;
+import static com.alu.oamp.fsm.Timeout.newTimeout;
+import static com.alu.oamp.fsm.Transition.newTransition;
+
+/**
+ * Test class for states nested in compound states
+ */
+public class HierarchicalStateTest {
+
+    enum Cmd implements EventId<Void> {
+        OPEN,
+        CLOSE,
+        RING,
+        PRESENCE
+    }
+
+    enum Door implements StateId {
+        OPEN,
+        OPENED,
+        OPENED_AND_RINGING,
+        CLOSED
+    }
+
+    /**
+     * Records the states exited and entered, in order.
+     */
+    private static final class Recorder implements StateMachineListener {
+
+        private final List<String> steps = new ArrayList<>();
+
+        @Override
+        public void onStateEntered(StateId state) {
+            steps.add("enter " + state);
+        }
+
+        @Override
+        public void onStateExited(StateId state) {
+            steps.add("exit " + state);
+        }
+
+        List<String> take() {
+            List<String> taken = new ArrayList<>(steps);
+            steps.clear();
+            return taken;
+        }
+    }
+
+    private static Set<State> newDoorStates(Timeout timeout) {
+
+        Set<State> states = new HashSet<>();
+        states.add(newState(Door.OPEN).initial(Door.OPENED).timeout(timeout).build());
+        states.add(newState(Door.OPENED).parent(Door.OPEN).build());
+        states.add(newState(Door.OPENED_AND_RINGING).parent(Door.OPEN).build());
+        states.add(newState(Door.CLOSED).build());
+        return states;
+    }
+
+    private static StateMachineDefinition newDoorDefinition(Set<State> states) {
+
+        Set<Transition> transitions = new HashSet<>();
+        transitions.add(newTransition(states).from(Door.CLOSED).event(Cmd.OPEN).to(Door.OPEN).build());
+        transitions.add(newTransition(states).from(Door.OPENED).event(Cmd.RING).to(Door.OPENED_AND_RINGING).build());
+        // shared by the child states
+        transitions.add(newTransition(states).from(Door.OPEN).event(Cmd.CLOSE).to(Door.CLOSED).build());
+        transitions.add(newTransition(states).from(Door.OPEN).event(Cmd.PRESENCE).to(Door.OPEN).build());
+        // overrides the transition of the parent
+        transitions.add(newTransition(states).from(Door.OPENED_AND_RINGING).event(Cmd.PRESENCE).build());
+
+        State initial = null;
+        for (State state : states) {
+            if (state.getId() == Door.CLOSED) {
+                initial = state;
+            }
+        }
+        return StateMachineDefinition.newDefinition()
+                .states(states)
+                .transitions(transitions)
+                .initial(initial)
+                .build();
+    }
+
+    @Test
+    public void test_states_are_exited_and_entered_up_to_the_common_ancestor() {
+
+        SimpleStateMachine door = new SimpleStateMachine(newDoorDefinition(newDoorStates(null)), "door");
+        Recorder recorder = new Recorder();
+        door.addStateMachineListener(recorder);
+
+        try {
+            // entering the compound state enters its initial state
+            door.fireEventSync(Cmd.OPEN);
+            Assert.assertEquals(door.getState(), Door.OPENED);
+            Assert.assertEquals(recorder.take(), Arrays.asList("exit CLOSED", "enter OPEN", "enter OPENED"));
+
+            // the compound state is not exited
+            door.fireEventSync(Cmd.RING);
+            Assert.assertEquals(door.getState(), Door.OPENED_AND_RINGING);
+            Assert.assertEquals(recorder.take(), Arrays.asList("exit OPENED", "enter OPENED_AND_RINGING"));
+
+            // the transition of the parent applies
+            door.fireEventSync(Cmd.CLOSE);
+            Assert.assertEquals(door.getState(), Door.CLOSED);
+            Assert.assertEquals(recorder.take(), Arrays.asList("exit OPENED_AND_RINGING", "exit OPEN", "enter CLOSED"));
+        } finally {
+            door.shutdown();
+        }
+    }
+
+    @Test
+    public void test_innermost_transition_wins() {
+
+        SimpleStateMachine door = new SimpleStateMachine(newDoorDefinition(newDoorStates(null)), "door");
+        Recorder recorder = new Recorder();
+        door.addStateMachineListener(recorder);
+
+        try {
+            // a self transition on the compound state enters its initial state again
+            door.setState(Door.OPENED);
+            door.fireEventSync(Cmd.PRESENCE);
+            Assert.assertEquals(door.getState(), Door.OPENED);
+            Assert.assertEquals(recorder.take(),
+                    Arrays.asList("exit OPENED", "exit OPEN", "enter OPEN", "enter OPENED"));
+
+            // an internal transition of the child state, the state is not exited
+            door.setState(Door.OPENED_AND_RINGING);
+            door.fireEventSync(Cmd.PRESENCE);
+            Assert.assertEquals(door.getState(), Door.OPENED_AND_RINGING);
+            Assert.assertEquals(recorder.take(), new ArrayList<String>());
+        } finally {
+            door.shutdown();
+        }
+    }
+
+    @Test
+    public void test_timer_of_the_compound_state_survives_child_transitions() throws InterruptedException {
+
+        BlockingQueue<StateId> queue = new LinkedBlockingQueue<>();
+        SimpleStateMachine door = new SimpleStateMachine(newDoorDefinition(
+                newDoorStates(newTimeout().timeout(500).target(Door.CLOSED).build())), "door");
+        door.addStateMachineListener(new SimpleStateListener(queue));
+
+        try {
+            door.fireEvent(Cmd.OPEN);
+            Assert.assertEquals(queue.poll(100, TimeUnit.MILLISECONDS), Door.OPEN);
+            Assert.assertEquals(queue.poll(100, TimeUnit.MILLISECONDS), Door.OPENED);
+
+            door.fireEvent(Cmd.RING);
+            Assert.assertEquals(queue.poll(100, TimeUnit.MILLISECONDS), Door.OPENED_AND_RINGING);
+
+            // the timeout is inherited by the child states
+            Assert.assertEquals(queue.poll(1000, TimeUnit.MILLISECONDS), Door.CLOSED);
+        } finally {
+            door.shutdown();
+        }
+    }
+
+    @Test
+    public void test_nested_transitions_are_compiled() {
+
+        StateMachineDefinition definition = newDoorDefinition(newDoorStates(null));
+        TransitionTable table = definition.getTransitionTable();
+
+        Assert.assertTrue(table.isCompiled());
+        Transition close = table.get(Door.OPEN, Cmd.CLOSE);
+        Assert.assertSame(table.get(Door.OPENED, Cmd.CLOSE), close);
+        Assert.assertSame(table.get(Door.OPENED_AND_RINGING, Cmd.CLOSE), close);
+        Assert.assertNull(table.get(Door.CLOSED, Cmd.CLOSE));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void test_exception_is_raised_when_compound_state_has_no_initial_state() {
+
+        Set<State> states = new HashSet<>();
+        State open = newState(Door.OPEN).build();
+        states.add(open);
+        states.add(newState(Door.OPENED).parent(Door.OPEN).build());
+        StateMachineDefinition.newDefinition().states(states).initial(open).build();
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void test_exception_is_raised_when_parent_is_unknown() {
+
+        Set<State> states = new HashSet<>();
+        State opened = newState(Door.OPENED).parent(Door.OPEN).build();
+        states.add(opened);
+        StateMachineDefinition.newDefinition().states(states).initial(opened).build();
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void test_exception_is_raised_when_timed_states_are_nested() {
+
+        Set<State> states = new HashSet<>();
+        State open = newState(Door.OPEN).initial(Door.OPENED)
+                .timeout(newTimeout().timeout(500).target(Door.CLOSED).build()).build();
+        states.add(open);
+        states.add(newState(Door.OPENED).parent(Door.OPEN)
+                .timeout(newTimeout().timeout(500).target(Door.CLOSED).build()).build());
+        states.add(newState(Door.CLOSED).build());
+        StateMachineDefinition.newDefinition().states(states).initial(open).build();
+    }
+}
@@ -0,0 +1,103 @@
+package com.alu.oamp.fsm;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.alu.oamp.fsm.StateMachineDefinitionTest.Cmd;
+import static com.alu.oamp.fsm.StateMachineDefinitionTest.Door;
+
+/**
+ * Test class for state machines processing their events on the threads firing them
+ */
+public class InlineEventLoopTest {
+
+    private SimpleStateMachine newDoor(Runnable onOpen) {
+
+        return new SimpleStateMachine(StateMachineDefinitionTest.newDoorDefinition(Cmd.OPEN, Cmd.CLOSE, 0, onOpen),
+                "door", EventLoopOptions.newOptions().inline(true).build());
+    }
+
+    @Test
+    public void test_event_is_processed_on_the_firing_thread() {
+
+        List<Thread> threads = new ArrayList<>();
+        SimpleStateMachine door = newDoor(() -> threads.add(Thread.currentThread()));
+
+        try {
+            Assert.assertEquals(door.offerEvent(Cmd.OPEN), SendStatus.ACCEPTED);
+            Assert.assertEquals(door.getState(), Door.OPENED);
+            Assert.assertEquals(threads, Arrays.asList(Thread.currentThread()));
+        } finally {
+            door.shutdown();
+        }
+    }
+
+    @Test
+    public void test_event_fired_by_an_action_runs_after_the_transition() {
+
+        List<String> steps = new ArrayList<>();
+        SimpleStateMachine[] door = new SimpleStateMachine[1];
+        door[0] = newDoor(() -> {
+            door[0].fireEvent(Cmd.CLOSE);
+            // the close event is not processed yet
+            steps.add("opening " + door[0].getState());
+        });
+        door[0].addStateMachineListener(new StateMachineListener() {
+            @Override
+            public void onStateEntered(StateId state) {
+                steps.add("entered " + state);
+            }
+
+            @Override
+            public void onStateExited(StateId state) {
+            }
+        });
+
+        try {
+            door[0].fireEvent(Cmd.OPEN);
+            Assert.assertEquals(steps, Arrays.asList("opening CLOSED", "entered OPENED", "entered CLOSED"));
+            Assert.assertEquals(door[0].getState(), Door.CLOSED);
+        } finally {
+            door[0].shutdown();
+        }
+    }
+
+    @Test
+    public void test_concurrent_senders_process_messages_one_at_a_time() throws InterruptedException {
+
+        int threads = 4;
+        int messages = 10_000;
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        int[] processed = new int[1];
+        InlineEventLoop<Integer> loop = new InlineEventLoop<>(message -> {
+            if (running.incrementAndGet() > 1) {
+                overlaps.incrementAndGet();
+            }
+            processed[0]++;
+            running.decrementAndGet();
+        }, EventLoopOptions.newOptions().capacity(threads * messages).build());
+
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            new Thread(() -> {
+                for (int m = 0; m < messages; m++) {
+                    loop.send(m);
+                }
+                done.countDown();
+            }).start();
+        }
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        Assert.assertEquals(overlaps.get(), 0);
+        Assert.assertEquals(loop.getPendingCount(), 0);
+        Assert.assertEquals(processed[0], threads * messages);
+    }
+}
@@ -0,0 +1,188 @@
+package com.alu.oamp.fsm;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.alu.oamp.fsm.States.newState;
+import static com.alu.oamp.fsm.Transition.newTransition;
+
+/**
+ * Test class for the internal transition executor
+ */
+public class InternalTransitionExecutorTest {
+
+    enum Cmd implements EventId<Void> {
+        TICK
+    }
+
+    enum Machine implements StateId {
+        IDLE
+    }
+
+    private static Runnable await(CountDownLatch started, CountDownLatch unblocked) {
+        return () -> {
+            started.countDown();
+            try {
+                unblocked.await();
+            } catch (InterruptedException ignored) {
+            }
+        };
+    }
+
+    private static StateMachineDefinition newDefinition(Runnable tick) {
+        Set<State> states = new HashSet<>();
+        State idle = newState(Machine.IDLE).build();
+        states.add(idle);
+        Set<Transition> transitions = new HashSet<>();
+        transitions.add(newTransition(states).from(Machine.IDLE).event(Cmd.TICK).action(tick).build());
+        return StateMachineDefinition.newDefinition()
+                .states(states).transitions(transitions).initial(idle).build();
+    }
+
+    @Test
+    public void test_transition_is_rejected_when_executor_is_full() throws InterruptedException {
+
+        InternalTransitionExecutor executor = InternalTransitionExecutor.newExecutor()
+                .threads(1).capacity(1).build();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch unblocked = new CountDownLatch(1);
+
+        Assert.assertEquals(executor.execute(await(started, unblocked)), SendStatus.ACCEPTED);
+        started.await();
+        Assert.assertEquals(executor.execute(() -> { }), SendStatus.ACCEPTED);
+        Assert.assertEquals(executor.execute(() -> { }), SendStatus.REJECTED);
+        Assert.assertEquals(executor.getRejectedCount(), 1);
+
+        unblocked.countDown();
+        executor.shutdown();
+    }
+
+    @Test
+    public void test_oldest_transition_is_cancelled() throws InterruptedException {
+
+        InternalTransitionExecutor executor = InternalTransitionExecutor.newExecutor()
+                .threads(1).capacity(1).overflowPolicy(OverflowPolicy.DROP_OLDEST).build();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch unblocked = new CountDownLatch(1);
+        FutureTask<Void> oldest = new FutureTask<>(() -> { }, null);
+
+        executor.execute(await(started, unblocked));
+        started.await();
+        executor.execute(oldest);
+        Assert.assertEquals(executor.execute(() -> { }), SendStatus.DROPPED_OLDEST);
+        Assert.assertTrue(oldest.isCancelled());
+        Assert.assertEquals(executor.getDroppedCount(), 1);
+
+        unblocked.countDown();
+        executor.shutdown();
+    }
+
+    @Test
+    public void test_transition_is_run_by_the_caller() throws InterruptedException {
+
+        InternalTransitionExecutor executor = InternalTransitionExecutor.newExecutor()
+                .threads(1).capacity(1).overflowPolicy(OverflowPolicy.CALLER_RUNS).build();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch unblocked = new CountDownLatch(1);
+        Thread[] runner = new Thread[1];
+
+        executor.execute(await(started, unblocked));
+        started.await();
+        executor.execute(() -> { });
+        Assert.assertEquals(executor.execute(() -> runner[0] = Thread.currentThread()),
+                SendStatus.PROCESSED_BY_CALLER);
+        Assert.assertSame(runner[0], Thread.currentThread());
+
+        unblocked.countDown();
+        executor.shutdown();
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void test_exception_is_raised_on_coalesce_policy() {
+
+        InternalTransitionExecutor.newExecutor().overflowPolicy(OverflowPolicy.COALESCE).build();
+    }
+
+    @Test
+    public void test_completed_transitions_are_pruned() throws InterruptedException {
+
+        AtomicInteger ticks = new AtomicInteger();
+        StateMachineDefinition definition = newDefinition(ticks::incrementAndGet);
+
+        InternalTransitionExecutor executor = InternalTransitionExecutor.newExecutor().threads(2).build();
+        SimpleStateMachine machine = new SimpleStateMachine(definition, "machine",
+                EventLoopOptions.newOptions().internalTransitions(executor).build());
+        for (int i = 0; i < 100; i++) {
+            machine.fireEvent(Cmd.TICK);
+        }
+        long deadline = System.currentTimeMillis() + 2000;
+        while ((ticks.get() < 100 || machine.getInternalTransitionCount() > 0)
+                && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        Assert.assertEquals(ticks.get(), 100);
+        Assert.assertEquals(machine.getInternalTransitionCount(), 0);
+
+        // the executor is shared, it outlives the state machine
+        machine.shutdown();
+        Assert.assertFalse(executor.isShutdown());
+        executor.shutdown();
+    }
+
+    @Test
+    public void test_state_machines_share_the_default_executor() throws InterruptedException {
+
+        CountDownLatch ticked = new CountDownLatch(2);
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        StateMachineDefinition definition = newDefinition(() -> {
+            threads.add(Thread.currentThread().getName());
+            ticked.countDown();
+        });
+
+        SimpleStateMachine machine1 = new SimpleStateMachine(definition, "machine 1",
+                EventLoopOptions.newOptions().build());
+        SimpleStateMachine machine2 = new SimpleStateMachine(definition, "machine 2",
+                EventLoopOptions.newOptions().build());
+        machine1.fireEvent(Cmd.TICK);
+        machine2.fireEvent(Cmd.TICK);
+        Assert.assertTrue(ticked.await(2, TimeUnit.SECONDS));
+        for (String thread : threads) {
+            Assert.assertTrue(thread.startsWith("Internal transitions"), thread);
+        }
+
+        // the shared executor outlives the state machines
+        machine1.shutdown();
+        machine2.shutdown();
+        InternalTransitionExecutor.shared().shutdown();
+        Assert.assertFalse(InternalTransitionExecutor.shared().isShutdown());
+    }
+
+    @Test
+    public void test_executor_of_its_own_is_created_on_first_internal_transition() throws InterruptedException {
+
+        AtomicInteger created = new AtomicInteger();
+        ThreadFactory threadFactory = task -> {
+            created.incrementAndGet();
+            return new Thread(task);
+        };
+        CountDownLatch ticked = new CountDownLatch(1);
+        SimpleStateMachine machine = new SimpleStateMachine(newDefinition(ticked::countDown), "machine",
+                EventLoopOptions.newOptions().threadFactory(threadFactory).build());
+        // the event loop thread alone
+        Assert.assertEquals(created.get(), 1);
+
+        machine.fireEvent(Cmd.TICK);
+        Assert.assertTrue(ticked.await(2, TimeUnit.SECONDS));
+        Assert.assertEquals(created.get(), 2);
+        machine.shutdown();
+    }
+}
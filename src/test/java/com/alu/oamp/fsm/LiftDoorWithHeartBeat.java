@@ -30,7 +30,7 @@ public class LiftDoorWithHeartBeat {
         fsm.fireEvent(cmd);
     }
 
-    enum Cmd implements EventId {
+    enum Cmd implements EventId<Void> {
         OPEN,
         CLOSE,
         PRESENCE,
@@ -0,0 +1,163 @@
+package com.alu.oamp.fsm;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+
+public class OverflowPolicyTest {
+
+	@Test
+	public void test_newest_message_is_rejected_by_default() throws InterruptedException {
+
+		BlockedEventLoop bel = new BlockedEventLoop(EventLoopOptions.newOptions().capacity(2));
+		bel.block();
+		Assert.assertEquals(bel.offer("Msg #1"), SendStatus.ACCEPTED);
+		Assert.assertEquals(bel.offer("Msg #2"), SendStatus.ACCEPTED);
+		Assert.assertEquals(bel.offer("Msg #3"), SendStatus.REJECTED);
+		Assert.assertEquals(bel.offer("Msg #4"), SendStatus.REJECTED);
+		Assert.assertEquals(bel.getRejectedCount(), 2);
+
+		bel.release();
+		Assert.assertEquals(bel.processed, Arrays.asList("block", "Msg #1", "Msg #2"));
+	}
+
+	@Test
+	public void test_oldest_message_is_dropped() throws InterruptedException {
+
+		BlockedEventLoop bel = new BlockedEventLoop(EventLoopOptions.newOptions()
+				.capacity(2).overflowPolicy(OverflowPolicy.DROP_OLDEST));
+		bel.block();
+		Assert.assertEquals(bel.offer("Msg #1"), SendStatus.ACCEPTED);
+		Assert.assertEquals(bel.offer("Msg #2"), SendStatus.ACCEPTED);
+		Assert.assertEquals(bel.offer("Msg #3"), SendStatus.DROPPED_OLDEST);
+		Assert.assertEquals(bel.getDroppedCount(), 1);
+
+		bel.release();
+		Assert.assertEquals(bel.processed, Arrays.asList("block", "Msg #2", "Msg #3"));
+	}
+
+	@Test
+	public void test_sender_waits_for_room_in_the_mailbox() throws InterruptedException {
+
+		BlockedEventLoop bel = new BlockedEventLoop(EventLoopOptions.newOptions()
+				.capacity(2).block(5, SECONDS));
+		bel.block();
+		bel.offer("Msg #1");
+		bel.offer("Msg #2");
+		new Thread(() -> {
+			try {
+				MILLISECONDS.sleep(100);
+			} catch (InterruptedException ignored) {
+			}
+			bel.unblocked.countDown();
+		}).start();
+		Assert.assertEquals(bel.offer("Msg #3"), SendStatus.ACCEPTED);
+
+		bel.release();
+		Assert.assertEquals(bel.processed, Arrays.asList("block", "Msg #1", "Msg #2", "Msg #3"));
+	}
+
+	@Test
+	public void test_message_is_rejected_when_sender_waits_too_long() throws InterruptedException {
+
+		BlockedEventLoop bel = new BlockedEventLoop(EventLoopOptions.newOptions()
+				.capacity(2).block(50, MILLISECONDS));
+		bel.block();
+		bel.offer("Msg #1");
+		bel.offer("Msg #2");
+		Assert.assertEquals(bel.offer("Msg #3"), SendStatus.REJECTED);
+		Assert.assertEquals(bel.getRejectedCount(), 1);
+		bel.release();
+	}
+
+	@Test
+	public void test_message_is_processed_by_the_sender() throws InterruptedException {
+
+		BlockedEventLoop bel = new BlockedEventLoop(EventLoopOptions.newOptions()
+				.capacity(2).overflowPolicy(OverflowPolicy.CALLER_RUNS));
+		bel.block();
+		bel.offer("Msg #1");
+		bel.offer("Msg #2");
+		bel.unblocked.countDown();
+		Assert.assertEquals(bel.offer("Msg #3"), SendStatus.PROCESSED_BY_CALLER);
+		Assert.assertEquals(bel.getProcessedByCallerCount(), 1);
+		Assert.assertTrue(bel.threads.get(bel.processed.indexOf("Msg #3")) == Thread.currentThread());
+
+		bel.release();
+		Assert.assertEquals(bel.processed.size(), 4);
+	}
+
+	@Test
+	public void test_equivalent_message_is_coalesced() throws InterruptedException {
+
+		BlockedEventLoop bel = new BlockedEventLoop(EventLoopOptions.newOptions()
+				.capacity(2).overflowPolicy(OverflowPolicy.COALESCE));
+		bel.block();
+		bel.offer("Msg #1");
+		bel.offer("Msg #2");
+		Assert.assertEquals(bel.offer("Msg #1"), SendStatus.COALESCED);
+		Assert.assertEquals(bel.offer("Msg #3"), SendStatus.REJECTED);
+		Assert.assertEquals(bel.getCoalescedCount(), 1);
+
+		bel.release();
+		Assert.assertEquals(bel.processed, Arrays.asList("block", "Msg #1", "Msg #2"));
+	}
+
+	@Test(expectedExceptions=IllegalArgumentException.class)
+	public void test_exception_is_raised_on_null_policy() {
+
+		EventLoopOptions.newOptions().overflowPolicy(null).build();
+	}
+
+	/**
+	 * An event loop blocking on the "block" message until it is released.
+	 */
+	public static class BlockedEventLoop extends AbstractEventLoop<String> {
+
+		private final CountDownLatch started = new CountDownLatch(1);
+		private final CountDownLatch unblocked = new CountDownLatch(1);
+		private final List<String> processed = new CopyOnWriteArrayList<>();
+		private final List<Thread> threads = new CopyOnWriteArrayList<>();
+
+		public BlockedEventLoop(EventLoopOptions.Builder options) {
+			super(BlockedEventLoop.class.getSimpleName(), options.build());
+		}
+
+		void block() throws InterruptedException {
+			send("block");
+			started.await();
+		}
+
+		void release() {
+			unblocked.countDown();
+			shutdown();
+			Assert.assertTrue(isShutdown());
+		}
+
+		@Override
+		protected Object coalesceKey(String message) {
+			return message;
+		}
+
+		@Override
+		protected void onMessage(String msg) {
+			processed.add(msg);
+			threads.add(Thread.currentThread());
+			if ("block".equals(msg)) {
+				started.countDown();
+				try {
+					unblocked.await();
+				} catch (InterruptedException ignored) {
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package com.alu.oamp.fsm;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.alu.oamp.fsm.States.newState;
+import static com.alu.oamp.fsm.Transition.newTransition;
+
+/**
+ * Test class for the priority mailbox
+ */
+public class PriorityMailboxTest {
+
+    enum Cmd implements EventId<Void> {
+        WORK,
+        STOP
+    }
+
+    enum Machine implements StateId {
+        WORKING,
+        STOPPED
+    }
+
+    private static Mailbox<String> newMailbox() {
+        return new PriorityMailbox<>(Arrays.asList(new RingBufferMailbox<String>(4), new RingBufferMailbox<String>(4)),
+                message -> message.startsWith("urgent") ? 0 : 1);
+    }
+
+    @Test
+    public void test_urgent_messages_are_polled_first() {
+
+        Mailbox<String> mailbox = newMailbox();
+        Assert.assertTrue(mailbox.offer("bulk 1"));
+        Assert.assertTrue(mailbox.offer("urgent 1"));
+        Assert.assertTrue(mailbox.offer("bulk 2"));
+        Assert.assertTrue(mailbox.offer("urgent 2"));
+        Assert.assertEquals(mailbox.size(), 4);
+
+        Assert.assertEquals(mailbox.poll(), "urgent 1");
+        Assert.assertEquals(mailbox.poll(), "urgent 2");
+        Assert.assertEquals(mailbox.poll(), "bulk 1");
+        Assert.assertEquals(mailbox.poll(), "bulk 2");
+        Assert.assertNull(mailbox.poll());
+        Assert.assertTrue(mailbox.isEmpty());
+    }
+
+    @Test
+    public void test_full_bulk_lane_does_not_reject_urgent_messages() {
+
+        Mailbox<String> mailbox = newMailbox();
+        for (int i = 0; i < 4; i++) {
+            Assert.assertTrue(mailbox.offer("bulk " + i));
+        }
+        Assert.assertFalse(mailbox.offer("bulk 4"));
+        Assert.assertTrue(mailbox.offer("urgent"));
+
+        // the oldest message of the same lane is evicted
+        Assert.assertEquals(mailbox.evict("bulk 4"), "bulk 0");
+        Assert.assertEquals(mailbox.poll(), "urgent");
+    }
+
+    @Test
+    public void test_priority_event_overtakes_pending_events() throws InterruptedException {
+
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> actions = new CopyOnWriteArrayList<>();
+
+        Set<State> states = new HashSet<>();
+        State working = newState(Machine.WORKING).build();
+        states.add(working);
+        states.add(newState(Machine.STOPPED).build());
+
+        Set<Transition> transitions = new HashSet<>();
+        transitions.add(newTransition(states).from(Machine.WORKING).event(Cmd.WORK).to(Machine.WORKING)
+                .action(() -> {
+                    actions.add("work");
+                    blocked.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                }).build());
+        transitions.add(newTransition(states).from(Machine.WORKING).event(Cmd.STOP).to(Machine.STOPPED)
+                .action(() -> actions.add("stop")).build());
+
+        SimpleStateMachine machine = new SimpleStateMachine(StateMachineDefinition.newDefinition()
+                .states(states)
+                .transitions(transitions)
+                .initial(working)
+                .build(), "worker", EventLoopOptions.newOptions()
+                .capacity(16)
+                .priority(Cmd.STOP)
+                .build());
+
+        try {
+            machine.fireEvent(Cmd.WORK);
+            Assert.assertTrue(blocked.await(1, TimeUnit.SECONDS));
+            // the bulk lane is full
+            for (int i = 0; i < 32; i++) {
+                machine.fireEvent(Cmd.WORK);
+            }
+            Assert.assertEquals(machine.offerEvent(Cmd.STOP), SendStatus.ACCEPTED);
+            release.countDown();
+
+            long deadline = System.currentTimeMillis() + 1000;
+            while (machine.getState() != Machine.STOPPED && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+        } finally {
+            release.countDown();
+            machine.shutdown();
+        }
+        Assert.assertEquals(machine.getState(), Machine.STOPPED);
+        // the pending work events are ignored once stopped
+        Assert.assertEquals(actions, Arrays.asList("work", "stop"));
+    }
+}
@@ -0,0 +1,229 @@
+package com.alu.oamp.fsm;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import static com.alu.oamp.fsm.States.newState;
+import static com.alu.oamp.fsm.Transition.newTransition;
+
+/**
+ * Test class for states with orthogonal regions
+ */
+public class RegionTest {
+
+    enum Cmd implements EventId<Void> {
+        POWER,
+        OPEN,
+        CLOSE
+    }
+
+    enum Device implements StateId {
+        ON,
+        OFF
+    }
+
+    enum Door implements StateId {
+        OPENED,
+        CLOSED
+    }
+
+    enum Alarm implements StateId {
+        SILENT,
+        RINGING
+    }
+
+    private static StateMachineDefinition newDefinition(StateId first, StateId second, Runnable action) {
+
+        return newDefinition(first, second, Cmd.OPEN, null, action);
+    }
+
+    private static StateMachineDefinition newDefinition(StateId first, StateId second, Cmd event,
+                                                        BooleanSupplier condition, Runnable action) {
+
+        Set<State> states = new HashSet<>();
+        State initial = newState(first).build();
+        states.add(initial);
+        states.add(newState(second).build());
+
+        Set<Transition> transitions = new HashSet<>();
+        transitions.add(newTransition(states).from(first).event(event).to(second)
+                .when(condition).action(action).build());
+        transitions.add(newTransition(states).from(second).event(Cmd.CLOSE).to(first).build());
+        return StateMachineDefinition.newDefinition()
+                .states(states)
+                .transitions(transitions)
+                .initial(initial)
+                .build();
+    }
+
+    private static SimpleStateMachine newDevice(Region door, Region alarm, EventLoopOptions options) {
+
+        Set<State> states = new HashSet<>();
+        State off = newState(Device.OFF).build();
+        states.add(off);
+        states.add(newState(Device.ON).region(door).region(alarm).build());
+
+        Set<Transition> transitions = new HashSet<>();
+        transitions.add(newTransition(states).from(Device.OFF).event(Cmd.POWER).to(Device.ON).build());
+        transitions.add(newTransition(states).from(Device.ON).event(Cmd.POWER).to(Device.OFF).build());
+        // the regions have their own transition for the event
+        transitions.add(newTransition(states).from(Device.ON).event(Cmd.CLOSE).to(Device.OFF).build());
+        return new SimpleStateMachine(StateMachineDefinition.newDefinition()
+                .states(states)
+                .transitions(transitions)
+                .initial(off)
+                .build(), "device", options);
+    }
+
+    @Test
+    public void test_regions_react_to_the_same_event() throws InterruptedException {
+
+        Region door = Region.newRegion("door", newDefinition(Door.CLOSED, Door.OPENED, null)).build();
+        Region alarm = Region.newRegion("alarm", newDefinition(Alarm.SILENT, Alarm.RINGING, null)).build();
+        SimpleStateMachine device = newDevice(door, alarm, EventLoopOptions.defaults());
+        BlockingQueue<StateId> queue = new LinkedBlockingQueue<>();
+        device.addStateMachineListener(new SimpleStateListener(queue));
+
+        try {
+            // entering the state enters the initial state of each region
+            device.fireEvent(Cmd.POWER);
+            Assert.assertEquals(queue.poll(100, TimeUnit.MILLISECONDS), Device.ON);
+            Assert.assertEquals(queue.poll(100, TimeUnit.MILLISECONDS), Door.CLOSED);
+            Assert.assertEquals(queue.poll(100, TimeUnit.MILLISECONDS), Alarm.SILENT);
+
+            device.fireEvent(Cmd.OPEN);
+            Assert.assertEquals(queue.poll(100, TimeUnit.MILLISECONDS), Door.OPENED);
+            Assert.assertEquals(queue.poll(100, TimeUnit.MILLISECONDS), Alarm.RINGING);
+
+            // the regions take precedence over the state
+            device.fireEvent(Cmd.CLOSE);
+            Assert.assertEquals(queue.poll(100, TimeUnit.MILLISECONDS), Door.CLOSED);
+            Assert.assertEquals(queue.poll(100, TimeUnit.MILLISECONDS), Alarm.SILENT);
+
+            // no region reacts, the transition of the state applies
+            device.fireEvent(Cmd.CLOSE);
+            Assert.assertEquals(queue.poll(100, TimeUnit.MILLISECONDS), Device.OFF);
+            Assert.assertNull(queue.poll(100, TimeUnit.MILLISECONDS));
+        } finally {
+            device.shutdown();
+        }
+    }
+
+    @Test
+    public void test_independent_regions_run_at_the_same_time() throws InterruptedException {
+
+        CountDownLatch latch = new CountDownLatch(2);
+        Runnable meet = () -> {
+            latch.countDown();
+            try {
+                if (!latch.await(1, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("regions are not run at the same time");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        Region door = Region.newRegion("door", newDefinition(Door.CLOSED, Door.OPENED, meet))
+                .independent(true).build();
+        Region alarm = Region.newRegion("alarm", newDefinition(Alarm.SILENT, Alarm.RINGING, meet))
+                .independent(true).build();
+        ForkJoinPool pool = new ForkJoinPool(2);
+        SimpleStateMachine device = newDevice(door, alarm,
+                EventLoopOptions.newOptions().regionPool(pool).flightRecorder(4).build());
+        BlockingQueue<StateId> queue = new LinkedBlockingQueue<>();
+        device.addStateMachineListener(new SimpleStateListener(queue));
+
+        try {
+            device.fireEvent(Cmd.POWER);
+            Assert.assertEquals(queue.poll(100, TimeUnit.MILLISECONDS), Device.ON);
+            Assert.assertEquals(queue.poll(100, TimeUnit.MILLISECONDS), Door.CLOSED);
+            Assert.assertEquals(queue.poll(100, TimeUnit.MILLISECONDS), Alarm.SILENT);
+
+            // each action waits for the other one
+            device.fireEvent(Cmd.OPEN);
+            Set<StateId> entered = new HashSet<>();
+            entered.add(queue.poll(2000, TimeUnit.MILLISECONDS));
+            entered.add(queue.poll(100, TimeUnit.MILLISECONDS));
+            Assert.assertEquals(entered, new HashSet<>(Arrays.asList(Door.OPENED, Alarm.RINGING)));
+            Assert.assertEquals(latch.getCount(), 0);
+
+            device.fireEvent(Cmd.POWER);
+            Assert.assertEquals(queue.poll(100, TimeUnit.MILLISECONDS), Device.OFF);
+            Assert.assertEquals(device.getFlightRecord().get(1).getOutcome(), FlightRecorder.Outcome.TRANSITIONED);
+        } finally {
+            device.shutdown();
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void test_state_transition_applies_when_region_transitions_are_guarded() {
+
+        AtomicBoolean allowed = new AtomicBoolean();
+        Region door = Region.newRegion("door",
+                newDefinition(Door.CLOSED, Door.OPENED, Cmd.POWER, allowed::get, null)).build();
+        Region alarm = Region.newRegion("alarm", newDefinition(Alarm.SILENT, Alarm.RINGING, null)).build();
+        SimpleStateMachine device = newDevice(door, alarm, EventLoopOptions.newOptions().inline(true).build());
+
+        try {
+            device.fireEvent(Cmd.POWER);
+            Assert.assertEquals(device.getState(), Device.ON);
+
+            // the region transition is enabled, it takes precedence
+            allowed.set(true);
+            device.fireEvent(Cmd.POWER);
+            Assert.assertEquals(device.getState(), Device.ON);
+            Assert.assertEquals(device.getRegionState(0), Door.OPENED);
+
+            device.fireEvent(Cmd.CLOSE);
+            Assert.assertEquals(device.getState(), Device.ON);
+            Assert.assertEquals(device.getRegionState(0), Door.CLOSED);
+
+            // the region transition is guarded, the transition of the state applies
+            allowed.set(false);
+            device.fireEvent(Cmd.POWER);
+            Assert.assertEquals(device.getState(), Device.OFF);
+        } finally {
+            device.shutdown();
+        }
+    }
+
+    @Test
+    public void test_regions_are_reset_when_the_state_is_entered_again() {
+
+        Region door = Region.newRegion("door", newDefinition(Door.CLOSED, Door.OPENED, null)).build();
+        Region alarm = Region.newRegion("alarm", newDefinition(Alarm.SILENT, Alarm.RINGING, null)).build();
+        SimpleStateMachine device = newDevice(door, alarm, EventLoopOptions.defaults());
+
+        try {
+            device.fireEventSync(Cmd.POWER);
+            device.fireEventSync(Cmd.OPEN);
+            Assert.assertEquals(device.getRegionState(0), Door.OPENED);
+            device.fireEventSync(Cmd.POWER);
+            Assert.assertEquals(device.getState(), Device.OFF);
+            device.fireEventSync(Cmd.POWER);
+            Assert.assertEquals(device.getRegionState(0), Door.CLOSED);
+            Assert.assertEquals(device.getRegionState(1), Alarm.SILENT);
+        } finally {
+            device.shutdown();
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void test_exception_is_raised_when_region_holds_a_timed_state() {
+
+        // the opened door times out
+        Region.newRegion("door", StateMachineDefinitionTest.newDoorDefinition(500)).build();
+    }
+}
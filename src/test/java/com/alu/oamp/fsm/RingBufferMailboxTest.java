@@ -0,0 +1,134 @@
+package com.alu.oamp.fsm;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Test class for the ring buffer mailbox
+ */
+public class RingBufferMailboxTest {
+
+    private static final int PRODUCERS = 8;
+    private static final int MESSAGES = 20000;
+
+    @Test
+    public void test_messages_are_polled_in_order() {
+
+        Mailbox<Integer> mailbox = new RingBufferMailbox<>(4);
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 4; i++) {
+                Assert.assertTrue(mailbox.offer(i));
+            }
+            Assert.assertEquals(mailbox.size(), 4);
+            for (int i = 0; i < 4; i++) {
+                Assert.assertEquals(mailbox.poll(), Integer.valueOf(i));
+            }
+            Assert.assertNull(mailbox.poll());
+            Assert.assertTrue(mailbox.isEmpty());
+        }
+    }
+
+    @Test
+    public void test_offer_fails_when_mailbox_is_full() {
+
+        Mailbox<String> mailbox = new RingBufferMailbox<>(3);
+        Assert.assertEquals(mailbox.capacity(), 4);
+        for (int i = 0; i < 4; i++) {
+            Assert.assertTrue(mailbox.offer("Msg #" + i));
+        }
+        Assert.assertFalse(mailbox.offer("Msg #4"));
+        Assert.assertEquals(mailbox.poll(), "Msg #0");
+        Assert.assertTrue(mailbox.offer("Msg #4"));
+    }
+
+    @Test
+    public void test_mailbox_of_one_message_fills_up() {
+
+        Mailbox<String> mailbox = new RingBufferMailbox<>(1);
+        Assert.assertEquals(mailbox.capacity(), 2);
+        Assert.assertTrue(mailbox.offer("Msg #0"));
+        Assert.assertEquals(mailbox.poll(), "Msg #0");
+        Assert.assertTrue(mailbox.offer("Msg #1"));
+        Assert.assertTrue(mailbox.offer("Msg #2"));
+        Assert.assertFalse(mailbox.offer("Msg #3"));
+        Assert.assertEquals(mailbox.poll(), "Msg #1");
+        Assert.assertEquals(mailbox.poll(), "Msg #2");
+    }
+
+    @Test
+    public void test_concurrent_producers() throws InterruptedException {
+
+        Mailbox<long[]> mailbox = new RingBufferMailbox<>(1024);
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < PRODUCERS; p++) {
+            final int producer = p;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < MESSAGES; i++) {
+                    long[] message = {producer, i};
+                    while (!mailbox.offer(message)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            producers.add(thread);
+            thread.start();
+        }
+
+        // each producer messages are received once, in order
+        int[] expected = new int[PRODUCERS];
+        int received = 0;
+        while (received < PRODUCERS * MESSAGES) {
+            long[] message = mailbox.poll();
+            if (message == null) {
+                Thread.yield();
+                continue;
+            }
+            Assert.assertEquals(message[1], expected[(int) message[0]]++);
+            received++;
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        Assert.assertTrue(mailbox.isEmpty());
+    }
+
+    @Test
+    public void test_event_loop_drains_concurrent_producers() throws InterruptedException {
+
+        CountDownLatch done = new CountDownLatch(PRODUCERS * MESSAGES);
+        AtomicBoolean outOfOrder = new AtomicBoolean();
+        int[] expected = new int[PRODUCERS];
+        AbstractEventLoop<long[]> loop = new AbstractEventLoop<long[]>("Drain test",
+                EventLoopOptions.newOptions().capacity(PRODUCERS * MESSAGES).build()) {
+            @Override
+            protected void onMessage(long[] message) {
+                if (message[1] != expected[(int) message[0]]++) {
+                    outOfOrder.set(true);
+                }
+                done.countDown();
+            }
+        };
+
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < PRODUCERS; p++) {
+            final int producer = p;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < MESSAGES; i++) {
+                    loop.send(new long[]{producer, i});
+                }
+            });
+            producers.add(thread);
+            thread.start();
+        }
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        Assert.assertFalse(outOfOrder.get());
+        loop.shutdown();
+        Assert.assertTrue(loop.isShutdown());
+    }
+}
@@ -0,0 +1,270 @@
+package com.alu.oamp.fsm;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.alu.oamp.fsm.States.newState;
+import static com.alu.oamp.fsm.Timeout.newTimeout;
+import static com.alu.oamp.fsm.Transition.newTransition;
+
+/**
+ * Test class for the sharded state machine router
+ */
+public class ShardedStateMachineRouterTest {
+
+    enum Cmd implements EventId<Step> {
+        OPEN,
+        CLOSE
+    }
+
+    enum Door implements StateId {
+        OPENED,
+        CLOSED
+    }
+
+    /**
+     * A step of a door, recorded by the transition actions.
+     */
+    static final class Step {
+
+        final String door;
+        final int sequence;
+
+        Step(String door, int sequence) {
+            this.door = door;
+            this.sequence = sequence;
+        }
+    }
+
+    private static StateMachineDefinition newDefinition(Action<Step> onStep, long timeout) {
+
+        Set<State> states = new HashSet<>();
+        State closed = newState(Door.CLOSED).build();
+        states.add(closed);
+        State opened = newState(Door.OPENED)
+                .timeout(newTimeout().timeout(timeout).target(Door.CLOSED).build())
+                .build();
+        ((TimedState) opened).setProvider(HashedWheelScheduler::shared);
+        states.add(opened);
+
+        Set<Transition> transitions = new HashSet<>();
+        transitions.add(newTransition(states).from(Door.CLOSED).to(Door.OPENED)
+                .consume(Cmd.OPEN, onStep).build());
+        transitions.add(newTransition(states).from(Door.OPENED).to(Door.CLOSED)
+                .consume(Cmd.CLOSE, onStep).build());
+        return StateMachineDefinition.newDefinition()
+                .states(states)
+                .transitions(transitions)
+                .initial(closed)
+                .build();
+    }
+
+    @Test
+    public void test_events_of_a_key_are_dispatched_in_order_on_its_shard() throws InterruptedException {
+
+        int doors = 100;
+        int steps = 200;
+        Map<String, List<Integer>> sequences = new ConcurrentHashMap<>();
+        Map<String, Set<String>> threads = new ConcurrentHashMap<>();
+        CountDownLatch done = new CountDownLatch(doors * steps);
+        ShardedStateMachineRouter<String> router = ShardedStateMachineRouter.<String>newRouter(
+                newDefinition(step -> {
+                    sequences.computeIfAbsent(step.door, door -> new ArrayList<>()).add(step.sequence);
+                    threads.computeIfAbsent(step.door, door -> ConcurrentHashMap.newKeySet())
+                            .add(Thread.currentThread().getName());
+                    done.countDown();
+                }, 60_000))
+                .name("doors")
+                .shards(4)
+                .options(EventLoopOptions.newOptions().capacity(doors * steps).build())
+                .build();
+
+        try {
+            for (int step = 0; step < steps; step++) {
+                for (int i = 0; i < doors; i++) {
+                    String door = "door " + i;
+                    router.fireEvent(door, step % 2 == 0 ? Cmd.OPEN : Cmd.CLOSE, new Step(door, step));
+                }
+            }
+            Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+
+            Assert.assertEquals(router.getMachineCount(), doors);
+            for (int i = 0; i < doors; i++) {
+                String door = "door " + i;
+                List<Integer> sequence = sequences.get(door);
+                Assert.assertEquals(sequence.size(), steps);
+                for (int step = 0; step < steps; step++) {
+                    Assert.assertEquals(sequence.get(step).intValue(), step);
+                }
+                Assert.assertEquals(threads.get(door).size(), 1);
+                Assert.assertEquals(threads.get(door).iterator().next(), "doors-" + router.shardOf(door));
+                Assert.assertEquals(router.getMachine(door).getState(), Door.CLOSED);
+            }
+        } finally {
+            router.shutdown();
+        }
+    }
+
+    @Test
+    public void test_timeout_is_dispatched_on_the_shard() throws InterruptedException {
+
+        ShardedStateMachineRouter<Integer> router = ShardedStateMachineRouter.<Integer>newRouter(
+                newDefinition(step -> { }, 100))
+                .shards(2)
+                .build();
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        CountDownLatch closed = new CountDownLatch(1);
+        router.getMachine(7).addStateMachineListener(new StateMachineListener() {
+            @Override
+            public void onStateEntered(StateId state) {
+                threads.add(Thread.currentThread().getName());
+                if (state == Door.CLOSED) {
+                    closed.countDown();
+                }
+            }
+
+            @Override
+            public void onStateExited(StateId state) {
+            }
+        });
+
+        try {
+            router.fireEvent(7, Cmd.OPEN, new Step("door 7", 0));
+            Assert.assertTrue(closed.await(2, TimeUnit.SECONDS));
+            Assert.assertEquals(threads.size(), 1);
+            Assert.assertEquals(threads.iterator().next(), "Router-" + router.shardOf(7));
+        } finally {
+            router.shutdown();
+        }
+    }
+
+    private static void awaitState(SimpleStateMachine machine, StateId state) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (machine.getState() != state && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(machine.getState(), state);
+    }
+
+    @Test
+    public void test_queued_events_are_processed_on_shutdown() {
+
+        AtomicInteger steps = new AtomicInteger();
+        ShardedStateMachineRouter<Integer> router = ShardedStateMachineRouter.<Integer>newRouter(
+                newDefinition(step -> steps.incrementAndGet(), 60_000))
+                .shards(2)
+                .options(EventLoopOptions.newOptions().capacity(10_000).build())
+                .build();
+
+        for (int i = 0; i < 10_000; i++) {
+            router.fireEvent(i % 10, i % 20 < 10 ? Cmd.OPEN : Cmd.CLOSE, new Step("door", i));
+        }
+        router.shutdown();
+        Assert.assertEquals(steps.get(), 10_000);
+        Assert.assertEquals(router.offerEvent(0, Cmd.OPEN, new Step("door", 0)), SendStatus.REJECTED);
+    }
+
+    @Test
+    public void test_state_machines_take_the_router_options() throws InterruptedException {
+
+        VirtualTimeScheduler scheduler = new VirtualTimeScheduler();
+        ShardedStateMachineRouter<Integer> router = ShardedStateMachineRouter.<Integer>newRouter(
+                newDefinition(step -> { }, 100))
+                .shards(2)
+                .options(EventLoopOptions.newOptions().scheduler(scheduler).metrics(true).build())
+                .build();
+
+        try {
+            SimpleStateMachine door = router.getMachine(7);
+            router.fireEvent(7, Cmd.OPEN, new Step("door 7", 0));
+            awaitState(door, Door.OPENED);
+
+            // the timeout is armed on the virtual scheduler
+            Assert.assertEquals(scheduler.advance(100), 1);
+            awaitState(door, Door.CLOSED);
+            Assert.assertNotNull(door.getMetrics());
+        } finally {
+            router.shutdown();
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void test_exception_is_raised_when_options_are_inline() {
+
+        ShardedStateMachineRouter.<Integer>newRouter(newDefinition(step -> { }, 100))
+                .options(EventLoopOptions.newOptions().inline(true).build())
+                .build();
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void test_exception_is_raised_when_policy_is_coalesce() {
+
+        ShardedStateMachineRouter.<Integer>newRouter(newDefinition(step -> { }, 100))
+                .options(EventLoopOptions.newOptions().overflowPolicy(OverflowPolicy.COALESCE).build())
+                .build();
+    }
+
+    @Test
+    public void test_event_racing_the_removal_of_its_key_is_routed_to_the_new_state_machine()
+            throws InterruptedException {
+
+        ShardedStateMachineRouter<Integer> router = ShardedStateMachineRouter.<Integer>newRouter(
+                newDefinition(step -> { }, 60_000))
+                .shards(1)
+                .options(EventLoopOptions.newOptions().capacity(100_000).build())
+                .build();
+        AtomicInteger rejected = new AtomicInteger();
+        Thread sender = new Thread(() -> {
+            for (int i = 0; i < 10_000; i++) {
+                if (router.offerEvent(7, Cmd.OPEN, new Step("door 7", i)) == SendStatus.REJECTED) {
+                    rejected.incrementAndGet();
+                }
+            }
+        });
+        try {
+            sender.start();
+            while (sender.isAlive()) {
+                router.remove(7);
+            }
+            Assert.assertEquals(rejected.get(), 0);
+        } finally {
+            sender.join();
+            router.shutdown();
+        }
+    }
+
+    @Test
+    public void test_removed_key_gets_a_new_state_machine() throws InterruptedException {
+
+        ShardedStateMachineRouter<Integer> router = ShardedStateMachineRouter.<Integer>newRouter(
+                newDefinition(step -> { }, 60_000))
+                .shards(2)
+                .build();
+
+        try {
+            SimpleStateMachine door = router.getMachine(7);
+            router.fireEvent(7, Cmd.OPEN, new Step("door 7", 0));
+            awaitState(door, Door.OPENED);
+
+            Assert.assertSame(router.remove(7), door);
+            Assert.assertNull(router.remove(7));
+            Assert.assertEquals(router.getMachineCount(), 0);
+            Assert.assertEquals(door.offerEvent(Cmd.CLOSE, new Step("door 7", 1)), SendStatus.REJECTED);
+
+            Assert.assertNotSame(router.getMachine(7), door);
+            Assert.assertEquals(router.getMachine(7).getState(), Door.CLOSED);
+        } finally {
+            router.shutdown();
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.alu.oamp.fsm;
 
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.CompletionStage;
 
 import static com.alu.oamp.fsm.States.newState;
 import static com.alu.oamp.fsm.Transition.newTransition;
@@ -21,7 +22,7 @@ public class SimpleLiftDoor {
 
     private SimpleStateMachine fsm;
 
-    enum Cmd implements EventId {
+    enum Cmd implements EventId<Void> {
         OPEN,
         CLOSE
     }
@@ -36,6 +37,10 @@ public class SimpleLiftDoor {
         fsm.fireEvent(cmd);
     }
 
+    public CompletionStage<TransitionResult> submit(Cmd cmd) {
+        return fsm.submit(cmd);
+    }
+
     static SimpleLiftDoor newLiftDoor(SimpleStateListener listener) {
         SimpleLiftDoor liftDoor = new SimpleLiftDoor();
         liftDoor.init(listener);
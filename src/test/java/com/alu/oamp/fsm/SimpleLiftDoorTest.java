@@ -4,9 +4,20 @@ import org.testng.Assert;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.Test;
 
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.alu.oamp.fsm.StateMachineDefinitionTest.Cmd;
+import static com.alu.oamp.fsm.StateMachineDefinitionTest.Door;
+import static com.alu.oamp.fsm.States.newState;
+import static com.alu.oamp.fsm.Transition.newTransition;
 
 /**
  * Test class for a simple lift door
@@ -19,7 +30,9 @@ public class SimpleLiftDoorTest {
 
     @AfterMethod
     public void tearDown() {
-        liftDoor.shutdown();
+        if (liftDoor != null) {
+            liftDoor.shutdown();
+        }
     }
 
     @Test
@@ -44,4 +57,121 @@ public class SimpleLiftDoorTest {
         Assert.assertEquals(queue.poll(1000, TimeUnit.MILLISECONDS),
                 SimpleLiftDoor.State.CLOSED);
     }
+
+    @Test
+    public void test_submitted_events_complete_with_the_resulting_state()
+            throws InterruptedException, ExecutionException, TimeoutException {
+
+        liftDoor = SimpleLiftDoor.newLiftDoor(new SimpleStateListener(queue));
+
+        TransitionResult result = liftDoor.submit(SimpleLiftDoor.Cmd.OPEN)
+                .toCompletableFuture().get(1, TimeUnit.SECONDS);
+        Assert.assertEquals(result.getOutcome(), TransitionResult.Outcome.TRANSITIONED);
+        Assert.assertEquals(result.getState(), SimpleLiftDoor.State.OPENED);
+
+        result = liftDoor.submit(SimpleLiftDoor.Cmd.OPEN).toCompletableFuture().get(1, TimeUnit.SECONDS);
+        Assert.assertEquals(result.getOutcome(), TransitionResult.Outcome.IGNORED);
+        Assert.assertEquals(result.getState(), SimpleLiftDoor.State.OPENED);
+
+        result = liftDoor.submit(SimpleLiftDoor.Cmd.CLOSE).toCompletableFuture().get(1, TimeUnit.SECONDS);
+        Assert.assertEquals(result.getOutcome(), TransitionResult.Outcome.TRANSITIONED);
+        Assert.assertEquals(result.getState(), SimpleLiftDoor.State.CLOSED);
+    }
+
+    @Test
+    public void test_submitted_event_is_rejected_after_shutdown()
+            throws InterruptedException, ExecutionException, TimeoutException {
+
+        liftDoor = SimpleLiftDoor.newLiftDoor(new SimpleStateListener(queue));
+        liftDoor.shutdown();
+
+        TransitionResult result = liftDoor.submit(SimpleLiftDoor.Cmd.OPEN)
+                .toCompletableFuture().get(1, TimeUnit.SECONDS);
+        Assert.assertEquals(result.getOutcome(), TransitionResult.Outcome.REJECTED);
+        Assert.assertNull(result.getState());
+    }
+
+    @Test
+    public void test_submitted_event_completes_exceptionally_when_the_guard_throws()
+            throws InterruptedException, TimeoutException {
+
+        Set<State> states = new HashSet<>();
+        State closed = newState(Door.CLOSED).build();
+        states.add(closed);
+        states.add(newState(Door.OPENED).build());
+        Set<Transition> transitions = new HashSet<>();
+        transitions.add(newTransition(states).from(Door.CLOSED).event(Cmd.OPEN).to(Door.OPENED)
+                .when(() -> {
+                    throw new IllegalStateException("guard failed");
+                }).build());
+        SimpleStateMachine door = new SimpleStateMachine(StateMachineDefinition.newDefinition()
+                .states(states).transitions(transitions).initial(closed).build(), "door");
+        try {
+            assertFailed(door.submit(Cmd.OPEN).toCompletableFuture(), "guard failed");
+        } finally {
+            door.shutdown();
+        }
+    }
+
+    @Test
+    public void test_submitted_event_completes_exceptionally_when_a_listener_throws()
+            throws InterruptedException, TimeoutException {
+
+        SimpleStateMachine door = new SimpleStateMachine(StateMachineDefinitionTest.newDoorDefinition(10000), "door");
+        door.addStateMachineListener(new StateMachineListener() {
+            @Override
+            public void onStateEntered(StateId state) {
+                throw new IllegalStateException("listener failed");
+            }
+
+            @Override
+            public void onStateExited(StateId state) {
+            }
+        });
+        try {
+            assertFailed(door.submit(Cmd.OPEN).toCompletableFuture(), "listener failed");
+        } finally {
+            door.shutdown();
+        }
+    }
+
+    @Test
+    public void test_pending_events_are_rejected_when_the_event_loop_is_stopped()
+            throws InterruptedException, ExecutionException, TimeoutException {
+
+        CountDownLatch opened = new CountDownLatch(1);
+        SimpleStateMachine door = new SimpleStateMachine(StateMachineDefinitionTest.newDoorDefinition(10000), "door",
+                EventLoopOptions.newOptions().shutdownDelay(1).build());
+        door.addStateMachineListener(new StateMachineListener() {
+            @Override
+            public void onStateEntered(StateId state) {
+                opened.countDown();
+                // until interrupted beyond the shutdown delay
+                try {
+                    new CountDownLatch(1).await();
+                } catch (InterruptedException ignored) {
+                }
+            }
+
+            @Override
+            public void onStateExited(StateId state) {
+            }
+        });
+        door.fireEvent(Cmd.OPEN);
+        Assert.assertTrue(opened.await(1, TimeUnit.SECONDS));
+        CompletableFuture<TransitionResult> pending = door.submit(Cmd.CLOSE).toCompletableFuture();
+        door.shutdown();
+
+        Assert.assertEquals(pending.get(1, TimeUnit.SECONDS).getOutcome(), TransitionResult.Outcome.REJECTED);
+    }
+
+    private static void assertFailed(CompletableFuture<TransitionResult> result, String message)
+            throws InterruptedException, TimeoutException {
+        try {
+            result.get(1, TimeUnit.SECONDS);
+            Assert.fail("the dispatch should have failed");
+        } catch (ExecutionException ex) {
+            Assert.assertEquals(ex.getCause().getMessage(), message);
+        }
+    }
 }
@@ -0,0 +1,104 @@
+package com.alu.oamp.fsm;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static com.alu.oamp.fsm.States.newState;
+import static com.alu.oamp.fsm.Timeout.newTimeout;
+import static com.alu.oamp.fsm.Transition.newTransition;
+
+/**
+ * Test class for state machines sharing a definition
+ */
+public class StateMachineDefinitionTest {
+
+    enum Cmd implements EventId<Void> {
+        OPEN,
+        CLOSE
+    }
+
+    enum Door implements StateId {
+        OPENED,
+        CLOSED
+    }
+
+    static StateMachineDefinition newDoorDefinition(long timeout) {
+
+        return newDoorDefinition(Cmd.OPEN, Cmd.CLOSE, timeout, null);
+    }
+
+    // a timeout of 0 for a door staying opened, the events may carry a message
+    static StateMachineDefinition newDoorDefinition(EventId<?> open, EventId<?> close, long timeout,
+                                                    Runnable onOpen) {
+
+        Set<State> states = new HashSet<>();
+        states.add(timeout == 0 ? newState(Door.OPENED).build() : newState(Door.OPENED)
+                .timeout(newTimeout().timeout(timeout).target(Door.CLOSED).build())
+                .build());
+        State closed = newState(Door.CLOSED).build();
+        states.add(closed);
+
+        Set<Transition> transitions = new HashSet<>();
+        transitions.add(newTransition(states).from(Door.CLOSED).event(open).to(Door.OPENED).action(onOpen).build());
+        transitions.add(newTransition(states).from(Door.OPENED).event(close).to(Door.CLOSED).build());
+
+        return StateMachineDefinition.newDefinition()
+                .states(states)
+                .transitions(transitions)
+                .initial(closed)
+                .build();
+    }
+
+    @Test
+    public void test_machines_sharing_a_definition_have_their_own_timers() throws InterruptedException {
+
+        StateMachineDefinition definition = newDoorDefinition(300);
+        BlockingQueue<StateId> queue1 = new LinkedBlockingQueue<>();
+        BlockingQueue<StateId> queue2 = new LinkedBlockingQueue<>();
+        SimpleStateMachine door1 = new SimpleStateMachine(definition, "door 1");
+        SimpleStateMachine door2 = new SimpleStateMachine(definition, "door 2");
+        door1.addStateMachineListener(new SimpleStateListener(queue1));
+        door2.addStateMachineListener(new SimpleStateListener(queue2));
+
+        try {
+            door1.fireEvent(Cmd.OPEN);
+            door2.fireEvent(Cmd.OPEN);
+            Assert.assertEquals(queue1.poll(100, TimeUnit.MILLISECONDS), Door.OPENED);
+            Assert.assertEquals(queue2.poll(100, TimeUnit.MILLISECONDS), Door.OPENED);
+
+            // closing the first door must not cancel the timer of the second one
+            door1.fireEvent(Cmd.CLOSE);
+            Assert.assertEquals(queue1.poll(100, TimeUnit.MILLISECONDS), Door.CLOSED);
+            Assert.assertEquals(queue2.poll(1000, TimeUnit.MILLISECONDS), Door.CLOSED);
+            Assert.assertNull(queue1.poll(500, TimeUnit.MILLISECONDS));
+        } finally {
+            door1.shutdown();
+            door2.shutdown();
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void test_exception_is_raised_when_initial_state_is_missing() {
+
+        Set<State> states = new HashSet<>();
+        states.add(newState(Door.OPENED).build());
+        StateMachineDefinition.newDefinition().states(states).build();
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void test_exception_is_raised_when_initial_state_is_unknown() {
+
+        Set<State> states = new HashSet<>();
+        states.add(newState(Door.OPENED).build());
+        StateMachineDefinition.newDefinition()
+                .states(states)
+                .initial(newState(Door.CLOSED).build())
+                .build();
+    }
+}
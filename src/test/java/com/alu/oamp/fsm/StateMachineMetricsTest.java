@@ -0,0 +1,179 @@
+package com.alu.oamp.fsm;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static com.alu.oamp.fsm.StateMachineDefinitionTest.Cmd;
+import static com.alu.oamp.fsm.StateMachineDefinitionTest.Door;
+import static com.alu.oamp.fsm.States.newState;
+import static com.alu.oamp.fsm.Transition.newTransition;
+
+/**
+ * Test class for the state machine metrics
+ */
+public class StateMachineMetricsTest {
+
+    enum Gate implements StateId {
+        // not a state of the gate definition
+        LOCKED,
+        OPENED,
+        CLOSED
+    }
+
+    @Test
+    public void test_histogram_buckets() {
+
+        Histogram histogram = new Histogram();
+        histogram.record(0);
+        histogram.record(1);
+        histogram.record(1000);
+        histogram.record(-5);
+        for (int i = 0; i < 96; i++) {
+            histogram.record(3);
+        }
+
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        Assert.assertEquals(snapshot.getCount(), 100);
+        Assert.assertEquals(snapshot.getMax(), 1000);
+        Assert.assertEquals(snapshot.getSum(), 1 + 1000 + 96 * 3);
+        Assert.assertEquals(snapshot.getCounts()[0], 2);
+        Assert.assertEquals(snapshot.getCounts()[1], 1);
+        Assert.assertEquals(snapshot.getCounts()[2], 96);
+        Assert.assertEquals(snapshot.getCounts()[10], 1);
+        Assert.assertEquals(snapshot.getPercentile(50), 3);
+        Assert.assertEquals(snapshot.getPercentile(100), 1000);
+    }
+
+    @Test
+    public void test_state_machine_metrics() throws InterruptedException {
+
+        BlockingQueue<StateId> queue = new LinkedBlockingQueue<>();
+        SimpleStateMachine door = new SimpleStateMachine(
+                StateMachineDefinitionTest.newDoorDefinition(100), "door",
+                EventLoopOptions.newOptions().metrics(true).build());
+        door.addStateMachineListener(new SimpleStateListener(queue));
+
+        door.fireEvent(Cmd.OPEN);
+        Assert.assertEquals(queue.poll(200, TimeUnit.MILLISECONDS), Door.OPENED);
+        // times out
+        Assert.assertEquals(queue.poll(500, TimeUnit.MILLISECONDS), Door.CLOSED);
+        door.fireEvent(Cmd.CLOSE);
+        door.fireEvent(Cmd.OPEN);
+        Assert.assertEquals(queue.poll(200, TimeUnit.MILLISECONDS), Door.OPENED);
+        door.fireEvent(Cmd.CLOSE);
+        Assert.assertEquals(queue.poll(200, TimeUnit.MILLISECONDS), Door.CLOSED);
+
+        // the listener is notified before the transition completes
+        door.shutdown();
+        StateMachineMetrics.Snapshot metrics = door.getMetrics();
+
+        Assert.assertEquals(metrics.getReceivedEvents(), 5);
+        Assert.assertEquals(metrics.getIgnoredEvents(), 1);
+        Assert.assertEquals(metrics.getTimeouts(), 1);
+        Assert.assertEquals(metrics.getRejectedEvents(), 0);
+        Assert.assertEquals(metrics.getPendingEvents(), 0);
+        Assert.assertTrue(metrics.getPendingHighWaterMark() >= 1);
+        Assert.assertEquals(metrics.getQueueLatency().getCount(), 5);
+
+        Assert.assertEquals(metrics.getTransitionTimes().get("CLOSED OPEN").getCount(), 2);
+        Assert.assertEquals(metrics.getTransitionTimes().get("OPENED CLOSE").getCount(), 1);
+        Assert.assertEquals(metrics.getTransitionTimes().get("OPENED TIMEOUT").getCount(), 1);
+
+        // the first time, the door stays open until it times out
+        Histogram.Snapshot opened = metrics.getDwellTimes().get(Door.OPENED);
+        Assert.assertEquals(opened.getCount(), 2);
+        Assert.assertTrue(opened.getMax() >= TimeUnit.MILLISECONDS.toNanos(100));
+        Assert.assertEquals(metrics.getDwellTimes().get(Door.CLOSED).getCount(), 2);
+    }
+
+    @Test
+    public void test_events_dropped_by_the_drop_oldest_policy_are_counted() throws InterruptedException {
+
+        CountDownLatch opened = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        SimpleStateMachine door = new SimpleStateMachine(
+                StateMachineDefinitionTest.newDoorDefinition(10000), "door",
+                EventLoopOptions.newOptions()
+                        .mailbox(LinkedMailbox::new)
+                        .capacity(1)
+                        .overflowPolicy(OverflowPolicy.DROP_OLDEST)
+                        .metrics(true)
+                        .build());
+        door.addStateMachineListener(new StateMachineListener() {
+            @Override
+            public void onStateEntered(StateId state) {
+                opened.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ignored) {
+                }
+            }
+
+            @Override
+            public void onStateExited(StateId state) {
+            }
+        });
+        try {
+            door.fireEvent(Cmd.OPEN);
+            Assert.assertTrue(opened.await(1, TimeUnit.SECONDS));
+            door.fireEvent(Cmd.CLOSE);
+            Assert.assertEquals(door.offerEvent(Cmd.CLOSE), SendStatus.DROPPED_OLDEST);
+
+            StateMachineMetrics.Snapshot metrics = door.getMetrics();
+            Assert.assertEquals(metrics.getDroppedEvents(), 1);
+            Assert.assertEquals(metrics.getRejectedEvents(), 0);
+        } finally {
+            release.countDown();
+            door.shutdown();
+        }
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void test_exception_is_raised_when_metrics_are_disabled() {
+
+        SimpleStateMachine door = new SimpleStateMachine(
+                StateMachineDefinitionTest.newDoorDefinition(100), "door");
+        try {
+            door.getMetrics();
+        } finally {
+            door.shutdown();
+        }
+    }
+
+    @Test
+    public void test_dwell_times_of_a_definition_not_using_all_the_state_constants() {
+
+        Set<State> states = new HashSet<>();
+        State closed = newState(Gate.CLOSED).build();
+        states.add(closed);
+        states.add(newState(Gate.OPENED).build());
+        Set<Transition> transitions = new HashSet<>();
+        transitions.add(newTransition(states).from(Gate.CLOSED).event(Cmd.OPEN).to(Gate.OPENED).build());
+        transitions.add(newTransition(states).from(Gate.OPENED).event(Cmd.CLOSE).to(Gate.CLOSED).build());
+
+        SimpleStateMachine gate = new SimpleStateMachine(StateMachineDefinition.newDefinition()
+                .states(states)
+                .transitions(transitions)
+                .initial(closed)
+                .build(), "gate", EventLoopOptions.newOptions().inline(true).metrics(true).build());
+        try {
+            gate.fireEvent(Cmd.OPEN);
+            gate.fireEvent(Cmd.CLOSE);
+            gate.fireEvent(Cmd.OPEN);
+
+            StateMachineMetrics.Snapshot metrics = gate.getMetrics();
+            Assert.assertEquals(metrics.getDwellTimes().get(Gate.CLOSED).getCount(), 2);
+            Assert.assertEquals(metrics.getDwellTimes().get(Gate.OPENED).getCount(), 1);
+            Assert.assertFalse(metrics.getDwellTimes().containsKey(Gate.LOCKED));
+        } finally {
+            gate.shutdown();
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.alu.oamp.fsm;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static com.alu.oamp.fsm.StateMachineDefinitionTest.Cmd;
+import static com.alu.oamp.fsm.StateMachineDefinitionTest.Door;
+
+/**
+ * Test class for state machine snapshots
+ */
+public class StateSnapshotTest {
+
+    private Path file;
+    private InternalTransitionExecutor internalTransitions;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        file = Files.createTempFile("fsm", ".snapshot");
+        internalTransitions = InternalTransitionExecutor.newExecutor().build();
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+        internalTransitions.shutdown();
+    }
+
+    private static StateMachineDefinition newDefinition() {
+        return StateMachineDefinitionTest.newDoorDefinition(1000);
+    }
+
+    private Map<String, SimpleStateMachine> newDoors(StateMachineDefinition definition, int count) {
+        return newDoors(definition, count, null);
+    }
+
+    private Map<String, SimpleStateMachine> newDoors(StateMachineDefinition definition, int count,
+                                                     EventJournal journal) {
+        Map<String, SimpleStateMachine> doors = new LinkedHashMap<>();
+        EventLoopOptions options = EventLoopOptions.newOptions()
+                .inline(true)
+                .scheduler(HashedWheelScheduler.shared())
+                .internalTransitions(internalTransitions)
+                .journal(journal)
+                .build();
+        for (int i = 0; i < count; i++) {
+            doors.put("door " + i, new SimpleStateMachine(definition, "door " + i, options));
+        }
+        return doors;
+    }
+
+    private static void shutdown(Map<String, SimpleStateMachine> doors) {
+        doors.values().forEach(SimpleStateMachine::shutdown);
+    }
+
+    @Test
+    public void test_states_are_restored_from_the_snapshot() throws IOException {
+
+        StateMachineDefinition definition = newDefinition();
+        StateSnapshot snapshot = StateSnapshot.newSnapshot(file)
+                .codec(StateCodec.ofEnum(Door.class))
+                .build();
+
+        // more machines than the write buffer holds
+        Map<String, SimpleStateMachine> doors = newDoors(definition, 10_000);
+        try {
+            for (int i = 0; i < 10_000; i += 2) {
+                doors.get("door " + i).fireEvent(Cmd.OPEN);
+            }
+            Assert.assertEquals(snapshot.write(doors.values()), 10_000);
+        } finally {
+            shutdown(doors);
+        }
+
+        Map<String, SimpleStateMachine> restored = newDoors(definition, 10_000);
+        try {
+            Assert.assertEquals(snapshot.restore(restored::get), 10_000);
+            for (int i = 0; i < 10_000; i++) {
+                Assert.assertEquals(restored.get("door " + i).getState(), i % 2 == 0 ? Door.OPENED : Door.CLOSED);
+            }
+        } finally {
+            shutdown(restored);
+        }
+    }
+
+    @Test
+    public void test_timeout_is_restored_with_the_time_left() throws Exception {
+
+        StateMachineDefinition definition = newDefinition();
+        StateSnapshot snapshot = StateSnapshot.newSnapshot(file)
+                .codec(StateCodec.ofEnum(Door.class))
+                .build();
+
+        Map<String, SimpleStateMachine> doors = newDoors(definition, 1);
+        try {
+            doors.get("door 0").fireEvent(Cmd.OPEN);
+            Thread.sleep(500);
+            snapshot.write(doors.values());
+        } finally {
+            shutdown(doors);
+        }
+
+        Map<String, SimpleStateMachine> restored = newDoors(definition, 1);
+        SimpleStateMachine door = restored.get("door 0");
+        try {
+            long start = System.currentTimeMillis();
+            snapshot.restore(restored::get);
+            Assert.assertEquals(door.getState(), Door.OPENED);
+            // the time spent in the state before the snapshot counts
+            Assert.assertTrue(System.currentTimeMillis() - door.getPosition().getArmedAt() >= 500);
+
+            long deadline = start + 2000;
+            while (door.getState() != Door.CLOSED && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(door.getState(), Door.CLOSED);
+            Assert.assertTrue(System.currentTimeMillis() - start < 1000);
+        } finally {
+            shutdown(restored);
+        }
+    }
+
+    private static long count(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    @Test
+    public void test_journal_replays_the_events_following_the_snapshot() throws IOException {
+
+        StateMachineDefinition definition = newDefinition();
+        Path directory = Files.createTempDirectory("journal");
+        EventJournal.Builder journalBuilder = EventJournal.newJournal(directory)
+                .codec(EventCodec.ofEnum(Cmd.class))
+                .segmentSize(1024);
+        try {
+            EventJournal journal = journalBuilder.build();
+            StateSnapshot snapshot = StateSnapshot.newSnapshot(file)
+                    .codec(StateCodec.ofEnum(Door.class))
+                    .journal(journal)
+                    .build();
+            Map<String, SimpleStateMachine> doors = newDoors(definition, 2, journal);
+            try {
+                SimpleStateMachine door = doors.get("door 0");
+                for (int i = 0; i < 100; i++) {
+                    door.fireEvent(Cmd.OPEN);
+                    door.fireEvent(Cmd.CLOSE);
+                }
+                door.fireEvent(Cmd.OPEN);
+                long segments = count(directory);
+                Assert.assertTrue(segments > 1);
+
+                // the segments before the snapshot are deleted
+                snapshot.write(doors.values());
+                Assert.assertEquals(count(directory), 1);
+
+                door.fireEvent(Cmd.CLOSE);
+                doors.get("door 1").fireEvent(Cmd.OPEN);
+            } finally {
+                shutdown(doors);
+                journal.close();
+            }
+
+            journal = journalBuilder.build();
+            Map<String, SimpleStateMachine> restored = newDoors(definition, 2, journal);
+            try {
+                Assert.assertEquals(snapshot.restore(restored::get), 2);
+                Assert.assertEquals(restored.get("door 0").getState(), Door.OPENED);
+                Assert.assertEquals(restored.get("door 1").getState(), Door.CLOSED);
+
+                // the events already in the snapshot are skipped
+                Assert.assertEquals(journal.replay(restored::get), 2);
+                Assert.assertEquals(restored.get("door 0").getState(), Door.CLOSED);
+                Assert.assertEquals(restored.get("door 1").getState(), Door.OPENED);
+            } finally {
+                shutdown(restored);
+                journal.close();
+            }
+        } finally {
+            try (Stream<Path> files = Files.list(directory)) {
+                files.forEach(path -> path.toFile().delete());
+            }
+            Files.delete(directory);
+        }
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void test_corrupted_snapshot_is_rejected() throws IOException {
+
+        Files.write(file, new byte[] {1, 2, 3});
+        StateSnapshot.newSnapshot(file)
+                .codec(StateCodec.ofEnum(Door.class))
+                .build()
+                .restore(name -> null);
+    }
+}
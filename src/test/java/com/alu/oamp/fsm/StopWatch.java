@@ -23,7 +23,7 @@ public class StopWatch {
 
     private SimpleStateMachine fsm;
 
-    enum Cmd implements EventId {
+    enum Cmd implements EventId<Void> {
         START,
         STOP
     }
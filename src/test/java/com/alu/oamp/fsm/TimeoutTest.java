@@ -26,7 +26,7 @@ public class TimeoutTest {
     private BlockingQueue<StateId> queue =
             new LinkedBlockingQueue<>();
 
-    enum Cmd implements EventId {
+    enum Cmd implements EventId<Void> {
         TO_STATE_2,
         LONG_RUNNING_TASK
     }
@@ -0,0 +1,133 @@
+package com.alu.oamp.fsm;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static com.alu.oamp.fsm.States.newState;
+import static com.alu.oamp.fsm.Timeout.newTimeout;
+import static com.alu.oamp.fsm.Transition.newTransition;
+
+/**
+ * Test class for the transition table
+ */
+public class TransitionTableTest {
+
+    enum Cmd implements EventId<Void> {
+        OPEN,
+        CLOSE
+    }
+
+    enum Door implements StateId {
+        OPENED,
+        CLOSED
+    }
+
+    /**
+     * A non enum id.
+     */
+    static final class Id implements StateId, EventId<Void> {
+
+        private final String name;
+
+        Id(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Id && ((Id) other).name.equals(name);
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    @Test
+    public void test_enum_ids_are_compiled() {
+
+        Set<State> states = new HashSet<>();
+        states.add(newState(Door.OPENED)
+                .timeout(newTimeout().timeout(1000).target(Door.CLOSED).build()).build());
+        states.add(newState(Door.CLOSED).build());
+
+        List<Transition> transitions = new ArrayList<>();
+        transitions.addAll(((TimedState) find(states, Door.OPENED)).getInternal(states));
+        transitions.add(newTransition(states).from(Door.CLOSED).event(Cmd.OPEN).to(Door.OPENED).build());
+        transitions.add(newTransition(states).from(Door.OPENED).event(Cmd.CLOSE).to(Door.CLOSED).build());
+
+        TransitionTable table = TransitionTable.compile(states, transitions);
+        Assert.assertTrue(table.isCompiled());
+        Assert.assertEquals(table.get(Door.CLOSED, Cmd.OPEN), transitions.get(1));
+        Assert.assertEquals(table.get(Door.OPENED, Cmd.CLOSE), transitions.get(2));
+        Assert.assertEquals(table.get(Door.OPENED, SimpleStateMachine.InternalEvent.TIMEOUT),
+                transitions.get(0));
+        Assert.assertNull(table.get(Door.CLOSED, Cmd.CLOSE));
+        Assert.assertNull(table.get(Door.CLOSED, SimpleStateMachine.InternalEvent.HEARTBEAT));
+        Assert.assertNull(table.get(Door.CLOSED, new Id("OPEN")));
+    }
+
+    @Test
+    public void test_last_transition_wins() {
+
+        Set<State> states = new HashSet<>();
+        states.add(newState(Door.OPENED).build());
+        states.add(newState(Door.CLOSED).build());
+
+        List<Transition> transitions = new ArrayList<>();
+        transitions.add(newTransition(states).from(Door.CLOSED).event(Cmd.OPEN).build());
+        transitions.add(newTransition(states).from(Door.CLOSED).event(Cmd.OPEN).to(Door.OPENED).build());
+
+        TransitionTable table = TransitionTable.compile(states, transitions);
+        Assert.assertEquals(table.get(Door.CLOSED, Cmd.OPEN), transitions.get(1));
+    }
+
+    @Test
+    public void test_non_enum_ids_fall_back_to_hash_lookup() {
+
+        Id opened = new Id("OPENED");
+        Id closed = new Id("CLOSED");
+        Id open = new Id("OPEN");
+        Id close = new Id("CLOSE");
+
+        Set<State> states = new HashSet<>();
+        states.add(newState(opened).build());
+        State initial = newState(closed).build();
+        states.add(initial);
+
+        Set<Transition> transitions = new HashSet<>();
+        transitions.add(newTransition(states).from(closed).event(open).to(opened).build());
+        transitions.add(newTransition(states).from(opened).event(close).to(closed).build());
+
+        SimpleStateMachine fsm = new SimpleStateMachine(states, transitions, "Id door", initial);
+        try {
+            Assert.assertFalse(fsm.isCompiled());
+            fsm.fireEventSync(new Id("OPEN"));
+            Assert.assertEquals(fsm.getState(), opened);
+            fsm.fireEventSync(new Id("CLOSE"));
+            Assert.assertEquals(fsm.getState(), closed);
+        } finally {
+            fsm.shutdown();
+        }
+    }
+
+    private static State find(Set<State> states, StateId id) {
+        for (State state : states) {
+            if (state.getId() == id) {
+                return state;
+            }
+        }
+        throw new IllegalArgumentException("No state with id: " + id);
+    }
+}
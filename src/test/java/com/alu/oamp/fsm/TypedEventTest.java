@@ -0,0 +1,68 @@
+package com.alu.oamp.fsm;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static com.alu.oamp.fsm.StateMachineDefinitionTest.Cmd;
+import static com.alu.oamp.fsm.StateMachineDefinitionTest.Door;
+import static com.alu.oamp.fsm.States.newState;
+import static com.alu.oamp.fsm.Transition.newTransition;
+
+/**
+ * Test class for events carrying a typed message
+ */
+public class TypedEventTest {
+
+    enum Label implements EventId<String> {
+        RENAME
+    }
+
+    enum Counter implements EventId<Integer> {
+        ADD
+    }
+
+    @Test
+    public void test_typed_actions_receive_the_event_message() throws InterruptedException {
+
+        BlockingQueue<Object> received = new LinkedBlockingQueue<>();
+        Set<State> states = new HashSet<>();
+        State closed = newState(Door.CLOSED).build();
+        states.add(closed);
+        states.add(newState(Door.OPENED).build());
+
+        Set<Transition> transitions = new HashSet<>();
+        transitions.add(newTransition(states).from(Door.CLOSED).event(Cmd.OPEN).to(Door.OPENED)
+                .action(() -> received.offer("opened")).build());
+        transitions.add(newTransition(states).from(Door.OPENED)
+                .consume(Label.RENAME, (String name) -> received.offer(name.toUpperCase())).build());
+        transitions.add(newTransition(states).from(Door.OPENED).to(Door.CLOSED)
+                .consume(Counter.ADD, (Integer value) -> received.offer(value + 1)).build());
+
+        SimpleStateMachine door = new SimpleStateMachine(StateMachineDefinition.newDefinition()
+                .states(states).transitions(transitions).initial(closed).build(), "door");
+        BlockingQueue<StateId> entered = new LinkedBlockingQueue<>();
+        door.addStateMachineListener(new SimpleStateListener(entered));
+
+        try {
+            door.fireEvent(Cmd.OPEN);
+            Assert.assertEquals(entered.poll(100, TimeUnit.MILLISECONDS), Door.OPENED);
+            Assert.assertEquals(received.poll(100, TimeUnit.MILLISECONDS), "opened");
+
+            // an internal transition, the door stays opened
+            door.fireEvent(Label.RENAME, "front door");
+            Assert.assertEquals(received.poll(100, TimeUnit.MILLISECONDS), "FRONT DOOR");
+
+            door.fireEvent(Counter.ADD, 41);
+            Assert.assertEquals(entered.poll(100, TimeUnit.MILLISECONDS), Door.CLOSED);
+            Assert.assertEquals(received.poll(100, TimeUnit.MILLISECONDS), 42);
+        } finally {
+            door.shutdown();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.alu.oamp.fsm;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.time.Clock;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.alu.oamp.fsm.Heartbeat.newHeartbeat;
+import static com.alu.oamp.fsm.StateMachineDefinitionTest.Cmd;
+import static com.alu.oamp.fsm.StateMachineDefinitionTest.Door;
+import static com.alu.oamp.fsm.States.newState;
+import static com.alu.oamp.fsm.Transition.newTransition;
+
+/**
+ * Test class for the virtual time scheduler
+ */
+public class VirtualTimeSchedulerTest {
+
+    enum BellCmd implements EventId<Void> {
+        RING
+    }
+
+    enum Bell implements StateId {
+        SILENT,
+        RINGING
+    }
+
+    @Test
+    public void test_tasks_run_in_deadline_order() {
+
+        VirtualTimeScheduler scheduler = new VirtualTimeScheduler();
+        List<String> runs = new ArrayList<>();
+        scheduler.schedule(() -> runs.add("b"), 200);
+        scheduler.schedule(() -> runs.add("a"), 100);
+        scheduler.schedule(() -> runs.add("c"), 200);
+        scheduler.schedule(() -> runs.add("d"), 300).cancel();
+        scheduler.schedulePeriodic(() -> runs.add("p" + scheduler.now()), 150, 100);
+
+        Assert.assertEquals(scheduler.advance(99), 0);
+        Assert.assertEquals(scheduler.advance(301), 6);
+        Assert.assertEquals(runs, Arrays.asList("a", "p150", "b", "c", "p250", "p350"));
+        Assert.assertEquals(scheduler.now(), 400);
+        Assert.assertEquals(scheduler.getClock().millis(), 400);
+        Assert.assertEquals(scheduler.getPendingCount(), 1);
+    }
+
+    @Test
+    public void test_task_scheduled_by_a_task_runs_when_due() {
+
+        VirtualTimeScheduler scheduler = new VirtualTimeScheduler();
+        List<Long> runs = new ArrayList<>();
+        scheduler.schedule(() -> {
+            runs.add(scheduler.now());
+            scheduler.schedule(() -> runs.add(scheduler.now()), 50);
+        }, 100);
+
+        scheduler.advance(1000);
+        Assert.assertEquals(runs, Arrays.asList(100L, 150L));
+    }
+
+    @Test
+    public void test_concurrent_advances_add_up() throws Exception {
+
+        VirtualTimeScheduler scheduler = new VirtualTimeScheduler();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int step = 0; step < 1000; step++) {
+                        scheduler.advance(1);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertEquals(scheduler.now(), 4000);
+    }
+
+    @Test
+    public void test_options_default_to_the_virtual_clock() {
+
+        VirtualTimeScheduler scheduler = new VirtualTimeScheduler();
+        Clock clock = EventLoopOptions.newOptions().scheduler(scheduler).build().getClock();
+        scheduler.advance(42);
+        Assert.assertEquals(clock.millis(), 42);
+        // whatever its zone
+        EventLoopOptions.newOptions()
+                .scheduler(scheduler)
+                .clock(scheduler.getClock().withZone(ZoneId.of("Europe/Paris")))
+                .build();
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void test_exception_is_raised_when_clock_does_not_match_the_scheduler() {
+
+        EventLoopOptions.newOptions()
+                .scheduler(new VirtualTimeScheduler())
+                .clock(Clock.systemUTC())
+                .build();
+    }
+
+    private static StateMachineDefinition newBellDefinition() {
+
+        Set<State> states = new HashSet<>();
+        State silent = newState(Bell.SILENT).build();
+        states.add(silent);
+        states.add(newState(Bell.RINGING)
+                .heartbeat(newHeartbeat().period(500).build())
+                .build());
+
+        Set<Transition> transitions = new HashSet<>();
+        transitions.add(newTransition(states).from(Bell.SILENT).event(BellCmd.RING).to(Bell.RINGING).build());
+        return StateMachineDefinition.newDefinition()
+                .states(states)
+                .transitions(transitions)
+                .initial(silent)
+                .build();
+    }
+
+    private static SimpleStateMachine newMachine(StateMachineDefinition definition, VirtualTimeScheduler scheduler) {
+
+        return new SimpleStateMachine(definition, "machine", EventLoopOptions.newOptions()
+                .inline(true)
+                .flightRecorder(32)
+                .scheduler(scheduler)
+                .build());
+    }
+
+    @Test
+    public void test_timeout_fires_in_virtual_time() {
+
+        VirtualTimeScheduler scheduler = new VirtualTimeScheduler();
+        SimpleStateMachine door = newMachine(StateMachineDefinitionTest.newDoorDefinition(6000), scheduler);
+        try {
+            door.fireEvent(Cmd.OPEN);
+            scheduler.advance(5999);
+            Assert.assertEquals(door.getState(), Door.OPENED);
+            scheduler.advance(1);
+            Assert.assertEquals(door.getState(), Door.CLOSED);
+            Assert.assertEquals(scheduler.getPendingCount(), 0);
+        } finally {
+            door.shutdown();
+        }
+    }
+
+    @Test
+    public void test_heartbeats_fire_in_virtual_time() {
+
+        VirtualTimeScheduler scheduler = new VirtualTimeScheduler();
+        SimpleStateMachine bell = newMachine(newBellDefinition(), scheduler);
+        try {
+            scheduler.advance(1000);
+            bell.fireEvent(BellCmd.RING);
+            Assert.assertEquals(bell.getPosition().getArmedAt(), 1000);
+            scheduler.advance(2000);
+
+            long heartbeats = bell.getFlightRecord().stream()
+                    .filter(entry -> entry.getEvent() == SimpleStateMachine.InternalEvent.HEARTBEAT)
+                    .count();
+            Assert.assertEquals(heartbeats, 4);
+            Assert.assertEquals(bell.getState(), Bell.RINGING);
+        } finally {
+            bell.shutdown();
+        }
+        Assert.assertEquals(scheduler.getPendingCount(), 0);
+    }
+}
@@ -0,0 +1,124 @@
+package com.alu.oamp.fsm;
+
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.testng.Assert;
+import org.testng.SkipException;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static com.alu.oamp.fsm.StateMachineDefinitionTest.Cmd;
+import static com.alu.oamp.fsm.StateMachineDefinitionTest.Door;
+import static com.alu.oamp.fsm.States.newState;
+import static com.alu.oamp.fsm.Transition.newTransition;
+
+/**
+ * Test class for the JFR events
+ */
+public class JfrEventsTest {
+
+    @Test
+    public void test_events_are_supported() {
+
+        Assert.assertTrue(FsmEvents.isSupported());
+    }
+
+    @Test
+    public void test_events_are_recorded() throws IOException {
+
+        if (!FlightRecorder.isAvailable()) {
+            throw new SkipException("JFR is not available");
+        }
+        Set<State> states = new HashSet<>();
+        states.add(newState(Door.OPENED).build());
+        states.add(newState(Door.CLOSED).build());
+        Transition transition = newTransition(states).from(Door.CLOSED).event(Cmd.OPEN).to(Door.OPENED).build();
+
+        Path file = Files.createTempFile("fsm", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("com.alu.oamp.fsm.Transition");
+            recording.enable("com.alu.oamp.fsm.TimerScheduled");
+            recording.enable("com.alu.oamp.fsm.TimerFired");
+            recording.enable("com.alu.oamp.fsm.MailboxRejected");
+            recording.enable("com.alu.oamp.fsm.SlowAction").withThreshold(Duration.ofMillis(10));
+            recording.start();
+
+            // the events themselves, whether or not the state machines emit them
+            FsmEvents.Events events = new JfrEvents();
+            Object event = events.beginTransition();
+            events.endTransition(event, "door", Door.CLOSED, Cmd.OPEN, Door.OPENED,
+                    com.alu.oamp.fsm.FlightRecorder.Outcome.TRANSITIONED);
+            events.timerScheduled(Door.OPENED, SimpleStateMachine.InternalEvent.TIMEOUT, 100, 0);
+            events.timerFired(Door.OPENED, SimpleStateMachine.InternalEvent.TIMEOUT);
+            events.mailboxRejected("loop", OverflowPolicy.BLOCK, 8, TimeUnit.MILLISECONDS.toNanos(5));
+
+            // a fast action is below the threshold
+            events.endAction(events.beginAction(), transition, false);
+            Object action = events.beginAction();
+            sleep(20);
+            events.endAction(action, transition, true);
+
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events;
+        try {
+            events = RecordingFile.readAllEvents(file);
+        } finally {
+            Files.delete(file);
+        }
+        Map<String, RecordedEvent> byName = new HashMap<>();
+        int slowActions = 0;
+        for (RecordedEvent event : events) {
+            byName.put(event.getEventType().getName(), event);
+            if (event.getEventType().getName().equals("com.alu.oamp.fsm.SlowAction")) {
+                slowActions++;
+            }
+        }
+
+        RecordedEvent event = byName.get("com.alu.oamp.fsm.Transition");
+        Assert.assertEquals(event.getString("machine"), "door");
+        Assert.assertEquals(event.getString("source"), "CLOSED");
+        Assert.assertEquals(event.getString("event"), "OPEN");
+        Assert.assertEquals(event.getString("target"), "OPENED");
+        Assert.assertEquals(event.getString("outcome"), "TRANSITIONED");
+
+        event = byName.get("com.alu.oamp.fsm.TimerScheduled");
+        Assert.assertEquals(event.getString("state"), "OPENED");
+        Assert.assertEquals(event.getString("kind"), "TIMEOUT");
+        Assert.assertEquals(event.getLong("delay"), 100);
+
+        Assert.assertEquals(byName.get("com.alu.oamp.fsm.TimerFired").getString("kind"), "TIMEOUT");
+
+        event = byName.get("com.alu.oamp.fsm.MailboxRejected");
+        Assert.assertEquals(event.getString("loop"), "loop");
+        Assert.assertEquals(event.getString("policy"), "BLOCK");
+        Assert.assertEquals(event.getInt("pending"), 8);
+
+        Assert.assertEquals(slowActions, 1);
+        event = byName.get("com.alu.oamp.fsm.SlowAction");
+        Assert.assertEquals(event.getString("transition"), transition.toString());
+        Assert.assertTrue(event.getBoolean("failed"));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}